@@ -0,0 +1,1005 @@
+/*
+ * Cron Schedule, compiled bitmask representation.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Added day masks, one bit per minute of a day.
+ *               Immutable, evaluation methods moved from ScheduleAbstract.
+ *               Implements Schedule. Added equals() and hashCode().
+ *               Added fireTimes() and fireTimeSpliterator().
+ *               nextFireTime() no longer goes back at half hour DST changes.
+ *               getScheduleTimes() skips wall clock times which do not exist.
+ *               Added time zone. Evaluation uses the cached days of ZoneDays
+ *               instead of a Calendar. Defined DST behaviour.
+ *               Added union(), intersection(), difference() and contains().
+ *               isEmpty() follows the wildcard flags.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.TimeZone;
+
+/**
+ * Schedule fields packed into primitive bitmasks. Bit n of a mask is set if
+ * index n of the corresponding <CODE>ScheduleAbstract</CODE> array is set.
+ * Matching is done with shifts and <CODE>numberOfTrailingZeros</CODE>
+ * instead of array lookups and loops.<BR>
+ * <BR>
+ * Instances are immutable and the evaluation methods keep their state in
+ * local variables, so one instance can be shared and evaluated by any
+ * number of threads without locking. Being a <CODE>Schedule</CODE> itself,
+ * a single instance may stand in for every schedule with the same fields,
+ * see <CODE>ScheduleCache</CODE>.<BR>
+ * <BR>
+ * The fields are matched against the wall clock of the schedule's time
+ * zone, the default time zone unless one is given. Days are looked up in
+ * the shared <CODE>ZoneDays</CODE> of the zone, so evaluating a day is
+ * arithmetic on its start and offsets, without a <CODE>Calendar</CODE>.
+ * Wall clock times skipped by a DST change fire at the end of the gap and
+ * repeated wall clock times fire once, at their first occurrence.<BR>
+ * <BR>
+ * <CODE>union()</CODE>, <CODE>intersection()</CODE> and
+ * <CODE>difference()</CODE> combine two schedules into one by bitwise
+ * operations on the masks, when the result can be expressed by a single
+ * set of masks. Intersections nearly always can, unions and differences
+ * when the schedules differ in one field only or one covers the other.
+ * Otherwise they return null and <CODE>ScheduleSet</CODE> does the work
+ * day by day.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public final class CompiledSchedule implements Schedule {
+
+	/** Minutes of a day. */
+	public static final int MINUTES_PER_DAY = 24 * 60;
+	/** Number of longs in a day mask, 1440 bits. */
+	public static final int DAY_MASK_LENGTH = (MINUTES_PER_DAY + 63) >>> 6;
+	/** Number of years searched ahead by nextFireTime() before giving up. */
+	public static final int NEXT_FIRE_YEARS = 8;
+
+	/** Day of month mask with all days. */
+	private static final int ALL_DAYS_OF_MONTH = 0x7FFFFFFF;
+	/** Day of week mask with all days. */
+	private static final int ALL_DAYS_OF_WEEK = 0x7F;
+
+	/** Minute mask, bits 0-59. */
+	private final long minutes;
+	/** Hour mask, bits 0-23. */
+	private final int hours;
+	/** Day of month mask, bits 0-30. */
+	private final int daysOfMonth;
+	/** Month mask, bits 0-11. */
+	private final int months;
+	/** Day of week mask, bits 0-6 (Sun-Sat). */
+	private final int daysOfWeek;
+
+	/** Day of month all. */
+	private final boolean dayofmonthAll;
+	/** Day of week all. */
+	private final boolean dayofweekAll;
+
+	/** Days of the time zone. */
+	private final ZoneDays zoneDays;
+
+	/**
+	 * Creates a compiled schedule from the supplied masks, in the default
+	 * time zone.
+	 * @param minutes minute mask, bits 0-59.
+	 * @param hours hour mask, bits 0-23.
+	 * @param daysOfMonth day of month mask, bits 0-30.
+	 * @param months month mask, bits 0-11.
+	 * @param daysOfWeek day of week mask, bits 0-6 (Sun-Sat).
+	 * @param dayofmonthAll day of month field is a wildcard.
+	 * @param dayofweekAll day of week field is a wildcard.
+	 */
+	public CompiledSchedule(long minutes, int hours, int daysOfMonth, int months, int daysOfWeek, boolean dayofmonthAll, boolean dayofweekAll) {
+		this( minutes, hours, daysOfMonth, months, daysOfWeek, dayofmonthAll, dayofweekAll, (TimeZone)null );
+	}
+
+	/**
+	 * Creates a compiled schedule from the supplied masks.
+	 * @param minutes minute mask, bits 0-59.
+	 * @param hours hour mask, bits 0-23.
+	 * @param daysOfMonth day of month mask, bits 0-30.
+	 * @param months month mask, bits 0-11.
+	 * @param daysOfWeek day of week mask, bits 0-6 (Sun-Sat).
+	 * @param dayofmonthAll day of month field is a wildcard.
+	 * @param dayofweekAll day of week field is a wildcard.
+	 * @param zone time zone, null for the default time zone.
+	 */
+	public CompiledSchedule(long minutes, int hours, int daysOfMonth, int months, int daysOfWeek, boolean dayofmonthAll, boolean dayofweekAll, TimeZone zone) {
+		this( minutes, hours, daysOfMonth, months, daysOfWeek, dayofmonthAll, dayofweekAll, ZoneDays.getInstance( zone ) );
+	}
+
+	private CompiledSchedule(long minutes, int hours, int daysOfMonth, int months, int daysOfWeek, boolean dayofmonthAll, boolean dayofweekAll, ZoneDays zoneDays) {
+		this.minutes = minutes & 0x0FFFFFFFFFFFFFFFL;
+		this.hours = hours & 0x00FFFFFF;
+		this.daysOfMonth = daysOfMonth & 0x7FFFFFFF;
+		this.months = months & 0x0FFF;
+		this.daysOfWeek = daysOfWeek & 0x7F;
+		this.dayofmonthAll = dayofmonthAll;
+		this.dayofweekAll = dayofweekAll;
+		this.zoneDays = zoneDays;
+	}
+
+	/**
+	 * Compiles the field arrays of a schedule.
+	 * @param schedule schedule to compile.
+	 * @return compiled schedule.
+	 */
+	public static CompiledSchedule compile(ScheduleAbstract schedule) {
+		int dow = toMask( schedule.dayofweek, 7 );
+		if ( schedule.dayofweek[7] != 0 ) {
+			dow |= 1;
+		}
+		return new CompiledSchedule( toLongMask( schedule.minute, 60 ),
+									toMask( schedule.hour, 24 ),
+									toMask( schedule.dayofmonth, 31 ),
+									toMask( schedule.month, 12 ),
+									dow,
+									schedule.dayofmonthAll,
+									schedule.dayofweekAll,
+									schedule.timeZone );
+	}
+
+	/**
+	 * Returns a compiled schedule with the same masks in another time zone.
+	 * @param zone time zone, null for the default time zone.
+	 * @return compiled schedule in the time zone.
+	 */
+	public CompiledSchedule withTimeZone(TimeZone zone) {
+		ZoneDays zd = ZoneDays.getInstance( zone );
+		if ( zd == zoneDays ) {
+			return this;
+		}
+		return new CompiledSchedule( minutes, hours, daysOfMonth, months, daysOfWeek, dayofmonthAll, dayofweekAll, zd );
+	}
+
+	private static int toMask(byte[] array, int len) {
+		int mask = 0;
+		for (int i=0; i<len; ++i) {
+			if ( array[i] != 0 ) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+
+	private static long toLongMask(byte[] array, int len) {
+		long mask = 0;
+		for (int i=0; i<len; ++i) {
+			if ( array[i] != 0 ) {
+				mask |= 1L << i;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the minute mask.
+	 * @return minute mask.
+	 */
+	public long getMinutes() {
+		return minutes;
+	}
+
+	/**
+	 * Returns the hour mask.
+	 * @return hour mask.
+	 */
+	public int getHours() {
+		return hours;
+	}
+
+	/**
+	 * Returns the day of month mask.
+	 * @return day of month mask.
+	 */
+	public int getDaysOfMonth() {
+		return daysOfMonth;
+	}
+
+	/**
+	 * Returns the month mask.
+	 * @return month mask.
+	 */
+	public int getMonths() {
+		return months;
+	}
+
+	/**
+	 * Returns the day of week mask.
+	 * @return day of week mask.
+	 */
+	public int getDaysOfWeek() {
+		return daysOfWeek;
+	}
+
+	/**
+	 * Returns true if the day of month field is a wildcard.
+	 * @return true if the day of month field is a wildcard.
+	 */
+	public boolean isDayofmonthAll() {
+		return dayofmonthAll;
+	}
+
+	/**
+	 * Returns true if the day of week field is a wildcard.
+	 * @return true if the day of week field is a wildcard.
+	 */
+	public boolean isDayofweekAll() {
+		return dayofweekAll;
+	}
+
+	/**
+	 * Returns the time zone of the schedule.
+	 * @return a copy of the time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return zoneDays.getTimeZone();
+	}
+
+	/**
+	 * Returns the cached days of the schedule's time zone.
+	 * @return the days of the time zone.
+	 */
+	public ZoneDays getZoneDays() {
+		return zoneDays;
+	}
+
+	/**
+	 * Returns true if the schedule can never fire, because one of the
+	 * fields is empty.
+	 * @return true if the schedule can never fire.
+	 */
+	public boolean isEmpty() {
+		if ( (minutes == 0) || (hours == 0) || (months == 0) ) {
+			return true;
+		}
+		if ( dayofmonthAll ) {
+			return daysOfWeek == 0;
+		}
+		if ( dayofweekAll ) {
+			return daysOfMonth == 0;
+		}
+		return (daysOfMonth == 0) && (daysOfWeek == 0);
+	}
+
+	/**
+	 * Returns true if the month is part of the schedule.
+	 * @param monthIndex month index from 0-11.
+	 * @return true if the month is part of the schedule.
+	 */
+	public boolean matchesMonth(int monthIndex) {
+		return ((months >>> monthIndex) & 1) != 0;
+	}
+
+	/**
+	 * Returns true if the day of month and/or day of week fields match.
+	 * As in cron, when both fields are restricted the day matches if
+	 * either of them does.
+	 * @param dateIndex day of month index from 0-30.
+	 * @param weekdayIndex day of week index from 0-6.
+	 * @return true if the day matches.
+	 */
+	public boolean matchesDay(int dateIndex, int weekdayIndex) {
+		boolean dom = ((daysOfMonth >>> dateIndex) & 1) != 0;
+		boolean dow = ((daysOfWeek >>> weekdayIndex) & 1) != 0;
+		if ( dayofmonthAll ) {
+			return dow;
+		}
+		if ( dayofweekAll ) {
+			return dom;
+		}
+		return dom || dow;
+	}
+
+	/**
+	 * Returns true if month, day of month and day of week all match.
+	 * @param dateIndex day of month index from 0-30.
+	 * @param monthIndex month index from 0-11.
+	 * @param weekdayIndex day of week index from 0-6.
+	 * @return true if the day is part of the schedule.
+	 */
+	public boolean matchesDay(int dateIndex, int monthIndex, int weekdayIndex) {
+		return matchesMonth( monthIndex ) && matchesDay( dateIndex, weekdayIndex );
+	}
+
+	/**
+	 * Returns true if the hour and minute are part of the schedule.
+	 * @param h hour from 0-23.
+	 * @param m minute from 0-59.
+	 * @return true if the hour and minute are part of the schedule.
+	 */
+	public boolean matchesTime(int h, int m) {
+		return (((hours >>> h) & 1) != 0) && (((minutes >>> m) & 1) != 0);
+	}
+
+	/**
+	 * Returns the first scheduled hour equal to or after the given hour.
+	 * @param h hour from 0-23.
+	 * @return hour or -1 if no hour is scheduled in the rest of the day.
+	 */
+	public int nextHour(int h) {
+		int bits = hours >>> h;
+		if ( bits == 0 ) {
+			return -1;
+		}
+		return h + Integer.numberOfTrailingZeros( bits );
+	}
+
+	/**
+	 * Returns the first scheduled minute equal to or after the given minute.
+	 * @param m minute from 0-59.
+	 * @return minute or -1 if no minute is scheduled in the rest of the hour.
+	 */
+	public int nextMinute(int m) {
+		long bits = minutes >>> m;
+		if ( bits == 0 ) {
+			return -1;
+		}
+		return m + Long.numberOfTrailingZeros( bits );
+	}
+
+	/**
+	 * Returns the first scheduled minute of day equal to or after the given
+	 * minute of day, disregarding the date fields.
+	 * @param mod minute of day from 0-1439.
+	 * @return minute of day or -1 if nothing is scheduled in the rest of the day.
+	 */
+	public int nextMinuteOfDay(int mod) {
+		int h = mod / 60;
+		int m = mod % 60;
+		if ( h >= 24 ) {
+			return -1;
+		}
+		if ( ((hours >>> h) & 1) != 0 ) {
+			m = nextMinute( m );
+			if ( m != -1 ) {
+				return h * 60 + m;
+			}
+		}
+		if ( h == 23 ) {
+			return -1;
+		}
+		h = nextHour( h + 1 );
+		if ( (h == -1) || (minutes == 0) ) {
+			return -1;
+		}
+		return h * 60 + Long.numberOfTrailingZeros( minutes );
+	}
+
+	/**
+	 * Returns the first minute strictly after the given date on which this
+	 * schedule fires. Days are matched on their month, day of month and day
+	 * of week first, whole months which can not match are skipped, and only
+	 * the minutes of a matching day are looked at. No objects are created
+	 * once the days are cached.
+	 * @param after date as long.
+	 * @return next fire time as long or <CODE>Schedule.NO_FIRE_TIME</CODE> if
+	 * the schedule does not fire within <CODE>NEXT_FIRE_YEARS</CODE> years.
+	 */
+	public long nextFireTime(long after) {
+		ZoneDays.Day day;
+		long limit;
+		int mod;
+		long t;
+
+		if ( isEmpty() )
+			return Schedule.NO_FIRE_TIME;
+		day = zoneDays.getDay( after );
+		limit = day.getEpochDay() + NEXT_FIRE_YEARS * 366;
+		mod = day.getMinuteOfDay( after );
+
+		while ( day.getEpochDay() <= limit ) {
+
+		// Month
+
+			if ( !matchesMonth( day.getMonthIndex() ) ) {
+				day = zoneDays.getDayByEpochDay( day.getEpochDay() + day.getMonthLength() - day.getDateIndex() );
+				mod = 0;
+				continue;
+			}
+
+		// Day of Month and/or Week, then Hour and Minute
+
+			if ( matchesDay( day.getDateIndex(), day.getWeekdayIndex() ) && !day.isSkipped() ) {
+				// Times never decrease with the minute of day, the first
+				// one after the date is the next fire time.
+				mod = nextMinuteOfDay( mod );
+				while ( mod != -1 ) {
+					t = day.getTime( mod );
+					if ( t > after ) {
+						return t;
+					}
+					mod = nextMinuteOfDay( mod + 1 );
+				}
+			}
+			day = zoneDays.getDayByEpochDay( day.getEpochDay() + 1 );
+			mod = 0;
+		}
+
+		return Schedule.NO_FIRE_TIME;
+	}
+
+	/**
+	 * Fills the supplied array with consecutive fire times following the
+	 * given date. Stops early if the schedule does not fire again.
+	 * @param after date as long.
+	 * @param times destination array.
+	 * @return number of fire times stored in the array.
+	 */
+	public int nextFireTimes(long after, long[] times) {
+		int i = 0;
+		long l = after;
+		while ( i < times.length ) {
+			l = nextFireTime( l );
+			if ( l == Schedule.NO_FIRE_TIME )
+				break;
+			times[i++] = l;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns a lazy iterator over the fire times in <CODE>[from, to)</CODE>.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive, <CODE>Long.MAX_VALUE</CODE> for no end.
+	 * @return fire time iterator.
+	 */
+	public FireTimeIterator fireTimes(long from, long to) {
+		return new FireTimeIterator( this, from, to );
+	}
+
+	/**
+	 * Returns a spliterator over the fire times in <CODE>[from, to)</CODE>,
+	 * splitting by days for parallel streams.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive, <CODE>Long.MAX_VALUE</CODE> for no end.
+	 * @return fire time spliterator.
+	 */
+	public FireTimeSpliterator fireTimeSpliterator(long from, long to) {
+		return new FireTimeSpliterator( this, from, to );
+	}
+
+	/**
+	 * Given a date as long fills the supplied day mask with one bit per
+	 * minute of the day. A set bit indicating an event. The mask is cleared
+	 * first, so the same buffer can be reused from day to day.
+	 * @param l date as long.
+	 * @param mask day mask of at least <CODE>DAY_MASK_LENGTH</CODE> longs.
+	 * @return the supplied day mask.
+	 */
+	public long[] getScheduleMask(long l, long[] mask) {
+		ZoneDays.Day day = zoneDays.getDay( l );
+		for (int i=0; i<DAY_MASK_LENGTH; ++i) {
+			mask[i] = 0;
+		}
+
+	// Month, Day of Month and/or Week
+
+		if ( matchesDay( day.getDateIndex(), day.getMonthIndex(), day.getWeekdayIndex() ) ) {
+			fillDayMask( mask );
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Given a date as long returns the dates as long on which the schedule
+	 * fires that day, in ascending order.
+	 * @param l date as long.
+	 * @return array of dates as long.
+	 */
+	public long[] getScheduleTimes(long l) {
+		long[] times = new long[MINUTES_PER_DAY];
+		int n = getScheduleTimes( l, times );
+		long[] tmpArray = new long[n];
+		System.arraycopy( times, 0, tmpArray, 0, n );
+		return tmpArray;
+	}
+
+	/**
+	 * Given a date as long fills the supplied array with the dates as long
+	 * on which the schedule fires that day, in ascending order.
+	 * @param l date as long.
+	 * @param times array of at least <CODE>MINUTES_PER_DAY</CODE> longs.
+	 * @return number of dates stored in the array.
+	 */
+	public int getScheduleTimes(long l, long[] times) {
+		return getScheduleTimes( zoneDays.getDay( l ), times );
+	}
+
+	/**
+	 * Fills the supplied array with the dates as long on which the schedule
+	 * fires on a day of its time zone, in ascending order.
+	 * @param day day from the <CODE>ZoneDays</CODE> of the schedule.
+	 * @param times array of at least <CODE>MINUTES_PER_DAY</CODE> longs.
+	 * @return number of dates stored in the array.
+	 */
+	public int getScheduleTimes(ZoneDays.Day day, long[] times) {
+		long dayStart;
+		long t;
+		int idx;
+		int n = 0;
+
+	// Month, Day of Month and/or Week
+
+		if ( matchesDay( day.getDateIndex(), day.getMonthIndex(), day.getWeekdayIndex() ) && !day.isSkipped() ) {
+			idx = nextMinuteOfDay( 0 );
+			if ( day.isPlain() ) {
+				dayStart = day.getStart();
+				while ( idx != -1 ) {
+					times[n++] = dayStart + idx * 60000L;
+					idx = nextMinuteOfDay( idx + 1 );
+				}
+			}
+			else {
+				// Skipped minutes share the end of the gap, keep one.
+				while ( idx != -1 ) {
+					t = day.getTime( idx );
+					if ( (t != Schedule.NO_FIRE_TIME) && ((n == 0) || (t > times[n - 1])) ) {
+						times[n++] = t;
+					}
+					idx = nextMinuteOfDay( idx + 1 );
+				}
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Sets the bits of the scheduled minutes of a day in the supplied day
+	 * mask, disregarding the date fields. Bits already set are kept.
+	 * @param mask day mask of at least <CODE>DAY_MASK_LENGTH</CODE> longs.
+	 */
+	public void fillDayMask(long[] mask) {
+		int bits = hours;
+		int h;
+		int pos;
+		int word;
+		int offset;
+		while ( bits != 0 ) {
+			h = Integer.numberOfTrailingZeros( bits );
+			bits &= bits - 1;
+			pos = h * 60;
+			word = pos >>> 6;
+			offset = pos & 63;
+			mask[word] |= minutes << offset;
+			if ( offset > 4 ) {
+				mask[word + 1] |= minutes >>> (64 - offset);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the minute of day is set in the day mask.
+	 * @param mask day mask.
+	 * @param mod minute of day from 0-1439.
+	 * @return true if the minute of day is set.
+	 */
+	public static boolean isSet(long[] mask, int mod) {
+		return ((mask[mod >>> 6] >>> (mod & 63)) & 1) != 0;
+	}
+
+	/**
+	 * Returns the first minute of day set in the day mask equal to or after
+	 * the given minute of day.
+	 * @param mask day mask.
+	 * @param mod minute of day to start from.
+	 * @return minute of day or -1 if no more bits are set.
+	 */
+	public static int nextSet(long[] mask, int mod) {
+		int word;
+		long bits;
+		if ( mod >= MINUTES_PER_DAY ) {
+			return -1;
+		}
+		word = mod >>> 6;
+		bits = mask[word] & (-1L << (mod & 63));
+		while ( bits == 0 ) {
+			if ( ++word == DAY_MASK_LENGTH ) {
+				return -1;
+			}
+			bits = mask[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros( bits );
+	}
+
+	/**
+	 * Returns true if every fire time of the other schedule is also a fire
+	 * time of this one. The fields are compared one by one, so a schedule
+	 * whose fields never meet, the 30th of February for instance, is only
+	 * found to be contained if a field says so.
+	 * @param other compiled schedule.
+	 * @return true if the other schedule is known to be contained in this one.
+	 */
+	public boolean contains(CompiledSchedule other) {
+		if ( other.isEmpty() ) {
+			return true;
+		}
+		return zoneDays == other.zoneDays
+				&& (other.minutes & ~minutes) == 0
+				&& (other.hours & ~hours) == 0
+				&& (other.months & ~months) == 0
+				&& getDays().contains( other.getDays() );
+	}
+
+	/**
+	 * Returns a schedule firing when either schedule fires, if it can be
+	 * expressed by one set of masks. That is the case when one schedule
+	 * contains the other, or when they differ in the minutes, hours, months
+	 * or day fields only.
+	 * @param other compiled schedule in the same time zone.
+	 * @return the union, or null if it can not be compiled.
+	 */
+	public CompiledSchedule union(CompiledSchedule other) {
+		Days days;
+		Days otherDays;
+		if ( zoneDays != other.zoneDays ) {
+			return null;
+		}
+		if ( contains( other ) ) {
+			return this;
+		}
+		if ( other.contains( this ) ) {
+			return other;
+		}
+		days = getDays();
+		otherDays = other.getDays();
+		if ( (hours == other.hours) && (minutes == other.minutes) ) {
+			if ( months == other.months ) {
+				return create( minutes, hours, months, days.or( otherDays ) );
+			}
+			if ( days.equals( otherDays ) ) {
+				return create( minutes, hours, months | other.months, days );
+			}
+		}
+		if ( (months == other.months) && days.equals( otherDays ) ) {
+			if ( hours == other.hours ) {
+				return create( minutes | other.minutes, hours, months, days );
+			}
+			if ( minutes == other.minutes ) {
+				return create( minutes, hours | other.hours, months, days );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a schedule firing when both schedules fire, if it can be
+	 * expressed by one set of masks. Only fails for day fields which do not
+	 * combine into one, such as a day of month and a day of week.
+	 * @param other compiled schedule in the same time zone.
+	 * @return the intersection, or null if it can not be compiled.
+	 */
+	public CompiledSchedule intersection(CompiledSchedule other) {
+		long m;
+		int h;
+		int mon;
+		Days days;
+		if ( zoneDays != other.zoneDays ) {
+			return null;
+		}
+		m = minutes & other.minutes;
+		h = hours & other.hours;
+		mon = months & other.months;
+		days = getDays().and( other.getDays() );
+		if ( days == null ) {
+			if ( (m != 0) && (h != 0) && (mon != 0) ) {
+				return null;
+			}
+			days = Days.NONE;
+		}
+		return create( m, h, mon, days );
+	}
+
+	/**
+	 * Returns a schedule firing when this schedule fires and the other does
+	 * not, if it can be expressed by one set of masks. That is the case
+	 * when the schedules never fire together, or when the other covers all
+	 * the days or all the times of day of this one and what is left differs
+	 * in one field.
+	 * @param other compiled schedule in the same time zone.
+	 * @return the difference, or null if it can not be compiled.
+	 */
+	public CompiledSchedule difference(CompiledSchedule other) {
+		Days days;
+		Days otherDays;
+		Days both;
+		Days rest;
+		if ( zoneDays != other.zoneDays ) {
+			return null;
+		}
+		if ( other.contains( this ) ) {
+			return create( 0, 0, 0, Days.NONE );
+		}
+		days = getDays();
+		otherDays = other.getDays();
+		both = days.and( otherDays );
+		if ( ((minutes & other.minutes) == 0) || ((hours & other.hours) == 0) || ((months & other.months) == 0)
+				|| ((both != null) && both.isNone()) ) {
+			return this;
+		}
+		if ( ((months & ~other.months) == 0) && otherDays.contains( days ) ) {
+			// Every day covered, times of day are left.
+			if ( (minutes & ~other.minutes) == 0 ) {
+				return create( minutes, hours & ~other.hours, months, days );
+			}
+			if ( (hours & ~other.hours) == 0 ) {
+				return create( minutes & ~other.minutes, hours, months, days );
+			}
+		}
+		if ( ((minutes & ~other.minutes) == 0) && ((hours & ~other.hours) == 0) ) {
+			// Every time of day covered, days are left.
+			if ( otherDays.contains( days ) ) {
+				return create( minutes, hours, months & ~other.months, days );
+			}
+			if ( (months & ~other.months) == 0 ) {
+				rest = days.andNot( otherDays );
+				if ( rest != null ) {
+					return create( minutes, hours, months, rest );
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the day of month and day of week fields as one condition.
+	 */
+	private Days getDays() {
+		if ( dayofmonthAll ) {
+			return Days.valueOf( Days.WEEK, 0, daysOfWeek );
+		}
+		if ( dayofweekAll ) {
+			return Days.valueOf( Days.MONTH, daysOfMonth, 0 );
+		}
+		return Days.valueOf( Days.EITHER, daysOfMonth, daysOfWeek );
+	}
+
+	/**
+	 * Creates a schedule in the same time zone from masks and a day
+	 * condition, with the wildcard flags set the way a parsed crontab
+	 * would have them.
+	 */
+	private CompiledSchedule create(long minutes, int hours, int months, Days days) {
+		switch ( days.form ) {
+		case Days.WEEK:
+			if ( days.daysOfWeek == 0 ) {
+				return new CompiledSchedule( minutes, hours, 0, months, 0, false, false, zoneDays );
+			}
+			return new CompiledSchedule( minutes, hours, ALL_DAYS_OF_MONTH, months, days.daysOfWeek, true, days.daysOfWeek == ALL_DAYS_OF_WEEK, zoneDays );
+		case Days.MONTH:
+			return new CompiledSchedule( minutes, hours, days.daysOfMonth, months, ALL_DAYS_OF_WEEK, false, true, zoneDays );
+		default:
+			return new CompiledSchedule( minutes, hours, days.daysOfMonth, months, days.daysOfWeek, false, false, zoneDays );
+		}
+	}
+
+	/**
+	 * Returns true if the other object is a compiled schedule with the same
+	 * masks and time zone, firing at exactly the same times.
+	 * @param obj object to compare with.
+	 * @return true if the schedules are equal.
+	 */
+	public boolean equals(Object obj) {
+		if ( this == obj ) {
+			return true;
+		}
+		if ( !(obj instanceof CompiledSchedule) ) {
+			return false;
+		}
+		CompiledSchedule other = (CompiledSchedule)obj;
+		return minutes == other.minutes
+				&& hours == other.hours
+				&& daysOfMonth == other.daysOfMonth
+				&& months == other.months
+				&& daysOfWeek == other.daysOfWeek
+				&& dayofmonthAll == other.dayofmonthAll
+				&& dayofweekAll == other.dayofweekAll
+				&& zoneDays == other.zoneDays;
+	}
+
+	/**
+	 * Returns a hash code computed from the masks and time zone.
+	 * @return hash code.
+	 */
+	public int hashCode() {
+		long h = minutes;
+		h = h * 31 + hours;
+		h = h * 31 + daysOfMonth;
+		h = h * 31 + months;
+		h = h * 31 + daysOfWeek;
+		h = h * 4 + (dayofmonthAll ? 2 : 0) + (dayofweekAll ? 1 : 0);
+		h = h * 31 + zoneDays.hashCode();
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns a string representation of the masks.
+	 * Used mainly for debugging purposes.
+	 * @return a string representation of the masks.
+	 */
+	public String toString() {
+		StringBuffer tmpStrB = new StringBuffer();
+		tmpStrB.append( "Minutes=" );
+		tmpStrB.append( Long.toHexString( minutes ) );
+		tmpStrB.append( " Hours=" );
+		tmpStrB.append( Integer.toHexString( hours ) );
+		tmpStrB.append( " DaysOfMonth=" );
+		tmpStrB.append( Integer.toHexString( daysOfMonth ) );
+		tmpStrB.append( dayofmonthAll ? "*" : "" );
+		tmpStrB.append( " Months=" );
+		tmpStrB.append( Integer.toHexString( months ) );
+		tmpStrB.append( " DaysOfWeek=" );
+		tmpStrB.append( Integer.toHexString( daysOfWeek ) );
+		tmpStrB.append( dayofweekAll ? "*" : "" );
+		tmpStrB.append( " TimeZone=" );
+		tmpStrB.append( zoneDays.getID() );
+		return tmpStrB.toString();
+	}
+
+	/**
+	 * Day of month and day of week fields as one condition on a day: days
+	 * of week only, days of month only, or either. Kept normalized, all
+	 * days are all days of week and no days are no days of week.
+	 */
+	private static final class Days {
+
+		/** Days of week, every day of month. */
+		static final int WEEK = 0;
+		/** Days of month, every day of week. */
+		static final int MONTH = 1;
+		/** Either a day of month or a day of week, as cron does. */
+		static final int EITHER = 2;
+
+		/** No days. */
+		static final Days NONE = new Days( WEEK, 0, 0 );
+
+		/** Form of the condition. */
+		final int form;
+		/** Day of month mask, 0 for days of week only. */
+		final int daysOfMonth;
+		/** Day of week mask, 0 for days of month only. */
+		final int daysOfWeek;
+
+		private Days(int form, int daysOfMonth, int daysOfWeek) {
+			this.form = form;
+			this.daysOfMonth = daysOfMonth;
+			this.daysOfWeek = daysOfWeek;
+		}
+
+		/**
+		 * Returns the normalized condition.
+		 */
+		static Days valueOf(int form, int daysOfMonth, int daysOfWeek) {
+			if ( form == EITHER ) {
+				if ( (daysOfMonth == ALL_DAYS_OF_MONTH) || (daysOfWeek == ALL_DAYS_OF_WEEK) ) {
+					return new Days( WEEK, 0, ALL_DAYS_OF_WEEK );
+				}
+				if ( daysOfWeek == 0 ) {
+					form = MONTH;
+				}
+				else if ( daysOfMonth == 0 ) {
+					form = WEEK;
+				}
+			}
+			if ( form == MONTH ) {
+				if ( daysOfMonth == ALL_DAYS_OF_MONTH ) {
+					return new Days( WEEK, 0, ALL_DAYS_OF_WEEK );
+				}
+				if ( daysOfMonth == 0 ) {
+					return NONE;
+				}
+				return new Days( MONTH, daysOfMonth, 0 );
+			}
+			if ( form == WEEK ) {
+				return new Days( WEEK, 0, daysOfWeek );
+			}
+			return new Days( EITHER, daysOfMonth, daysOfWeek );
+		}
+
+		boolean isAll() {
+			return (form == WEEK) && (daysOfWeek == ALL_DAYS_OF_WEEK);
+		}
+
+		boolean isNone() {
+			return (form == WEEK) && (daysOfWeek == 0);
+		}
+
+		/**
+		 * Returns true if every day of the other condition is a day of this.
+		 */
+		boolean contains(Days other) {
+			if ( isAll() || other.isNone() ) {
+				return true;
+			}
+			if ( (form == other.form) || (form == EITHER) ) {
+				return ((other.daysOfMonth & ~daysOfMonth) == 0) && ((other.daysOfWeek & ~daysOfWeek) == 0);
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the days of either condition.
+		 */
+		Days or(Days other) {
+			return valueOf( (form == other.form) ? form : EITHER, daysOfMonth | other.daysOfMonth, daysOfWeek | other.daysOfWeek );
+		}
+
+		/**
+		 * Returns the days of both conditions, null if they do not combine
+		 * into one.
+		 */
+		Days and(Days other) {
+			if ( contains( other ) ) {
+				return other;
+			}
+			if ( other.contains( this ) ) {
+				return this;
+			}
+			if ( (form == other.form) && (form != EITHER) ) {
+				return valueOf( form, daysOfMonth & other.daysOfMonth, daysOfWeek & other.daysOfWeek );
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the days of this condition but not the other, null if they
+		 * do not combine into one.
+		 */
+		Days andNot(Days other) {
+			if ( other.contains( this ) ) {
+				return NONE;
+			}
+			if ( isAll() && (other.form == WEEK) ) {
+				return valueOf( WEEK, 0, ALL_DAYS_OF_WEEK & ~other.daysOfWeek );
+			}
+			if ( isAll() && (other.form == MONTH) ) {
+				return valueOf( MONTH, ALL_DAYS_OF_MONTH & ~other.daysOfMonth, 0 );
+			}
+			if ( (form == other.form) && (form != EITHER) ) {
+				return valueOf( form, daysOfMonth & ~other.daysOfMonth, daysOfWeek & ~other.daysOfWeek );
+			}
+			return null;
+		}
+
+		public int hashCode() {
+			return (form * 31 + daysOfMonth) * 31 + daysOfWeek;
+		}
+
+		public boolean equals(Object obj) {
+			if ( !(obj instanceof Days) ) {
+				return false;
+			}
+			Days other = (Days)obj;
+			return form == other.form
+					&& daysOfMonth == other.daysOfMonth
+					&& daysOfWeek == other.daysOfWeek;
+		}
+
+	}
+
+}
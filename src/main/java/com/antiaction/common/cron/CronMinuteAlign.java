@@ -41,6 +41,12 @@
  *               Recoded toString(Calendar) to use StringBuffer and less no extra objects.
  * 07-Nov-2001 : Minor beautifying.
  * 10-Nov-2001 : Changed imports.
+ * 17-Oct-2026 : Added getMinuteOfDay().
+ *               Added schedule mode, sleeps until the schedule is due.
+ *               Added precise mode, parks on System.nanoTime() deadlines.
+ *               Added getMissed(), counts events skipped after a pause.
+ *               Precise schedule mode parks without holding the lock.
+ *               An interrupt leaves the alignment unchanged in every mode.
  */
 
 package com.antiaction.common.cron;
@@ -48,11 +54,27 @@ package com.antiaction.common.cron;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Small class implementation of a minute based event handler. This class
  * can be used to run code at intervals of one minute. The class is self
- * aligning and only returns on the minute (hh:mm:00) or when interrupted.
+ * aligning and only returns on the minute (hh:mm:00) or when interrupted.<BR>
+ * <BR>
+ * When a <CODE>Schedule</CODE> is set, <CODE>sleep()</CODE> instead parks
+ * until the next time the schedule fires, which may be hours away. Changes
+ * to the schedule, such as adding to or removing from a
+ * <CODE>ScheduleGroup</CODE>, must be followed by a call to
+ * <CODE>rearm()</CODE> so a sleeping thread recomputes its wake up time.<BR>
+ * <BR>
+ * In precise mode the deadline is computed once from the wall clock and
+ * then waited for against <CODE>System.nanoTime()</CODE>, parking until
+ * shortly before it and yielding for the rest. How late each wake up was
+ * is available from <CODE>getLateness()</CODE>.<BR>
+ * <BR>
+ * An interrupt returns the current time without moving the alignment, in
+ * every mode. The next call waits for the same minute or fire time, so no
+ * fire time is lost to an interrupt.
  *
  * @version 2.00
  * @author Nicholas Clarke <nclarke@diku.dk>
@@ -80,6 +102,28 @@ public class CronMinuteAlign {
 	/** Output debug information on/off. */
 	protected boolean debug = false;
 
+	/** Milliseconds a wake up may be late before the fire time counts as passed. */
+	protected static final long LATE_TOLERANCE = 1000;
+
+	/** Nanoseconds before a deadline where parking stops and yielding starts. */
+	protected static final long SPIN_NANOS = 200000L;
+	/** Milliseconds before a deadline where waiting on a schedule switches to parking. */
+	protected static final long PARK_MARGIN = 20;
+
+	/** Wait on System.nanoTime() deadlines. */
+	protected boolean precise = false;
+	/** Nanoseconds the last wake up was late. */
+	protected long lateness;
+	/** Number of events skipped by the last sleep. */
+	protected int missed;
+
+	/** Schedule to sleep until, null to wake every minute. */
+	protected Schedule schedule;
+	/** Lock used to park the sleeping thread and to rearm it. */
+	protected Object scheduleLock = new Object();
+	/** Set when the schedule is changed or rearmed. */
+	protected boolean rearmed;
+
 	/** Temporary Date. */
 	protected static Date staticDate;
 	/** Temporary Calendar. */
@@ -111,6 +155,66 @@ public class CronMinuteAlign {
 		debug = b;
 	}
 
+	/**
+	 * Toggle precise mode.
+	 * @param b boolean.
+	 */
+	public void setPrecise(boolean b) {
+		precise = b;
+	}
+
+	/**
+	 * Returns the number of nanoseconds the last wake up was later than
+	 * its deadline.
+	 * @return lateness of the last wake up in nanoseconds.
+	 */
+	public long getLateness() {
+		return lateness;
+	}
+
+	/**
+	 * Returns the number of events the last sleep skipped because they had
+	 * already passed, after a long GC pause, a suspended VM or a clock jump.
+	 * In minute mode these are minutes, in schedule mode fire times.
+	 * @return number of events skipped by the last sleep.
+	 */
+	public int getMissed() {
+		return missed;
+	}
+
+	/**
+	 * Sets the schedule to sleep until and rearms a sleeping thread.
+	 * @param s schedule or null to wake every minute.
+	 */
+	public void setSchedule(Schedule s) {
+		synchronized ( scheduleLock ) {
+			schedule = s;
+			rearmed = true;
+			scheduleLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the schedule slept until, null if waking every minute.
+	 * @return the schedule slept until.
+	 */
+	public Schedule getSchedule() {
+		synchronized ( scheduleLock ) {
+			return schedule;
+		}
+	}
+
+	/**
+	 * Makes a thread sleeping on a schedule recompute its wake up time.
+	 * Must be called when the schedule has been changed.
+	 */
+	public void rearm() {
+		synchronized ( scheduleLock ) {
+			rearmed = true;
+			scheduleLock.notifyAll();
+		}
+	}
+
 	/**
 	 * Returns clone of the previous cron datestamp as a long.
 	 * @return clone of the previous cron datestamp as a long.
@@ -136,11 +240,28 @@ public class CronMinuteAlign {
 	}
 
 	/**
-	 * Sleeps until the next hh:mm:00 or when interrupted.
-	 * @return the current time as a long.
+	 * Returns the minute of day, from 0-1439, of the current event.
+	 * @return the minute of day of the current event.
+	 */
+	public int getMinuteOfDay() {
+		return cronNext.get( Calendar.HOUR_OF_DAY ) * 60 + cronNext.get( Calendar.MINUTE );
+	}
+
+	/**
+	 * Sleeps until the next hh:mm:00 or when interrupted. When interrupted
+	 * the current time is returned and the alignment is left unchanged.
+	 * @return the time slept until as a long, the current time if interrupted.
 	 */
 	public long sleep() {
 		Date tmpDate;
+		long expected;
+
+		if ( getSchedule() != null ) {
+			return sleepUntilDue();
+		}
+		if ( precise ) {
+			return sleepPrecise();
+		}
 
 	// Current
 
@@ -155,7 +276,9 @@ public class CronMinuteAlign {
 		cronNext.set( Calendar.SECOND, 0 );
 		cronNext.add( Calendar.MINUTE, 1 );
 
-		cronSleep = cronNext.getTime().getTime() - cronCurr.getTime().getTime();
+		expected = cronNext.getTime().getTime();
+		cronSleep = expected - cronCurr.getTime().getTime();
+		missed = 0;
 		if ( cronSleep <= 0) {
 
 		// Curr + 1
@@ -166,6 +289,7 @@ public class CronMinuteAlign {
 			cronNext.set( Calendar.SECOND, 0 );
 			cronNext.add( Calendar.MINUTE, 1 );
 			cronSleep = cronNext.getTime().getTime() - cronCurr.getTime().getTime();
+			missed = (int)((cronNext.getTime().getTime() - expected) / 60000);
 		}
 
 	// Debug
@@ -182,9 +306,9 @@ public class CronMinuteAlign {
 			Thread.sleep(cronSleep);
 		}
 		catch (InterruptedException e) {
-			tmpDate.setTime( System.currentTimeMillis() );
-			cronNext.setTime( tmpDate );
+			return System.currentTimeMillis();
 		}
+		lateness = (System.currentTimeMillis() - cronNext.getTime().getTime()) * 1000000L;
 
 	// Update Next
 
@@ -197,6 +321,176 @@ public class CronMinuteAlign {
 		return cronNext.getTime().getTime();
 	}
 
+	/**
+	 * Parks until the schedule is next due, when rearmed or interrupted.
+	 * Fire times already passed are skipped, as in <CODE>sleep()</CODE>.
+	 * When interrupted the current time is returned and the alignment is
+	 * left unchanged.
+	 * In precise mode the lock is released for the final park, if the
+	 * schedule is changed or rearmed meanwhile the fire time is recomputed.
+	 * @return the fire time as a long.
+	 */
+	protected long sleepUntilDue() {
+		long prev;
+		long now;
+		long next;
+		long deadline;
+
+		prev = cronPrev.getTime().getTime();
+		missed = 0;
+		while ( true ) {
+			synchronized ( scheduleLock ) {
+				now = System.currentTimeMillis();
+				if ( schedule == null ) {
+					next = now;
+					break;
+				}
+				next = schedule.nextFireTime( prev );
+				while ( (next != Schedule.NO_FIRE_TIME) && (next <= now - LATE_TOLERANCE) ) {
+					prev = next;
+					next = schedule.nextFireTime( prev );
+					++missed;
+				}
+
+			// Debug
+
+				if ( debug ) {
+					System.out.println( "prev: " + toString(prev) + " - " + prev );
+					System.out.println( "curr: " + toString(now) + " - " + now );
+					System.out.println( "next: " + ((next == Schedule.NO_FIRE_TIME) ? "none" : toString(next)) + " - " + next );
+				}
+
+			// Sleep
+
+				try {
+					if ( next == Schedule.NO_FIRE_TIME ) {
+						scheduleLock.wait();
+						continue;
+					}
+					else if ( precise && (next - now <= PARK_MARGIN) ) {
+						deadline = System.nanoTime() + (next - now) * 1000000L;
+						rearmed = false;
+					}
+					else if ( next > now ) {
+						scheduleLock.wait( precise ? next - now - PARK_MARGIN : next - now );
+						continue;
+					}
+					else {
+						lateness = (now - next) * 1000000L;
+						break;
+					}
+				}
+				catch (InterruptedException e) {
+					return System.currentTimeMillis();
+				}
+			}
+
+		// Park, without the lock so the schedule can be changed meanwhile
+
+			if ( !parkUntil( deadline ) ) {
+				return System.currentTimeMillis();
+			}
+			synchronized ( scheduleLock ) {
+				if ( !rearmed ) {
+					lateness = System.nanoTime() - deadline;
+					break;
+				}
+			}
+		}
+
+	// Update Next
+
+		currDate.setTime( now );
+		cronCurr.setTime( currDate );
+		currDate.setTime( next );
+		cronNext.setTime( currDate );
+		cronPrev.setTime( currDate );
+		currEventYearDay = cronNext.get( Calendar.DAY_OF_YEAR );
+
+		return next;
+	}
+
+	/**
+	 * Sleeps until the next hh:mm:00 using a System.nanoTime() deadline.
+	 * When interrupted the current time is returned and the alignment is
+	 * left unchanged, so the next call waits for the same minute.
+	 * @return the current time as a long.
+	 */
+	protected long sleepPrecise() {
+		long now;
+		long next;
+		long deadline;
+		Date tmpDate;
+
+	// Prev + 1, or Curr + 1 if passed
+
+		now = System.currentTimeMillis();
+		tmpDate = cronPrev.getTime();
+		cronNext.setTime( tmpDate );
+		cronNext.set( Calendar.MILLISECOND, 0 );
+		cronNext.set( Calendar.SECOND, 0 );
+		cronNext.add( Calendar.MINUTE, 1 );
+		next = cronNext.getTime().getTime();
+		missed = 0;
+		if ( next <= now ) {
+			tmpDate.setTime( now );
+			cronNext.setTime( tmpDate );
+			cronNext.set( Calendar.MILLISECOND, 0 );
+			cronNext.set( Calendar.SECOND, 0 );
+			cronNext.add( Calendar.MINUTE, 1 );
+			missed = (int)((cronNext.getTime().getTime() - next) / 60000);
+			next = cronNext.getTime().getTime();
+		}
+		deadline = System.nanoTime() + (next - now) * 1000000L;
+
+	// Debug
+
+		if ( debug ) {
+			System.out.println( "prev: " + toString(cronPrev) + " - " + cronPrev.getTime().getTime() );
+			System.out.println( "curr: " + toString(now) + " - " + now );
+			System.out.println( "next: " + toString(cronNext) + " - " + next );
+		}
+
+	// Park
+
+		if ( !parkUntil( deadline ) ) {
+			return System.currentTimeMillis();
+		}
+		lateness = System.nanoTime() - deadline;
+
+	// Update Next
+
+		currDate.setTime( now );
+		cronCurr.setTime( currDate );
+		tmpDate.setTime( next );
+		cronPrev.setTime( tmpDate );
+		currEventYearDay = cronNext.get( Calendar.DAY_OF_YEAR );
+
+		return next;
+	}
+
+	/**
+	 * Parks the current thread until the System.nanoTime() deadline,
+	 * yielding instead of parking for the last <CODE>SPIN_NANOS</CODE>.
+	 * @param deadline deadline as System.nanoTime().
+	 * @return false if interrupted before the deadline.
+	 */
+	protected static boolean parkUntil(long deadline) {
+		long remaining;
+		while ( (remaining = deadline - System.nanoTime()) > 0 ) {
+			if ( Thread.interrupted() ) {
+				return false;
+			}
+			if ( remaining > SPIN_NANOS ) {
+				LockSupport.parkNanos( remaining - SPIN_NANOS );
+			}
+			else {
+				Thread.yield();
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Returns a Calendar object with the date as a long of the current
 	 * calendar day but with the time set to midnight.
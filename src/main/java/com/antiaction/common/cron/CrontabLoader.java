@@ -0,0 +1,538 @@
+/*
+ * Cron Schedule, bulk crontab loader.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Lines longer than the mapped window mapped whole.
+ *               Invalid lines parsed once with a cache.
+ */
+
+package com.antiaction.common.cron;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads whole crontab files. The input is cut into chunks of whole lines,
+ * from a memory mapped file or read from a stream, and the chunks are
+ * parsed in parallel on a fork/join pool while the next ones are read.
+ * Blank lines, comments and environment lines (<CODE>NAME=value</CODE>) are
+ * skipped.<BR>
+ * <BR>
+ * The handler is called from the loading thread only, in line order, with
+ * the compiled schedule, command string and line number of each crontab
+ * line, or with the error of each invalid one. Given a
+ * <CODE>ScheduleCache</CODE>, repeated expressions are parsed once and
+ * share their compiled schedule.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class CrontabLoader {
+
+	/** Default chunk size in bytes. */
+	public static final int CHUNK_SIZE = 1 << 20;
+
+	/** Size of the memory mapped window in bytes. */
+	protected static final long MAP_SIZE = 1L << 28;
+
+	/** Character set of crontab files. */
+	protected static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	/** Cache interning the compiled schedules, may be null. */
+	protected ScheduleCache cache;
+
+	/** Pool parsing the chunks. */
+	protected ForkJoinPool pool;
+
+	/** Chunk size in bytes. */
+	protected int chunkSize = CHUNK_SIZE;
+
+	/** Memory mapped window size in bytes. */
+	protected long mapSize = MAP_SIZE;
+
+	/** Maximum number of chunks read ahead of the handler. */
+	protected int readAhead;
+
+	/**
+	 * Receives the lines of a crontab in order.
+	 */
+	public static interface Handler {
+
+		/**
+		 * Called for each valid crontab line.
+		 * @param line line number, starting from 1.
+		 * @param schedule compiled schedule.
+		 * @param command command string, empty if there was none.
+		 */
+		public void schedule(int line, CompiledSchedule schedule, String command);
+
+		/**
+		 * Called for each line which is not a valid crontab line.
+		 * @param line line number, starting from 1.
+		 * @param text the line.
+		 * @param errorCode <CODE>CrontabSchedule</CODE> error code.
+		 * @param errorPosition character index of the error in the line.
+		 */
+		public void invalid(int line, String text, int errorCode, int errorPosition);
+
+	}
+
+	/**
+	 * Creates a loader parsing on the common fork/join pool without a cache.
+	 */
+	public CrontabLoader() {
+		this( null, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Creates a loader.
+	 * @param cache cache interning the compiled schedules, or null.
+	 * @param pool pool parsing the chunks.
+	 */
+	public CrontabLoader(ScheduleCache cache, ForkJoinPool pool) {
+		this.cache = cache;
+		this.pool = pool;
+		readAhead = 2 * pool.getParallelism() + 1;
+	}
+
+	/**
+	 * Sets the chunk size, lines longer than a chunk are kept whole.
+	 * @param chunkSize chunk size in bytes.
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Loads a crontab file through a memory mapped buffer.
+	 * @param file crontab file.
+	 * @param handler receiver of the lines.
+	 * @return the number of valid crontab lines.
+	 * @throws IOException if the file could not be read.
+	 */
+	public int load(File file, Handler handler) throws IOException {
+		FileInputStream in = new FileInputStream( file );
+		try {
+			FileChannel channel = in.getChannel();
+			Loading loading = new Loading( handler );
+			long size = channel.size();
+			long position = 0;
+			while ( position < size ) {
+				long length = Math.min( mapSize, size - position );
+				ByteBuffer map = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+				int start = 0;
+				int end;
+				while ( start < length ) {
+					end = chunkEnd( map, start, (int)length, position + length == size );
+					if ( end == -1 ) {
+						break;
+					}
+					loading.submit( map, start, end );
+					start = end;
+				}
+				if ( start == 0 ) {
+					// Line longer than the mapped window, map it whole.
+					length = lineEnd( channel, position + length, size ) - position;
+					map = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+					loading.submit( map, 0, (int)length );
+					start = (int)length;
+				}
+				position += start;
+			}
+			return loading.finish();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the end of the chunk starting at the given index, just past a
+	 * line feed, or -1 if the rest of the buffer holds no complete line.
+	 */
+	private int chunkEnd(ByteBuffer buffer, int start, int limit, boolean last) {
+		int end = start + chunkSize;
+		if ( end >= limit ) {
+			if ( last ) {
+				return limit;
+			}
+			end = limit;
+		}
+		for (int i=end - 1; i>=start; --i) {
+			if ( buffer.get( i ) == '\n' ) {
+				return i + 1;
+			}
+		}
+		for (int i=end; i<limit; ++i) {
+			if ( buffer.get( i ) == '\n' ) {
+				return i + 1;
+			}
+		}
+		return last ? limit : -1;
+	}
+
+	/**
+	 * Returns the file position just past the next line feed at or after the
+	 * given position, or the size of the file if there is none.
+	 */
+	private long lineEnd(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( chunkSize );
+		int read;
+		while ( position < size ) {
+			buffer.clear();
+			read = channel.read( buffer, position );
+			if ( read == -1 ) {
+				break;
+			}
+			for (int i=0; i<read; ++i) {
+				if ( buffer.get( i ) == '\n' ) {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Loads a crontab from a stream.
+	 * @param in input stream, not closed.
+	 * @param handler receiver of the lines.
+	 * @return the number of valid crontab lines.
+	 * @throws IOException if the stream could not be read.
+	 */
+	public int load(InputStream in, Handler handler) throws IOException {
+		return load( Channels.newChannel( in ), handler );
+	}
+
+	/**
+	 * Loads a crontab from a channel.
+	 * @param channel input channel, not closed.
+	 * @param handler receiver of the lines.
+	 * @return the number of valid crontab lines.
+	 * @throws IOException if the channel could not be read.
+	 */
+	public int load(ReadableByteChannel channel, Handler handler) throws IOException {
+		Loading loading = new Loading( handler );
+		ByteBuffer buffer = ByteBuffer.allocate( chunkSize );
+		ByteBuffer next;
+		boolean eof = false;
+		int end;
+		while ( true ) {
+			while ( buffer.hasRemaining() && !eof ) {
+				eof = channel.read( buffer ) == -1;
+			}
+			if ( buffer.position() == 0 ) {
+				break;
+			}
+			end = chunkEnd( buffer, 0, buffer.position(), eof );
+			if ( end == -1 ) {
+				// Line longer than the chunk, keep reading.
+				next = ByteBuffer.allocate( buffer.capacity() * 2 );
+				buffer.flip();
+				next.put( buffer );
+				buffer = next;
+				continue;
+			}
+			next = ByteBuffer.allocate( chunkSize + buffer.position() - end );
+			next.put( buffer.array(), end, buffer.position() - end );
+			loading.submit( buffer, 0, end );
+			buffer = next;
+		}
+		return loading.finish();
+	}
+
+	/**
+	 * Parses one line, or returns null if it should be skipped.
+	 */
+	protected Entry parseLine(byte[] data, int start, int end, int line) {
+		int pos = start;
+		if ( (end > start) && (data[end - 1] == '\r') ) {
+			--end;
+		}
+		while ( (pos < end) && ((data[pos] == ' ') || (data[pos] == '\t')) ) {
+			++pos;
+		}
+		if ( (pos == end) || (data[pos] == '#') ) {
+			return null;
+		}
+		if ( isEnvironment( data, pos, end ) ) {
+			return null;
+		}
+		Entry entry = new Entry();
+		entry.line = line;
+		String text = new String( data, pos, end - pos, UTF8 );
+		CrontabSchedule schedule;
+		if ( cache != null ) {
+			// Either the shared compiled schedule or the crontab holding the error.
+			Schedule cached = cache.lookup( text, text, null );
+			if ( cached instanceof CompiledSchedule ) {
+				entry.schedule = (CompiledSchedule)cached;
+				entry.command = commandOf( text );
+				return entry;
+			}
+			schedule = (CrontabSchedule)cached;
+		}
+		else {
+			schedule = (CrontabSchedule)CrontabSchedule.crontabFactory( text );
+		}
+		if ( schedule.getErrorCode() == CrontabSchedule.ERROR_NONE ) {
+			entry.schedule = schedule.getCompiledSchedule();
+			entry.command = schedule.getCommand();
+		}
+		else {
+			entry.text = text;
+			entry.errorCode = schedule.getErrorCode();
+			entry.errorPosition = schedule.getErrorPosition();
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns true if the line sets an environment variable, either a first
+	 * word containing '=' or a name followed by blanks and '='.
+	 */
+	protected static boolean isEnvironment(byte[] data, int pos, int end) {
+		int i = pos;
+		boolean name = true;
+		byte c;
+		while ( (i < end) && ((c = data[i]) != ' ') && (c != '\t') ) {
+			if ( c == '=' ) {
+				return true;
+			}
+			if ( !(((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z')) || (c == '_') || ((i > pos) && (c >= '0') && (c <= '9'))) ) {
+				name = false;
+			}
+			++i;
+		}
+		if ( !name ) {
+			return false;
+		}
+		while ( (i < end) && ((data[i] == ' ') || (data[i] == '\t')) ) {
+			++i;
+		}
+		return (i < end) && (data[i] == '=');
+	}
+
+	/**
+	 * Returns what follows the five schedule fields of a valid crontab line.
+	 */
+	protected static String commandOf(String text) {
+		int pos = 0;
+		int len = text.length();
+		char c;
+		for (int f=0; f<5; ++f) {
+			while ( (pos < len) && (((c = text.charAt( pos )) == ' ') || (c == '\t')) ) {
+				++pos;
+			}
+			while ( (pos < len) && ((c = text.charAt( pos )) != ' ') && (c != '\t') ) {
+				++pos;
+			}
+		}
+		while ( (pos < len) && (((c = text.charAt( pos )) == ' ') || (c == '\t')) ) {
+			++pos;
+		}
+		return text.substring( pos );
+	}
+
+	/**
+	 * A parsed line.
+	 */
+	protected static class Entry {
+
+		/** Line number within the chunk, then within the crontab. */
+		protected int line;
+		/** Compiled schedule, null if the line is invalid. */
+		protected CompiledSchedule schedule;
+		/** Command string. */
+		protected String command;
+		/** Text of an invalid line. */
+		protected String text;
+		/** Error code of an invalid line. */
+		protected int errorCode;
+		/** Error position of an invalid line. */
+		protected int errorPosition;
+
+	}
+
+	/**
+	 * Parsed lines of a chunk.
+	 */
+	protected static class Chunk {
+
+		/** Parsed lines, numbered from 1 within the chunk. */
+		protected ArrayList entries = new ArrayList();
+		/** Number of lines in the chunk. */
+		protected int lines;
+
+	}
+
+	/**
+	 * Parses the lines of a chunk.
+	 */
+	protected class ChunkParser implements Callable {
+
+		/** Buffer holding the chunk. */
+		protected ByteBuffer buffer;
+		/** Start of the chunk. */
+		protected int start;
+		/** End of the chunk. */
+		protected int end;
+
+		protected ChunkParser(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Object call() {
+			byte[] data;
+			int offset;
+			if ( buffer.hasArray() ) {
+				data = buffer.array();
+				offset = buffer.arrayOffset() + start;
+			}
+			else {
+				data = new byte[end - start];
+				ByteBuffer dup = buffer.duplicate();
+				dup.limit( end );
+				dup.position( start );
+				dup.get( data );
+				offset = 0;
+			}
+			int limit = offset + end - start;
+			Chunk chunk = new Chunk();
+			Entry entry;
+			int lineStart = offset;
+			for (int i=offset; i<limit; ++i) {
+				if ( data[i] == '\n' ) {
+					entry = parseLine( data, lineStart, i, ++chunk.lines );
+					if ( entry != null ) {
+						chunk.entries.add( entry );
+					}
+					lineStart = i + 1;
+				}
+			}
+			if ( lineStart < limit ) {
+				entry = parseLine( data, lineStart, limit, ++chunk.lines );
+				if ( entry != null ) {
+					chunk.entries.add( entry );
+				}
+			}
+			return chunk;
+		}
+
+	}
+
+	/**
+	 * State of one load, chunks in flight and lines delivered.
+	 */
+	protected class Loading {
+
+		/** Receiver of the lines. */
+		protected Handler handler;
+		/** Chunks submitted and not yet delivered, in order. */
+		protected LinkedList pending = new LinkedList();
+		/** Lines delivered. */
+		protected int lines;
+		/** Valid lines delivered. */
+		protected int schedules;
+
+		protected Loading(Handler handler) {
+			this.handler = handler;
+		}
+
+		/**
+		 * Submits a chunk for parsing, first delivering the oldest one if
+		 * too many are in flight.
+		 */
+		protected void submit(ByteBuffer buffer, int start, int end) throws IOException {
+			if ( pending.size() >= readAhead ) {
+				deliver();
+			}
+			pending.addLast( pool.submit( new ChunkParser( buffer, start, end ) ) );
+		}
+
+		/**
+		 * Delivers the remaining chunks.
+		 * @return the number of valid lines.
+		 */
+		protected int finish() throws IOException {
+			while ( !pending.isEmpty() ) {
+				deliver();
+			}
+			return schedules;
+		}
+
+		/**
+		 * Waits for the oldest chunk and passes its lines to the handler.
+		 */
+		protected void deliver() throws IOException {
+			Chunk chunk;
+			try {
+				chunk = (Chunk)((Future)pending.removeFirst()).get();
+			}
+			catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while loading" );
+			}
+			catch (ExecutionException e) {
+				cancel();
+				throw new IOException( "Failed parsing chunk: " + e.getCause() );
+			}
+			for (int i=0; i<chunk.entries.size(); ++i) {
+				Entry entry = (Entry)chunk.entries.get( i );
+				if ( entry.schedule != null ) {
+					handler.schedule( lines + entry.line, entry.schedule, entry.command );
+					++schedules;
+				}
+				else {
+					handler.invalid( lines + entry.line, entry.text, entry.errorCode, entry.errorPosition );
+				}
+			}
+			lines += chunk.lines;
+		}
+
+		private void cancel() {
+			while ( !pending.isEmpty() ) {
+				((Future)pending.removeFirst()).cancel( false );
+			}
+		}
+
+	}
+
+}
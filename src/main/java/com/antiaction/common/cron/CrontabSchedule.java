@@ -30,6 +30,11 @@
  * 12-Nov-2001 : Package change again.
  *               Class renamed. isEmpty() removed.
  * 13-Nov-2001 : Removed getCrontab().
+ * 17-Oct-2026 : Added getCommand().
+ *             : Added hashed H fields.
+ *             : Parser rewritten as a single pass over the string.
+ *               Errors reported with a code and position.
+ *               Names accepted in month and day of week lists.
  */
 
 package com.antiaction.common.cron;
@@ -38,17 +43,55 @@ package com.antiaction.common.cron;
  * Class for parsing crontabs as found among other places in OpenBSD.
  * The format is fairly obfuscated but once mastered simple and powerful.<BR>
  * <BR>
- * RTFM
+ * RTFM<BR>
+ * <BR>
+ * As an extension the minute, hour, day of month and day of week fields
+ * accept the hashed tokens <CODE>H</CODE>, <CODE>H(a-b)</CODE>,
+ * <CODE>H/n</CODE> and <CODE>H(a-b)/n</CODE>, as in Jenkins. They resolve to
+ * a value, or the offset of a step, derived from a stable hash of the
+ * schedule key. Schedules with the same expression but different keys are
+ * thereby spread out instead of all firing at once. In the day of month
+ * field <CODE>H</CODE> picks from 1-28 so it fires every month.<BR>
+ * <BR>
+ * The string is parsed in a single pass without substrings or exceptions.
+ * When it is not a valid crontab <CODE>getErrorCode()</CODE> tells what
+ * was wrong and <CODE>getErrorPosition()</CODE> where.
  *
  * @version 2.00
  * @author Nicholas Clarke <nclarke@diku.dk>
  */
 public class CrontabSchedule extends ScheduleAbstract {
 
-	/** Array of strings, one for each substring of a crontab. */
-	private String[] fields = new String[6];
+	/** No error, the crontab is valid. */
+	public static final int ERROR_NONE = 0;
+	/** Less than five schedule fields. */
+	public static final int ERROR_FIELDS = 1;
+	/** Expected a number or name. */
+	public static final int ERROR_NUMBER = 2;
+	/** Number outside the range of the field, or a range from high to low. */
+	public static final int ERROR_RANGE = 3;
+	/** Step missing, zero or following a single value. */
+	public static final int ERROR_STEP = 4;
+	/** Unknown month or day name. */
+	public static final int ERROR_NAME = 5;
+	/** Unexpected character. */
+	public static final int ERROR_SYNTAX = 6;
+
 	/** Contrains the optional command string associated with a crontab shedule. */
 	private String command = "";
+	/** Hash of the schedule key, resolving H fields. */
+	private int hash;
+
+	/** String being parsed. */
+	private String str;
+	/** Parse position. */
+	private int pos;
+	/** A list contained a bare wildcard. */
+	private boolean wildcard;
+	/** Error code. */
+	private int errorCode = ERROR_NONE;
+	/** Position of the error. */
+	private int errorPosition = -1;
 
 	/**
 	 * Creates and initializes an empty cron schedule.
@@ -63,347 +106,304 @@ public class CrontabSchedule extends ScheduleAbstract {
 	 * @param str a string representation of the crontab schedule.
 	 */
 	public static ScheduleAbstract crontabFactory(String crontabStr) {
+		return crontabFactory(crontabStr, crontabStr);
+	}
+
+	/**
+	 * Creates a crontab schedule resolving H fields with the hash of the key.
+	 * The same key always gives the same schedule.
+	 * @param crontabStr a string representation of the crontab schedule.
+	 * @param key schedule key, a job name for instance.
+	 * @return the crontab schedule.
+	 */
+	public static ScheduleAbstract crontabFactory(String crontabStr, String key) {
 		CrontabSchedule crontabSchedule = new CrontabSchedule();
+		crontabSchedule.hash = key.hashCode();
 		crontabSchedule.parseString(crontabStr);
 		return crontabSchedule;
 	}
 
+	/**
+	 * Returns the command string following the schedule fields.
+	 * @return the command string, empty if there was none.
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * Returns the reason the crontab string was not valid.
+	 * @return <CODE>ERROR_NONE</CODE> if it was valid, otherwise one of the other error codes.
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * Returns the position in the crontab string where parsing failed.
+	 * @return character index of the error, -1 if it was valid.
+	 */
+	public int getErrorPosition() {
+		return errorPosition;
+	}
+
 	/**
 	 * Convert and validate a string with the requested schedule.
 	 * @param str a string representation of the schedule.
 	 * @return a boolean value as to wether the cron schedule was valid.
 	 */
 	private boolean parseString(String str) {
-		int index;
-		int currIndx;
-		int prevIndx;
-		boolean b;
-
-		index = 0;
-		currIndx = 0;
-		prevIndx = currIndx;
-		b = true;
-
-		while ( b ) {
-			if ( currIndx < str.length() ) {
-				while ( (currIndx < str.length()) && ((str.charAt(currIndx) == ' ') || (str.charAt(currIndx) == '\t')) ) {
-					currIndx++;
-				}
-				prevIndx = currIndx;
-				while ( (currIndx < str.length()) && ((str.charAt(currIndx) != ' ') && (str.charAt(currIndx) != '\t')) ) {
-					currIndx++;
-				}
-				if ( currIndx-prevIndx == 0 ) {
-					return false;
-				}
-				fields[index++] = str.substring(prevIndx, currIndx);
-			}
-			else {
-				b = false;
-			}
-			if ( index == 5 ) {
-				while ( (currIndx < str.length()) && ((str.charAt(currIndx) == ' ') || (str.charAt(currIndx) == '\t')) ) {
-					currIndx++;
-				}
-				b = false;
-			}
-		}
-
-		if ( index < 5 )
-			return false;
-
-		fields[index++] = str.substring(currIndx, str.length());
+		this.str = str;
+		pos = 0;
 
-		if ( !parseMinute(fields[0]) )
+		if ( !parseList(minute, 0, 59, null) )
 			return false;
-		if ( !parseHour(fields[1]) )
+		minuteAll = wildcard;
+		if ( !parseList(hour, 0, 23, null) )
 			return false;
-		if ( !parseDayOfMonth(fields[2]) )
+		hourAll = wildcard;
+		if ( !parseList(dayofmonth, 1, 31, null) )
 			return false;
-		if ( !parseMonth(fields[3]) )
+		dayofmonthAll = wildcard;
+		if ( !parseList(month, 1, 12, months) )
 			return false;
-		if ( !parseDayOfWeek(fields[4]) )
+		monthAll = wildcard;
+		if ( !parseList(dayofweek, 0, 7, days) )
 			return false;
+		dayofweekAll = wildcard;
 
 		dayofweek[0] = (byte)(dayofweek[0] | dayofweek[7]);
 		dayofweek[7] = (byte)(dayofweek[7] | dayofweek[0]);
 
-		command = fields[5];
+		skipBlanks();
+		command = str.substring(pos);
+		this.str = null;
 
 		return true;
 	}
 
 	/**
-	 * Parse Wildcard Range * / range
+	 * Records an error at the current position.
 	 */
-	private boolean parseWildRange(String str, byte[] destarray, int min, int max) {
-		int range = 1;
-		if ( str.length() == 0 )
-			return false;
-		try {
-			range = Integer.parseInt(str);
-		} catch(NumberFormatException e) {
-			return false;
-		}
-		if ( range <= 0 ) {
-			return false;
-		}
-		boolean b = true;
-		int index = min;
-		while ( b ) {
-			destarray[index-min] = 1;
-			index += range;
-			if ( index > max )
-				b = false;
-		}
-		return true;
+	private boolean error(int code) {
+		errorCode = code;
+		errorPosition = pos;
+		str = null;
+		return false;
 	}
 
 	/**
-	 * Parse Field
+	 * Skip spaces and tabs.
 	 */
-	private boolean parseField(String str, byte[] destarray, int min, int max, int range) {
-		int indexfrom = 0;
-		int indexto = 0;
-		int minusindex = -1;
-		minusindex = str.indexOf('-');
-		if ( minusindex == -1 ) {
-			if ( range != -1)
-				return false;
-			try {
-				indexfrom = Integer.parseInt(str);
-			} catch(NumberFormatException e) {
-				return false;
-			}
-			if ( (indexfrom < min) || (indexfrom > max) )
-				return false;
-			destarray[indexfrom - min] = 1;
+	private void skipBlanks() {
+		while ( (pos < str.length()) && ((str.charAt(pos) == ' ') || (str.charAt(pos) == '\t')) ) {
+			pos++;
 		}
-		else {
-			try {
-				indexfrom = Integer.parseInt(str.substring(0, minusindex));
-				indexto = Integer.parseInt(str.substring(minusindex+1, str.length()));
-			} catch(NumberFormatException e) {
-				return false;
-			}
-			if ( (indexfrom < min) || (indexto > max) || (indexfrom > indexto) )
-				return false;
-			if ( range == -1 ) {
-				for(int i=indexfrom; i<=indexto; i++)
-					destarray[i-min] = 1;
-			}
-			else {
-				boolean b = true;
-				int index = indexfrom;
-				while ( b ) {
-					destarray[index-min] = 1;
-					index += range;
-					if ( index > indexto )
-						b = false;
-				}
-			}
-		}
-		return true;
 	}
 
 	/**
-	 * Parse List Entry
+	 * Returns the current character, or 0 at the end of the string.
 	 */
-	private boolean parseEntry(String str, byte[] destarray, int min, int max) {
-		int rangeindex = -1;
-		int range = 1;
-		rangeindex = str.indexOf('/');
-		if ( rangeindex == -1 ) {
-			if ( !parseField(str.substring(0, str.length()), destarray, min, max, -1) )
-				return false;
-		}
-		else {
-			try {
-				range = Integer.parseInt(str.substring(rangeindex+1, str.length()));
-			} catch(NumberFormatException e) {
-				return false;
-			}
-			if ( range <= 0 )
-				return false;
-			if ( !parseField(str.substring(0, rangeindex), destarray, min, max, range) )
-				return false;
-		}
-		return true;
+	private char peek() {
+		return (pos < str.length()) ? str.charAt(pos) : 0;
 	}
 
 	/**
-	 * Parse Comma Separated List
+	 * Parse Comma Separated List, a whole field. Empty entries are ignored.
 	 */
-	private boolean parseList(String str, byte[] destarray, int min, int max) {
-		int indexprev = 0;
-		int index;
-		boolean b = true;
-		while ( b ) {
-			index = str.indexOf(",", indexprev);
-			if ( index == -1 )
-				index = str.length();
-			if ( index <= indexprev ) {
-				b = false;
-			}
-			else {
-				if ( !parseEntry(str.substring(indexprev, index), destarray, min, max) )
+	private boolean parseList(byte[] destarray, int min, int max, String[] names) {
+		char c;
+		skipBlanks();
+		if ( pos == str.length() )
+			return error(ERROR_FIELDS);
+		wildcard = false;
+		while ( true ) {
+			c = peek();
+			if ( (c == 0) || (c == ' ') || (c == '\t') )
+				return true;
+			if ( c != ',' ) {
+				if ( !parseEntry(destarray, min, max, names) )
 					return false;
-				index++;
-				indexprev = index;
+				c = peek();
+				if ( (c == 0) || (c == ' ') || (c == '\t') )
+					return true;
+				if ( c != ',' )
+					return error(ERROR_SYNTAX);
 			}
+			pos++;
 		}
-		return true;
 	}
 
 	/**
-	 * Parse Month String Literal (jan feb mar apr may jun jul aug sep oct nov dec)
+	 * Parse List Entry, * * / n a a-b a-b/n or one of the H forms.
 	 */
-	private boolean parseMonthString(String str, byte[] destarray) {
-		for(int i=0; i<months.length; i++) {
-			if ( str.compareToIgnoreCase(months[i]) == 0 ) {
-				month[i] = 1;
-				return true;
-			}
+	private boolean parseEntry(byte[] destarray, int min, int max, String[] names) {
+		int from;
+		int to;
+		int range = 1;
+		int start;
+		boolean single = false;
+		boolean all = false;
+		char c = peek();
+		if ( c == '*' ) {
+			pos++;
+			from = min;
+			to = max;
+			all = true;
 		}
-		return false;
-	}
-
-	/**
-	 * Parse Week Day String Literal (sun mon tue wed thu fri sat)
-	 */
-	private boolean parseDayString(String str, byte[] destarray) {
-		for(int i=0; i<days.length; i++) {
-			if ( str.compareToIgnoreCase(days[i]) == 0 ) {
-				dayofweek[i] = 1;
-				return true;
-			}
+		else if ( (c == 'H') && (destarray != month) ) {
+			pos++;
+			return parseHash(destarray, min, max);
 		}
-		return false;
-	}
-
-	/**
-	 * Parse Minute
-	 */
-	private boolean parseMinute(String str) {
-		if ( str.length() <= 0 )
-			return false;
-		if ( str.startsWith("*") ) {
-			if ( str.indexOf('/',1) != 1 ) {
-				for(int i=0; i<60; i++)
-					minute[i] = 1;
-				minuteAll = true;
-				return true;
+		else {
+			from = parseValue(min, max, names);
+			if ( from == -1 )
+				return false;
+			if ( peek() == '-' ) {
+				pos++;
+				to = parseValue(min, max, names);
+				if ( to == -1 )
+					return false;
+				if ( from > to )
+					return error(ERROR_RANGE);
 			}
 			else {
-				return parseWildRange(str.substring(2, str.length()), minute, 0, 59);
+				to = from;
+				single = true;
+			}
+		}
+		if ( peek() == '/' ) {
+			if ( single )
+				return error(ERROR_STEP);
+			pos++;
+			start = pos;
+			range = parseNumber();
+			if ( range <= 0 ) {
+				pos = start;
+				return error(ERROR_STEP);
 			}
 		}
-		else
-		{
-			return parseList(str, minute, 0, 59);
+		else if ( all ) {
+			wildcard = true;
 		}
+		for(int i=from; i<=to; i+=range)
+			destarray[i-min] = 1;
+		return true;
 	}
 
 	/**
-	 * Parse Hour
+	 * Parse Value, a number or a name, within the field range.
+	 * @return the value, or -1 after recording an error.
 	 */
-	private boolean parseHour(String str) {
-		if ( str.length() <= 0 )
-			return false;
-		if ( str.startsWith("*") ) {
-			if ( str.indexOf('/',1) != 1 ) {
-				for(int i=0; i<24; i++)
-					hour[i] = 1;
-				hourAll = true;
-				return true;
+	private int parseValue(int min, int max, String[] names) {
+		int start = pos;
+		int value;
+		if ( (names != null) && Character.isLetter(peek()) ) {
+			while ( Character.isLetter(peek()) ) {
+				pos++;
 			}
-			else {
-				return parseWildRange(str.substring(2, str.length()), hour, 0, 23);
+			for(int i=0; i<names.length; i++) {
+				if ( str.regionMatches(true, start, names[i], 0, names[i].length()) && (pos - start == names[i].length()) )
+					return min + i;
 			}
+			pos = start;
+			error(ERROR_NAME);
+			return -1;
 		}
-		else
-		{
-			return parseList(str, hour, 0, 23);
+		value = parseNumber();
+		if ( value == -1 ) {
+			error(ERROR_NUMBER);
+			return -1;
 		}
+		if ( (value < min) || (value > max) ) {
+			pos = start;
+			error(ERROR_RANGE);
+			return -1;
+		}
+		return value;
 	}
 
 	/**
-	 * Parse Day of Month
+	 * Parse Number, decimal digits with an optional plus sign.
+	 * @return the number, capped to stay positive, or -1 if there are no digits.
 	 */
-	private boolean parseDayOfMonth(String str) {
-		if ( str.length() <= 0 )
-			return false;
-		if ( str.startsWith("*") ) {
-			if ( str.indexOf('/',1) != 1 ) {
-				for(int i=0; i<31; i++)
-					dayofmonth[i] = 1;
-				dayofmonthAll = true;
-				return true;
-			}
-			else {
-				return parseWildRange(str.substring(2, str.length()), dayofmonth, 1, 31);
-			}
-		}
-		else
-		{
-			return parseList(str, dayofmonth, 1, 31);
+	private int parseNumber() {
+		int value = -1;
+		if ( peek() == '+' )
+			pos++;
+		char c = peek();
+		while ( (c >= '0') && (c <= '9') ) {
+			if ( value == -1 )
+				value = 0;
+			if ( value < 100000 )
+				value = value * 10 + (c - '0');
+			pos++;
+			c = peek();
 		}
+		return value;
 	}
 
 	/**
-	 * Parse Month
+	 * Returns a value in [0, n) derived from the key hash and the field,
+	 * identified by the length of its array.
 	 */
-	private boolean parseMonth(String str) {
-		if ( str.length() <= 0 )
-			return false;
-		if ( str.startsWith("*") ) {
-			if ( str.indexOf('/',1) != 1 ) {
-				for(int i=0; i<12; i++)
-					month[i] = 1;
-				monthAll = true;
-				return true;
-			}
-			else {
-				return parseWildRange(str.substring(2, str.length()), month, 1, 12);
-			}
-		}
-		else
-		{
-			if ( Character.isLetter(str.charAt(0)) ) {
-				return parseMonthString(str, month);
-			}
-			else {
-				return parseList(str, month, 1, 12);
-			}
-		}
+	private int hashValue(byte[] destarray, int n) {
+		int h = hash * 31 + destarray.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) % n;
 	}
 
 	/**
-	 * Parse Day of Week.
+	 * Parse Hashed Entry following the H, H H(a-b) H/n H(a-b)/n
 	 */
-	private boolean parseDayOfWeek(String str) {
-		if ( str.length() <= 0 )
-			return false;
-		if ( str.startsWith("*") ) {
-			if ( str.indexOf('/',1) != 1 ) {
-				for(int i=0; i<7; i++)
-					dayofweek[i] = 1;
-				dayofweekAll = true;
-				return true;
-			}
-			else {
-				return parseWildRange(str.substring(2, str.length()), dayofweek, 0, 7);
-			}
+	private boolean parseHash(byte[] destarray, int min, int max) {
+		int from = min;
+		int to = max;
+		int range = -1;
+		int start;
+		// Keep H valid in every month and away from sunday being both 0 and 7.
+		if ( destarray == dayofmonth )
+			to = 28;
+		else if ( destarray == dayofweek )
+			to = 6;
+		if ( peek() == '(' ) {
+			pos++;
+			from = parseValue(min, max, null);
+			if ( from == -1 )
+				return false;
+			if ( peek() != '-' )
+				return error(ERROR_SYNTAX);
+			pos++;
+			to = parseValue(min, max, null);
+			if ( to == -1 )
+				return false;
+			if ( from > to )
+				return error(ERROR_RANGE);
+			if ( peek() != ')' )
+				return error(ERROR_SYNTAX);
+			pos++;
 		}
-		else
-		{
-			if ( Character.isLetter(str.charAt(0)) ) {
-				return parseDayString(str, dayofweek);
-			}
-			else {
-				return parseList(str, dayofweek, 0, 7);
+		if ( peek() == '/' ) {
+			pos++;
+			start = pos;
+			range = parseNumber();
+			if ( range <= 0 ) {
+				pos = start;
+				return error(ERROR_STEP);
 			}
 		}
+		if ( range == -1 ) {
+			destarray[from + hashValue(destarray, to-from+1) - min] = 1;
+		}
+		else {
+			for(int i=from+hashValue(destarray, Math.min(range, to-from+1)); i<=to; i+=range)
+				destarray[i-min] = 1;
+		}
+		return true;
 	}
 
 }
@@ -0,0 +1,143 @@
+/*
+ * Cron Schedule, lazy fire time iterator.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Iterates over the fire times of a compiled schedule in a range of time,
+ * <CODE>[from, to)</CODE>, computing them a day at a time as needed. The
+ * fire times of a day are filled in from the masks in one go and days on
+ * which the schedule does not fire are skipped by
+ * <CODE>nextFireTime()</CODE> without being looked at.<BR>
+ * <BR>
+ * With <CODE>to</CODE> set to <CODE>Long.MAX_VALUE</CODE> the iteration is
+ * unbounded, ending only if the schedule stops firing for
+ * <CODE>CompiledSchedule.NEXT_FIRE_YEARS</CODE> years.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class FireTimeIterator implements PrimitiveIterator.OfLong {
+
+	/** Schedule iterated. */
+	protected CompiledSchedule schedule;
+	/** End of the range, exclusive. */
+	protected long to;
+
+	/** Fire times of the current day. */
+	protected long[] times = new long[CompiledSchedule.MINUTES_PER_DAY];
+	/** Number of fire times of the current day. */
+	protected int count;
+	/** Index of the next fire time in the current day. */
+	protected int index;
+	/** Next fire time, or <CODE>Schedule.NO_FIRE_TIME</CODE> at the end. */
+	protected long next;
+
+	/**
+	 * Creates an iterator over the fire times in <CODE>[from, to)</CODE>.
+	 * @param schedule compiled schedule.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive.
+	 */
+	public FireTimeIterator(CompiledSchedule schedule, long from, long to) {
+		this.schedule = schedule;
+		this.to = to;
+		next = schedule.nextFireTime( from - 1 );
+		if ( next != Schedule.NO_FIRE_TIME ) {
+			loadDay( next );
+		}
+		if ( next >= to ) {
+			next = Schedule.NO_FIRE_TIME;
+		}
+	}
+
+	/**
+	 * Fills in the fire times of the day of the given fire time and
+	 * positions the index on it.
+	 */
+	protected void loadDay(long time) {
+		count = schedule.getScheduleTimes( time, times );
+		index = 0;
+		while ( (index < count) && (times[index] < time) ) {
+			++index;
+		}
+		if ( index == count ) {
+			// Should not happen, fall back on the single time.
+			times[0] = time;
+			count = 1;
+			index = 0;
+		}
+		next = times[index];
+	}
+
+	/**
+	 * Returns true if there are more fire times in the range.
+	 * @return true if there are more fire times in the range.
+	 */
+	public boolean hasNext() {
+		return next != Schedule.NO_FIRE_TIME;
+	}
+
+	/**
+	 * Returns the next fire time in the range.
+	 * @return the next fire time as long.
+	 * @throws NoSuchElementException if there are no more fire times.
+	 */
+	public long nextLong() {
+		if ( next == Schedule.NO_FIRE_TIME ) {
+			throw new NoSuchElementException();
+		}
+		long time = next;
+		if ( ++index < count ) {
+			next = times[index];
+		}
+		else {
+			next = schedule.nextFireTime( times[count - 1] );
+			if ( next != Schedule.NO_FIRE_TIME ) {
+				loadDay( next );
+			}
+		}
+		if ( next >= to ) {
+			next = Schedule.NO_FIRE_TIME;
+		}
+		return time;
+	}
+
+	/**
+	 * Passes the remaining fire times to the action.
+	 * @param action receiver of the fire times.
+	 */
+	public void forEachRemaining(LongConsumer action) {
+		while ( next != Schedule.NO_FIRE_TIME ) {
+			action.accept( nextLong() );
+		}
+	}
+
+}
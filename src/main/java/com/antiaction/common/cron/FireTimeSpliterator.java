@@ -0,0 +1,133 @@
+/*
+ * Cron Schedule, fire time spliterator.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Splits at midnight in the schedule's time zone.
+ *               getComparator() typed, without an unchecked warning.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterator over the fire times of a compiled schedule in a range of
+ * time, <CODE>[from, to)</CODE>. A bounded range which has not been
+ * traversed yet splits in two at the midnight nearest its middle, so a
+ * parallel stream computes whole days on each thread. Traversal uses a
+ * <CODE>FireTimeIterator</CODE>, created on the first advance.<BR>
+ * <BR>
+ * <CODE>StreamSupport.longStream( spliterator, true )</CODE> gives a
+ * parallel stream of the fire times.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class FireTimeSpliterator implements Spliterator.OfLong {
+
+	/** Shortest range split, two days. */
+	protected static final long MIN_SPLIT = 2L * 24 * 60 * 60 * 1000;
+
+	/** Schedule traversed. */
+	protected CompiledSchedule schedule;
+	/** Start of the range, inclusive. */
+	protected long from;
+	/** End of the range, exclusive. */
+	protected long to;
+	/** Iterator, null until the first advance. */
+	protected FireTimeIterator iterator;
+
+	/**
+	 * Creates a spliterator over the fire times in <CODE>[from, to)</CODE>.
+	 * @param schedule compiled schedule.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive, <CODE>Long.MAX_VALUE</CODE> for no end.
+	 */
+	public FireTimeSpliterator(CompiledSchedule schedule, long from, long to) {
+		this.schedule = schedule;
+		this.from = from;
+		this.to = to;
+	}
+
+	public boolean tryAdvance(LongConsumer action) {
+		if ( iterator == null ) {
+			iterator = new FireTimeIterator( schedule, from, to );
+		}
+		if ( !iterator.hasNext() ) {
+			return false;
+		}
+		action.accept( iterator.nextLong() );
+		return true;
+	}
+
+	public void forEachRemaining(LongConsumer action) {
+		if ( iterator == null ) {
+			iterator = new FireTimeIterator( schedule, from, to );
+		}
+		iterator.forEachRemaining( action );
+	}
+
+	/**
+	 * Splits off the first half of the range, ending at a midnight.
+	 * @return spliterator over the first half, or null if the range is
+	 * unbounded, shorter than two days or already being traversed.
+	 */
+	public Spliterator.OfLong trySplit() {
+		if ( (iterator != null) || (to == Long.MAX_VALUE) || (to - from < MIN_SPLIT) ) {
+			return null;
+		}
+		long mid = schedule.getZoneDays().getDay( from + (to - from) / 2 ).getStart();
+		if ( (mid <= from) || (mid >= to) ) {
+			return null;
+		}
+		FireTimeSpliterator prefix = new FireTimeSpliterator( schedule, from, mid );
+		from = mid;
+		return prefix;
+	}
+
+	/**
+	 * Returns the number of minutes left in the range, an upper bound.
+	 * @return estimated number of fire times.
+	 */
+	public long estimateSize() {
+		if ( to == Long.MAX_VALUE ) {
+			return Long.MAX_VALUE;
+		}
+		return (to - from) / 60000 + 1;
+	}
+
+	public int characteristics() {
+		return ORDERED | DISTINCT | SORTED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Returns null, fire times are in the natural order of <CODE>Long</CODE>.
+	 * @return null.
+	 */
+	public Comparator<? super Long> getComparator() {
+		return null;
+	}
+
+}
@@ -23,12 +23,28 @@
  *
  * 10-Nov-2001 : First implementation.
  *               Moved some static fields from CronEvent.
+ * 17-Oct-2026 : Added NO_FIRE_TIME.
+ *               Added getScheduleTimes().
+ *               Added getScheduleMask().
+ *               Added nextFireTime().
+ *               Made the added methods default methods, existing
+ *               implementations keep compiling.
  */
 
 package com.antiaction.common.cron;
 
 /**
- * Interface for cron events.
+ * Interface for cron events.<BR>
+ * <BR>
+ * The interface used to declare constants only, it now declares
+ * <CODE>getScheduleTimes()</CODE>, <CODE>getScheduleMask()</CODE> and
+ * <CODE>nextFireTime()</CODE>, which groups, sets, the dispatcher and the
+ * horizon evaluate schedules by. They are default methods, so classes
+ * implementing the interface directly still compile. The mask and the next
+ * fire time default to being built from <CODE>getScheduleTimes()</CODE>
+ * with days in the default time zone, which is the one method such a class
+ * must implement before it is used with them. Classes extending
+ * <CODE>ScheduleAbstract</CODE> inherit all three.
  *
  * @version 2.00
  * @author Nicholas Clarke <nclarke@diku.dk>
@@ -39,6 +55,72 @@ public interface Schedule {
 	public static String[] months = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
 	/** Weekday string array. */
 	public static String[] days = {"sun", "mon", "tue", "wed", "thu", "fri", "sat"};
+	/** Returned instead of a date when a schedule does not fire. */
+	public static final long NO_FIRE_TIME = -1;
+
+	/** Number of days the default <CODE>nextFireTime()</CODE> looks ahead, a full cycle of leap years and weekdays. */
+	public static final int NEXT_FIRE_DAYS = 28 * 366;
+
+	/**
+	 * Given a date as long returns an array of the dates as long on which
+	 * the schedule fires that day, in ascending order.
+	 * The default throws <CODE>UnsupportedOperationException</CODE>.
+	 * @param l date as long.
+	 * @return array of dates as long.
+	 */
+	public default long[] getScheduleTimes(long l) {
+		throw new UnsupportedOperationException( getClass().getName() + " does not implement getScheduleTimes()" );
+	}
+
+	/**
+	 * Given a date as long fills the supplied day mask with one bit per
+	 * minute of the day. A set bit indicating an event. The mask is cleared
+	 * first, so the same buffer can be reused from day to day.
+	 * The default sets the minutes of <CODE>getScheduleTimes()</CODE> in the
+	 * default time zone.
+	 * @param l date as long.
+	 * @param mask day mask of at least <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+	 * @return the supplied day mask.
+	 */
+	public default long[] getScheduleMask(long l, long[] mask) {
+		ZoneDays.Day day = ZoneDays.getInstance( null ).getDay( l );
+		long[] times = getScheduleTimes( l );
+		int mod;
+		for (int i=0; i<CompiledSchedule.DAY_MASK_LENGTH; ++i) {
+			mask[i] = 0;
+		}
+		for (int i=0; i<times.length; ++i) {
+			mod = day.getMinuteOfDay( times[i] );
+			mask[mod >>> 6] |= 1L << (mod & 63);
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the first minute strictly after the given date on which this
+	 * schedule fires.
+	 * The default looks through <CODE>getScheduleTimes()</CODE> day by day in
+	 * the default time zone, for at most <CODE>NEXT_FIRE_DAYS</CODE> days.
+	 * @param after date as long.
+	 * @return next fire time as long or <CODE>NO_FIRE_TIME</CODE>.
+	 */
+	public default long nextFireTime(long after) {
+		ZoneDays zoneDays = ZoneDays.getInstance( null );
+		ZoneDays.Day day = zoneDays.getDay( after );
+		long l = after;
+		long[] times;
+		for (int i=0; i<NEXT_FIRE_DAYS; ++i) {
+			times = getScheduleTimes( l );
+			for (int j=0; j<times.length; ++j) {
+				if ( times[j] > after ) {
+					return times[j];
+				}
+			}
+			day = zoneDays.getDayByEpochDay( day.getEpochDay() + 1 );
+			l = day.getStart();
+		}
+		return NO_FIRE_TIME;
+	}
 
 	// ...
 
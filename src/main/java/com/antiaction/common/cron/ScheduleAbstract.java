@@ -39,6 +39,16 @@
  * 12-Nov-2001 : Renamed getEvents() -> getScheduleArray(). Javadoc.
  *             : Reimplemented old getEvents() as getScheduleList().
  *                Using List and without creating new Calendar objects. Returns Longs.
+ * 17-Oct-2026 : Added nextFireTime() and nextFireTimes().
+ *               Day of month/week switch moved into matchesDay().
+ *               Added getCompiledSchedule(), evaluation uses the bitmasks.
+ *               Added getScheduleMask(), getScheduleArray() uses it.
+ *               Added getScheduleTimes(), getScheduleList() uses it.
+ *               Evaluation delegated to the immutable CompiledSchedule.
+ *               Removed dayCal and dayDate.
+ *               Added fireTimes() and fireTimeSpliterator().
+ *               Added time zone.
+ *               monthToInt() no longer swaps September and October.
  */
 
 package com.antiaction.common.cron;
@@ -46,14 +56,19 @@ package com.antiaction.common.cron;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.TimeZone;
 
 /**
  * Abstract class with common fields and methods for a basic scheduling
  * implemention. Extending classes will have to initialize these fields
- * from some form of chosen configuration.
+ * from some form of chosen configuration.<BR>
+ * <BR>
+ * All evaluation is delegated to the <CODE>CompiledSchedule</CODE> returned
+ * by <CODE>getCompiledSchedule()</CODE>, which is immutable. Once the fields
+ * have been initialized a schedule may be evaluated by several threads at
+ * the same time. The fields are matched against the wall clock of the
+ * schedule's time zone, the default time zone unless one is set.
  *
  * @version 2.00
  * @author Nicholas Clarke <nclarke@diku.dk>
@@ -82,10 +97,11 @@ public abstract class ScheduleAbstract implements Schedule {
 	/** Day of week all. */
 	protected boolean dayofweekAll;
 
-	/** GregorianCalendar used for building the day schedule array. */
-	protected GregorianCalendar dayCal;
-	/** Date associated with Calendar. */
-	protected Date dayDate;
+	/** Time zone, null for the default time zone. */
+	protected TimeZone timeZone;
+
+	/** Bitmask version of the fields, compiled on demand. */
+	protected CompiledSchedule compiled;
 
 	/** Avoid fill cast, bite me. */
 	private static byte byteZero = 0;
@@ -111,8 +127,38 @@ public abstract class ScheduleAbstract implements Schedule {
 		dayofmonthAll = false;
 		monthAll = false;
 		dayofweekAll = false;
-		dayCal = new GregorianCalendar();
-		dayDate = dayCal.getTime();
+		compiled = null;
+	}
+
+	/**
+	 * Sets the time zone the schedule is evaluated in.
+	 * @param zone time zone, null for the default time zone.
+	 */
+	public void setTimeZone(TimeZone zone) {
+		timeZone = (zone != null) ? (TimeZone)zone.clone() : null;
+		compiled = null;
+	}
+
+	/**
+	 * Returns the time zone the schedule is evaluated in.
+	 * @return the time zone, null for the default time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return (timeZone != null) ? (TimeZone)timeZone.clone() : null;
+	}
+
+	/**
+	 * Returns the bitmask version of this schedule. The masks are compiled
+	 * the first time this method is called, extending classes must call
+	 * <CODE>clear()</CODE> before changing the fields again. Compiling twice
+	 * from different threads is harmless, the result is immutable.
+	 * @return compiled schedule.
+	 */
+	public CompiledSchedule getCompiledSchedule() {
+		if ( compiled == null ) {
+			compiled = CompiledSchedule.compile( this );
+		}
+		return compiled;
 	}
 
 	/**
@@ -132,80 +178,41 @@ public abstract class ScheduleAbstract implements Schedule {
 	 * @return schedule array.
 	 */
 	public byte[] getScheduleArray(long l) {
-		int dateIndex, monthIndex, weekdayIndex;
+		long[] mask;
 		byte[] tmpArray;
-		int daySwitch;
-		boolean b;
 		int idx;
-
-	// Setup
-
-		dayDate.setTime( l );
-		dayCal.setTime( dayDate );
-
-		dateIndex = dayCal.get(Calendar.DATE) - 1;
-		monthIndex = monthToInt( dayCal.get(Calendar.MONTH) );
-		weekdayIndex = weekdayToInt( dayCal.get(Calendar.DAY_OF_WEEK ) );
-
+		mask = getScheduleMask( l );
 		tmpArray = new byte[24*60];
-		Arrays.fill(tmpArray, byteZero);
-
-	// Valid
-
-		if ( (dateIndex == -1) || (monthIndex == -1) || (weekdayIndex == -1) )
-			return tmpArray;
-
-	// Month
-
-		if ( monthAll || (month[monthIndex] != 0) ) {
-
-		// Day of Month and/or Week
-
-			daySwitch = 0;
-			if ( dayofmonthAll ) daySwitch = daySwitch | 1;
-			if ( dayofweekAll )	daySwitch = daySwitch | 2;
-
-			switch( daySwitch ) {
-				case 0:	// m.day - w.day -
-					if ( (dayofmonth[dateIndex] != 0) || (dayofweek[weekdayIndex] != 0) )
-						b = true;
-					else
-						b = false;
-					break;
-				case 1:	// m.day * w.day -
-					if ( dayofweek[weekdayIndex] != 0 )
-						b = true;
-					else
-						b = false;
-					break;
-				case 2:	// m.day - w.day *
-					if ( dayofmonth[dateIndex] != 0 )
-						b = true;
-					else
-						b = false;
-					break;
-				case 3:	// m.day * w.day *
-					b = true;
-					break;
-				default:
-					b = false;
-			}
-			if ( b ) {
-				idx = 0;
-				for(int h=0; h<24; ++h) {
-					for(int m=0; m<60; ++m) {
-						if ( (hour[h] != 0) && (minute[m] != 0) ) {
-							tmpArray[idx] = 1;
-						}
-						++idx;
-					}
-				}
-			}
+		idx = CompiledSchedule.nextSet( mask, 0 );
+		while ( idx != -1 ) {
+			tmpArray[idx] = 1;
+			idx = CompiledSchedule.nextSet( mask, idx + 1 );
 		}
-
 		return tmpArray;
 	}
 
+	/**
+	 * Given a date as long returns a day mask with one bit per minute of
+	 * the day. A set bit indicating an event.
+	 * @param l date as long.
+	 * @return day mask of <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+	 */
+	public long[] getScheduleMask(long l) {
+		return getScheduleMask( l, new long[CompiledSchedule.DAY_MASK_LENGTH] );
+	}
+
+	/**
+	 * Given a date as long fills the supplied day mask with one bit per
+	 * minute of the day. A set bit indicating an event. The mask is cleared
+	 * first, so the same buffer can be reused from day to day.
+	 * @param l date as long.
+	 * @param mask day mask of at least <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+	 * @return the supplied day mask.
+	 */
+	public long[] getScheduleMask(long l, long[] mask) {
+		return getCompiledSchedule().getScheduleMask( l, mask );
+	}
+
 	/**
 	 * Given a <CODE>Calendar</CODE> returns a schedule list of dates as long.
 	 * @param cal <CODE>Calendar</CODE>.
@@ -221,78 +228,102 @@ public abstract class ScheduleAbstract implements Schedule {
 	 * @return schedule list of dates as <CODE>Long</CODE>.
 	 */
 	public List getScheduleList(long l) {
-		int dateIndex, monthIndex, weekdayIndex;
+		long[] times;
 		ArrayList tmpArray;
-		int daySwitch;
-		boolean b;
-
-	// Setup
-
-		dayDate.setTime( l );
-		dayCal.setTime( dayDate );
-
-		dateIndex = dayCal.get(Calendar.DATE) - 1;
-		monthIndex = monthToInt( dayCal.get(Calendar.MONTH) );
-		weekdayIndex = weekdayToInt( dayCal.get(Calendar.DAY_OF_WEEK ) );
-
-		tmpArray = new ArrayList();
-
-	// Valid
-
-		if ( (dateIndex == -1) || (monthIndex == -1) || (weekdayIndex == -1) )
-			return tmpArray;
+		times = getScheduleTimes( l );
+		tmpArray = new ArrayList( times.length );
+		for (int i=0; i<times.length; ++i) {
+			tmpArray.add( new Long( times[i] ) );
+		}
+		return tmpArray;
+	}
 
-	// Month
+	/**
+	 * Given a date as long returns an array of the dates as long on which
+	 * the schedule fires that day, in ascending order.
+	 * @param l date as long.
+	 * @return array of dates as long.
+	 */
+	public long[] getScheduleTimes(long l) {
+		long[] times = new long[CompiledSchedule.MINUTES_PER_DAY];
+		int n = getScheduleTimes( l, times );
+		long[] tmpArray = new long[n];
+		System.arraycopy( times, 0, tmpArray, 0, n );
+		return tmpArray;
+	}
 
-		if ( monthAll || (month[monthIndex] != 0) ) {
+	/**
+	 * Given a date as long fills the supplied array with the dates as long
+	 * on which the schedule fires that day, in ascending order.
+	 * @param l date as long.
+	 * @param times array of at least <CODE>CompiledSchedule.MINUTES_PER_DAY</CODE> longs.
+	 * @return number of dates stored in the array.
+	 */
+	public int getScheduleTimes(long l, long[] times) {
+		return getCompiledSchedule().getScheduleTimes( l, times );
+	}
 
-		// Day of Month and/or Week
+	/**
+	 * Returns the first minute strictly after the given date on which this
+	 * schedule fires. Fields are matched from month down to minute, so whole
+	 * months and days which can not match are skipped without looking at the
+	 * minutes in them. No objects are created.
+	 * @param after date as long.
+	 * @return next fire time as long or <CODE>NO_FIRE_TIME</CODE> if the
+	 * schedule does not fire within <CODE>CompiledSchedule.NEXT_FIRE_YEARS</CODE> years.
+	 */
+	public long nextFireTime(long after) {
+		return getCompiledSchedule().nextFireTime( after );
+	}
 
-			daySwitch = 0;
-			if ( dayofmonthAll ) daySwitch = daySwitch | 1;
-			if ( dayofweekAll )	daySwitch = daySwitch | 2;
+	/**
+	 * Fills the supplied array with consecutive fire times following the
+	 * given date. Stops early if the schedule does not fire again.
+	 * @param after date as long.
+	 * @param times destination array.
+	 * @return number of fire times stored in the array.
+	 */
+	public int nextFireTimes(long after, long[] times) {
+		return getCompiledSchedule().nextFireTimes( after, times );
+	}
 
-			switch( daySwitch ) {
-				case 0:	// m.day - w.day -
-					if ( (dayofmonth[dateIndex] != 0) || (dayofweek[weekdayIndex] != 0) )
-						b = true;
-					else
-						b = false;
-					break;
-				case 1:	// m.day * w.day -
-					if ( dayofweek[weekdayIndex] != 0 )
-						b = true;
-					else
-						b = false;
-					break;
-				case 2:	// m.day - w.day *
-					if ( dayofmonth[dateIndex] != 0 )
-						b = true;
-					else
-						b = false;
-					break;
-				case 3:	// m.day * w.day *
-					b = true;
-					break;
-				default:
-					b = false;
-			}
-			if ( b ) {
-				dayCal.set( Calendar.SECOND, 0 );
-				dayCal.set( Calendar.MILLISECOND, 0 );
-				for(int h=0; h<24; ++h) {
-					dayCal.set( Calendar.HOUR_OF_DAY, h );
-					for(int m=0; m<60; ++m) {
-						if ( (hour[h] != 0) && (minute[m] != 0) ) {
-							dayCal.set( Calendar.MINUTE, m );
-							tmpArray.add( new Long( dayCal.getTime().getTime() ) );
-						}
-					}
-				}
-			}
+	/**
+	 * Returns an array with up to <CODE>n</CODE> consecutive fire times
+	 * following the given date.
+	 * @param after date as long.
+	 * @param n maximum number of fire times.
+	 * @return array of fire times, shorter than n if the schedule runs out.
+	 */
+	public long[] nextFireTimes(long after, int n) {
+		long[] times = new long[n];
+		int i = nextFireTimes( after, times );
+		if ( i < n ) {
+			long[] tmpArray = new long[i];
+			System.arraycopy( times, 0, tmpArray, 0, i );
+			times = tmpArray;
 		}
+		return times;
+	}
 
-		return tmpArray;
+	/**
+	 * Returns a lazy iterator over the fire times in <CODE>[from, to)</CODE>.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive, <CODE>Long.MAX_VALUE</CODE> for no end.
+	 * @return fire time iterator.
+	 */
+	public FireTimeIterator fireTimes(long from, long to) {
+		return getCompiledSchedule().fireTimes( from, to );
+	}
+
+	/**
+	 * Returns a spliterator over the fire times in <CODE>[from, to)</CODE>,
+	 * splitting by days for parallel streams.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive, <CODE>Long.MAX_VALUE</CODE> for no end.
+	 * @return fire time spliterator.
+	 */
+	public FireTimeSpliterator fireTimeSpliterator(long from, long to) {
+		return getCompiledSchedule().fireTimeSpliterator( from, to );
 	}
 
 	/**
@@ -327,10 +358,10 @@ public abstract class ScheduleAbstract implements Schedule {
 			case Calendar.AUGUST:
 				i = 7;
 				break;
-			case Calendar.OCTOBER:
+			case Calendar.SEPTEMBER:
 				i = 8;
 				break;
-			case Calendar.SEPTEMBER:
+			case Calendar.OCTOBER:
 				i = 9;
 				break;
 			case Calendar.NOVEMBER:
@@ -0,0 +1,385 @@
+/*
+ * Cron Schedule, admission control.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Pump waits at least a nanosecond, stop() interrupts it.
+ *               Time read through nanoTime().
+ *               Capacity must be positive.
+ *               A pump stops when another one has been started.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Admission stage between a <CODE>ScheduleDispatcher</CODE> and whatever
+ * starts the jobs, typically a <CODE>ScheduleExecutor</CODE>. Due schedules
+ * are passed on at no more than a maximum start rate. When more are due
+ * than the rate allows, as at the top of the hour, the rest are deferred
+ * into bounded queues, one per priority level, and passed on highest
+ * priority first by a pump thread.<BR>
+ * <BR>
+ * <CODE>admit()</CODE> reports the outcome for each due schedule: started
+ * at once, deferred or shed because the queue for its priority is full.
+ * Deferred schedules which wait longer than the maximum delay are shed
+ * when they come up. Shed schedules are also passed to the shed listener,
+ * if one is set.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleAdmission implements ScheduleListener, Runnable {
+
+	/** Outcome, passed on at once. */
+	public static final int STARTED = 0;
+	/** Outcome, queued until the start rate allows it. */
+	public static final int DEFERRED = 1;
+	/** Outcome, dropped because the queue was full. */
+	public static final int SHED = 2;
+
+	/** Lowest priority. */
+	public static final int PRIORITY_LOW = 0;
+	/** Default priority. */
+	public static final int PRIORITY_NORMAL = 1;
+	/** Highest priority. */
+	public static final int PRIORITY_HIGH = 2;
+
+	/** Number of priority levels. */
+	protected static final int PRIORITIES = 3;
+
+	/** Receiver of admitted schedules. */
+	protected ScheduleListener downstream;
+	/** Receiver of shed schedules, may be null. */
+	protected ScheduleListener shedListener;
+
+	/** Priorities by schedule. */
+	protected Map priorities = new IdentityHashMap();
+
+	/** Queued schedules, ring buffer per priority. */
+	protected Schedule[][] queueSchedules;
+	/** Fire times of the queued schedules. */
+	protected long[][] queueTimes;
+	/** nanoTime() the queued schedules were deferred. */
+	protected long[][] queueDeferred;
+	/** Head of each ring buffer. */
+	protected int[] queueHead;
+	/** Number of entries in each ring buffer. */
+	protected int[] queueCount;
+	/** Total number of queued schedules. */
+	protected int queued;
+	/** Capacity of each ring buffer. */
+	protected int capacity;
+
+	/** Maximum starts per second, 0 for no limit. */
+	protected double maxStartRate;
+	/** Available starts. */
+	protected double tokens;
+	/** nanoTime() of the last refill. */
+	protected long refilled;
+	/** Maximum nanoseconds a schedule may stay deferred, 0 for no limit. */
+	protected long maxDelay;
+
+	/** Number of schedules started at once. */
+	protected long startedCount;
+	/** Number of schedules deferred. */
+	protected long deferredCount;
+	/** Number of schedules shed. */
+	protected long shedCount;
+
+	/** Pump thread. */
+	protected Thread thread;
+	/** Keep running. */
+	protected boolean running;
+
+	/**
+	 * Creates an admission stage.
+	 * @param downstream receiver of admitted schedules.
+	 * @param capacity queue capacity per priority level, at least 1.
+	 * @param maxStartRate maximum starts per second, 0 for no limit.
+	 */
+	public ScheduleAdmission(ScheduleListener downstream, int capacity, double maxStartRate) {
+		if ( capacity <= 0 ) {
+			throw new IllegalArgumentException( "Invalid capacity: " + capacity );
+		}
+		this.downstream = downstream;
+		this.capacity = capacity;
+		this.maxStartRate = maxStartRate;
+		queueSchedules = new Schedule[PRIORITIES][capacity];
+		queueTimes = new long[PRIORITIES][capacity];
+		queueDeferred = new long[PRIORITIES][capacity];
+		queueHead = new int[PRIORITIES];
+		queueCount = new int[PRIORITIES];
+		tokens = maxStartRate;
+		refilled = nanoTime();
+	}
+
+	/**
+	 * Returns the current value of the clock measuring the start rate and
+	 * delays, <CODE>System.nanoTime()</CODE>.
+	 * @return current time in nanoseconds.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Sets the receiver of shed schedules.
+	 * @param listener receiver of shed schedules, or null.
+	 */
+	public synchronized void setShedListener(ScheduleListener listener) {
+		shedListener = listener;
+	}
+
+	/**
+	 * Sets the maximum time a schedule may stay deferred before it is shed.
+	 * @param millis maximum delay in milliseconds, 0 for no limit.
+	 */
+	public synchronized void setMaxDelay(long millis) {
+		maxDelay = millis * 1000000L;
+	}
+
+	/**
+	 * Sets the priority of a schedule.
+	 * @param schedule schedule.
+	 * @param priority <CODE>PRIORITY_LOW</CODE>, <CODE>PRIORITY_NORMAL</CODE> or <CODE>PRIORITY_HIGH</CODE>.
+	 */
+	public synchronized void setPriority(Schedule schedule, int priority) {
+		if ( priority < PRIORITY_LOW || priority > PRIORITY_HIGH ) {
+			throw new IllegalArgumentException( "Invalid priority: " + priority );
+		}
+		if ( priority == PRIORITY_NORMAL ) {
+			priorities.remove( schedule );
+		}
+		else {
+			priorities.put( schedule, new Integer( priority ) );
+		}
+	}
+
+	/**
+	 * Returns the priority of a schedule.
+	 * @param schedule schedule.
+	 * @return the priority of the schedule.
+	 */
+	public synchronized int getPriority(Schedule schedule) {
+		Integer priority = (Integer)priorities.get( schedule );
+		if ( priority == null ) {
+			return PRIORITY_NORMAL;
+		}
+		return priority.intValue();
+	}
+
+	/**
+	 * Admits a due schedule.
+	 * @param schedule the schedule which is due.
+	 * @param time the fire time as long.
+	 */
+	public void scheduleDue(Schedule schedule, long time) {
+		admit( schedule, time );
+	}
+
+	/**
+	 * Admits a due schedule, passing it on at once if the start rate allows
+	 * and nothing is queued ahead of it, otherwise queueing it.
+	 * @param schedule the schedule which is due.
+	 * @param time the fire time as long.
+	 * @return <CODE>STARTED</CODE>, <CODE>DEFERRED</CODE> or <CODE>SHED</CODE>.
+	 */
+	public int admit(Schedule schedule, long time) {
+		ScheduleListener shed;
+		int p;
+		int idx;
+		synchronized ( this ) {
+			p = getPriority( schedule );
+			refill();
+			if ( (queued == 0) && (tokens >= 1.0) ) {
+				tokens -= 1.0;
+				++startedCount;
+				shed = null;
+			}
+			else if ( queueCount[p] == capacity ) {
+				++shedCount;
+				shed = shedListener;
+				if ( shed == null ) {
+					return SHED;
+				}
+			}
+			else {
+				idx = (queueHead[p] + queueCount[p]) % capacity;
+				queueSchedules[p][idx] = schedule;
+				queueTimes[p][idx] = time;
+				queueDeferred[p][idx] = nanoTime();
+				++queueCount[p];
+				++queued;
+				++deferredCount;
+				notifyAll();
+				return DEFERRED;
+			}
+		}
+		if ( shed != null ) {
+			shed.scheduleDue( schedule, time );
+			return SHED;
+		}
+		downstream.scheduleDue( schedule, time );
+		return STARTED;
+	}
+
+	/**
+	 * Adds the starts earned since the last refill, up to one second worth.
+	 */
+	protected void refill() {
+		long now = nanoTime();
+		if ( maxStartRate <= 0 ) {
+			tokens = 1.0;
+		}
+		else {
+			tokens = Math.min( tokens + (now - refilled) * maxStartRate / 1000000000.0, Math.max( maxStartRate, 1.0 ) );
+		}
+		refilled = now;
+	}
+
+	/**
+	 * Starts the pump thread passing on deferred schedules.
+	 */
+	public synchronized void start() {
+		if ( thread == null ) {
+			running = true;
+			thread = new Thread( this, "ScheduleAdmission" );
+			thread.setDaemon( true );
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the pump thread, interrupting it if it is waiting or passing on
+	 * a schedule. Deferred schedules stay queued. A pump still passing on a
+	 * schedule returns after it, even if <CODE>start()</CODE> has been
+	 * called again in the meantime.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if ( thread != null ) {
+			thread.interrupt();
+			thread = null;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Passes on deferred schedules, highest priority first, within the start
+	 * rate, until stopped. Run by the thread of <CODE>start()</CODE>, which
+	 * returns as soon as it is no longer the current pump thread.
+	 */
+	public void run() {
+		Schedule schedule;
+		long time;
+		boolean shed;
+		ScheduleListener receiver;
+		long wait;
+		int p;
+		while ( true ) {
+			synchronized ( this ) {
+				if ( !running || (thread != Thread.currentThread()) ) {
+					return;
+				}
+				if ( queued == 0 ) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					continue;
+				}
+				refill();
+				if ( tokens < 1.0 ) {
+					// Truncating a fraction of a nanosecond would give wait(0, 0), forever.
+					wait = Math.max( 1L, (long)((1.0 - tokens) * 1000000000.0 / maxStartRate) );
+					try {
+						wait( wait / 1000000L, (int)(wait % 1000000L) );
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					continue;
+				}
+				p = PRIORITIES - 1;
+				while ( queueCount[p] == 0 ) {
+					--p;
+				}
+				schedule = queueSchedules[p][queueHead[p]];
+				time = queueTimes[p][queueHead[p]];
+				shed = (maxDelay > 0) && (nanoTime() - queueDeferred[p][queueHead[p]] > maxDelay);
+				queueSchedules[p][queueHead[p]] = null;
+				queueHead[p] = (queueHead[p] + 1) % capacity;
+				--queueCount[p];
+				--queued;
+				if ( shed ) {
+					++shedCount;
+					receiver = shedListener;
+				}
+				else {
+					tokens -= 1.0;
+					receiver = downstream;
+				}
+			}
+			if ( receiver != null ) {
+				receiver.scheduleDue( schedule, time );
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of schedules currently deferred.
+	 * @return the number of schedules currently deferred.
+	 */
+	public synchronized int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * Returns the number of schedules passed on at once.
+	 * @return the number of schedules passed on at once.
+	 */
+	public synchronized long getStartedCount() {
+		return startedCount;
+	}
+
+	/**
+	 * Returns the number of schedules deferred.
+	 * @return the number of schedules deferred.
+	 */
+	public synchronized long getDeferredCount() {
+		return deferredCount;
+	}
+
+	/**
+	 * Returns the number of schedules shed.
+	 * @return the number of schedules shed.
+	 */
+	public synchronized long getShedCount() {
+		return shedCount;
+	}
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Cron Schedule, cache of compiled schedules.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Added time zone to the key.
+ *               Added lookup() returning the error of invalid crontabs.
+ *               Keyed by the resolved ZoneDays, the default time zone included.
+ */
+
+package com.antiaction.common.cron;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded cache of compiled schedules keyed by crontab expression, so a
+ * crontab expression which appears many times is parsed once and shared as
+ * a single immutable <CODE>CompiledSchedule</CODE>. Only the five schedule
+ * fields make up the key, with runs of blanks reduced to one and the
+ * command left out. Expressions with hashed H fields also depend on their
+ * schedule key, which is then added to the cache key. The time zone is
+ * part of the key as its <CODE>ZoneDays</CODE>, resolved on each lookup, so
+ * a change of the default time zone or a zone with the same ID but other
+ * rules does not find entries compiled for another.<BR>
+ * <BR>
+ * When full the least recently used expression is evicted. Expressions
+ * which compile to equal masks, <CODE>*&#47;15</CODE> and
+ * <CODE>0,15,30,45</CODE> for instance, share the same instance for as long
+ * as it is referenced from anywhere.<BR>
+ * <BR>
+ * The returned instances are shared, so keying jobs on their identity, as
+ * <CODE>ScheduleExecutor</CODE> does, needs a schedule object per job.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleCache {
+
+	/** Maximum number of expressions cached. */
+	protected int capacity;
+
+	/** Compiled schedules by normalized expression and time zone, in access order. */
+	protected Map entries;
+
+	/** Compiled schedules in use, weakly referenced. */
+	protected Map interned = new WeakHashMap();
+
+	/** Number of lookups found in the cache. */
+	protected long hits;
+	/** Number of lookups which had to parse. */
+	protected long misses;
+	/** Number of expressions evicted. */
+	protected long evictions;
+
+	/**
+	 * Creates a cache holding at most the given number of expressions.
+	 * @param capacity maximum number of expressions cached.
+	 */
+	public ScheduleCache(int capacity) {
+		this.capacity = capacity;
+		entries = new LinkedHashMap( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				if ( size() > ScheduleCache.this.capacity ) {
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled schedule of a crontab string, parsing it only if
+	 * the expression is not cached. H fields are resolved with the crontab
+	 * string as key, as <CODE>CrontabSchedule.crontabFactory(String)</CODE> does.
+	 * @param crontabStr a string representation of the crontab schedule.
+	 * @return the shared compiled schedule, or null if the crontab is not valid.
+	 */
+	public CompiledSchedule get(String crontabStr) {
+		return get( crontabStr, crontabStr );
+	}
+
+	/**
+	 * Returns the compiled schedule of a crontab string, parsing it only if
+	 * the expression is not cached.
+	 * @param crontabStr a string representation of the crontab schedule.
+	 * @param key schedule key resolving H fields.
+	 * @return the shared compiled schedule, or null if the crontab is not valid.
+	 */
+	public CompiledSchedule get(String crontabStr, String key) {
+		return get( crontabStr, key, null );
+	}
+
+	/**
+	 * Returns the compiled schedule of a crontab string in a time zone,
+	 * parsing it only if the expression is not cached.
+	 * @param crontabStr a string representation of the crontab schedule.
+	 * @param key schedule key resolving H fields.
+	 * @param zone time zone, null for the default time zone.
+	 * @return the shared compiled schedule, or null if the crontab is not valid.
+	 */
+	public CompiledSchedule get(String crontabStr, String key, TimeZone zone) {
+		Schedule schedule = lookup( crontabStr, key, zone );
+		if ( schedule instanceof CompiledSchedule ) {
+			return (CompiledSchedule)schedule;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the compiled schedule of a crontab string in a time zone,
+	 * parsing it only if the expression is not cached. Invalid crontabs are
+	 * not cached, the parsed <CODE>CrontabSchedule</CODE> is returned instead
+	 * so the caller can report its error without parsing it again.
+	 * @param crontabStr a string representation of the crontab schedule.
+	 * @param key schedule key resolving H fields.
+	 * @param zone time zone, null for the default time zone.
+	 * @return the shared compiled schedule, or the invalid crontab schedule.
+	 */
+	public Schedule lookup(String crontabStr, String key, TimeZone zone) {
+		Key normalized = new Key( normalize( crontabStr, key ), ZoneDays.getInstance( zone ) );
+		CompiledSchedule compiled;
+		synchronized ( this ) {
+			compiled = (CompiledSchedule)entries.get( normalized );
+			if ( compiled != null ) {
+				++hits;
+				return compiled;
+			}
+			++misses;
+		}
+		CrontabSchedule schedule = (CrontabSchedule)CrontabSchedule.crontabFactory( crontabStr, key );
+		if ( schedule.getErrorCode() != CrontabSchedule.ERROR_NONE ) {
+			return schedule;
+		}
+		schedule.setTimeZone( zone );
+		compiled = schedule.getCompiledSchedule();
+		synchronized ( this ) {
+			WeakReference ref = (WeakReference)interned.get( compiled );
+			CompiledSchedule existing = (ref != null) ? (CompiledSchedule)ref.get() : null;
+			if ( existing != null ) {
+				compiled = existing;
+			}
+			else {
+				interned.put( compiled, new WeakReference( compiled ) );
+			}
+			entries.put( normalized, compiled );
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the five schedule fields separated by single spaces, followed
+	 * by the schedule key if a field uses H.
+	 */
+	protected static String normalize(String crontabStr, String key) {
+		StringBuffer sb = new StringBuffer( 32 );
+		boolean hashed = false;
+		int fields = 0;
+		int pos = 0;
+		int len = crontabStr.length();
+		char c;
+		while ( fields < 5 ) {
+			while ( (pos < len) && (((c = crontabStr.charAt( pos )) == ' ') || (c == '\t')) ) {
+				++pos;
+			}
+			if ( pos == len ) {
+				break;
+			}
+			if ( fields > 0 ) {
+				sb.append( ' ' );
+			}
+			while ( (pos < len) && ((c = crontabStr.charAt( pos )) != ' ') && (c != '\t') ) {
+				if ( c == 'H' ) {
+					hashed = true;
+				}
+				sb.append( c );
+				++pos;
+			}
+			++fields;
+		}
+		if ( hashed ) {
+			sb.append( '\n' );
+			sb.append( key );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the number of expressions cached.
+	 * @return the number of expressions cached.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the maximum number of expressions cached.
+	 * @return the maximum number of expressions cached.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes all cached expressions. Counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		interned.clear();
+	}
+
+	/**
+	 * Returns the number of lookups found in the cache.
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which had to parse the expression.
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of expressions evicted to stay within capacity.
+	 * @return the number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Cache key, a normalized expression in the days of a time zone.
+	 */
+	protected static class Key {
+
+		/** Normalized expression. */
+		protected String expression;
+		/** Days of the time zone, unique per ID and rules. */
+		protected ZoneDays zoneDays;
+
+		protected Key(String expression, ZoneDays zoneDays) {
+			this.expression = expression;
+			this.zoneDays = zoneDays;
+		}
+
+		public int hashCode() {
+			return expression.hashCode() * 31 + System.identityHashCode( zoneDays );
+		}
+
+		public boolean equals(Object obj) {
+			if ( !(obj instanceof Key) ) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return (zoneDays == other.zoneDays) && expression.equals( other.expression );
+		}
+
+	}
+
+}
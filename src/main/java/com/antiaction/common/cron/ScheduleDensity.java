@@ -0,0 +1,404 @@
+/*
+ * Cron Schedule, fire density analysis.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Compiled schedules in a group counted as such.
+ *               Days taken from ZoneDays instead of a Calendar.
+ *               Analyzed in a given time zone, schedules in another rejected.
+ *               Days with a DST change counted from fire times.
+ *               compare() checks the first day and the time zone.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Counts how many schedules fire in each minute of a period of whole days,
+ * typically a day or a week, to find hotspots before a crontab is
+ * deployed. Counts are indexed by day and wall clock minute of day,
+ * <CODE>day * MINUTES_PER_DAY + minute</CODE>.<BR>
+ * <BR>
+ * Compiled schedules are not expanded one by one. On a matching day a
+ * schedule fires in every minute of its minute mask within every hour of
+ * its hour mask, so schedules with the same minute mask, hour mask and
+ * matching days fire together. They are tallied by those three masks and
+ * each distinct combination is expanded once, with its tally as weight.
+ * Large crontabs have few distinct combinations, even with hashed fields.
+ * Other schedules are counted from their day masks.<BR>
+ * <BR>
+ * The days are those of one time zone, the default unless another is
+ * given. Compiled schedules and sets in another time zone are rejected,
+ * other schedules are counted from their day masks of those days. On days
+ * with a DST change every schedule is counted from its fire times instead,
+ * so the minutes of a skipped hour count once at the end of the gap.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleDensity {
+
+	/** Number of minutes in a week. */
+	public static final int MINUTES_PER_WEEK = 7 * CompiledSchedule.MINUTES_PER_DAY;
+
+	/** Maximum number of days analyzed. */
+	public static final int MAX_DAYS = 64;
+
+	/** Days of the time zone analyzed. */
+	protected ZoneDays zoneDays;
+	/** Number of days analyzed. */
+	protected int days;
+	/** Epoch day of the first day. */
+	protected long firstDay;
+	/** Days without a DST change, one bit per day analyzed. */
+	protected long plainDays;
+	/** Start of each day as long. */
+	protected long[] dayStarts;
+	/** Day of month index of each day. */
+	protected int[] dates;
+	/** Month index of each day. */
+	protected int[] monthIndexes;
+	/** Day of week index of each day. */
+	protected int[] weekdays;
+
+	/** Tallies of compiled schedules by minutes, hours and matching days. */
+	protected Map tallies = new HashMap();
+	/** Lookup key, reused. */
+	protected Tally lookup = new Tally();
+	/** Counts of schedules which are not compiled. */
+	protected int[] extra;
+	/** Day mask buffer. */
+	protected long[] mask;
+	/** Counts, null until requested or after adding schedules. */
+	protected int[] counts;
+	/** Number of schedules added. */
+	protected int schedules;
+
+	/**
+	 * Creates an analyzer for a number of days in the default time zone.
+	 * @param day first day as long, any time of the day.
+	 * @param days number of days, 7 for a week, at most <CODE>MAX_DAYS</CODE>.
+	 * @throws IllegalArgumentException if the number of days is out of range.
+	 */
+	public ScheduleDensity(long day, int days) {
+		this( day, days, null );
+	}
+
+	/**
+	 * Creates an analyzer for a number of days in a time zone.
+	 * @param day first day as long, any time of the day.
+	 * @param days number of days, 7 for a week, at most <CODE>MAX_DAYS</CODE>.
+	 * @param zone time zone, null for the default time zone.
+	 * @throws IllegalArgumentException if the number of days is out of range.
+	 */
+	public ScheduleDensity(long day, int days, TimeZone zone) {
+		if ( days < 1 || days > MAX_DAYS ) {
+			throw new IllegalArgumentException( "Invalid number of days: " + days );
+		}
+		zoneDays = ZoneDays.getInstance( zone );
+		firstDay = zoneDays.getDay( day ).getEpochDay();
+		ZoneDays.Day zoneDay;
+		this.days = days;
+		dayStarts = new long[days];
+		dates = new int[days];
+		monthIndexes = new int[days];
+		weekdays = new int[days];
+		for (int d=0; d<days; ++d) {
+			zoneDay = zoneDays.getDayByEpochDay( firstDay + d );
+			if ( zoneDay.isPlain() ) {
+				plainDays |= 1L << d;
+			}
+			dayStarts[d] = zoneDay.getStart();
+			dates[d] = zoneDay.getDateIndex();
+			monthIndexes[d] = zoneDay.getMonthIndex();
+			weekdays[d] = zoneDay.getWeekdayIndex();
+		}
+		extra = new int[days * CompiledSchedule.MINUTES_PER_DAY];
+		mask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+	}
+
+	/**
+	 * Returns the time zone analyzed.
+	 * @return a copy of the time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return zoneDays.getTimeZone();
+	}
+
+	/**
+	 * Returns the number of days analyzed.
+	 * @return the number of days analyzed.
+	 */
+	public int getDays() {
+		return days;
+	}
+
+	/**
+	 * Returns the number of schedules added, group members counted one by one.
+	 * @return the number of schedules added.
+	 */
+	public int getScheduleCount() {
+		return schedules;
+	}
+
+	/**
+	 * Adds a schedule. The members of a group are added one by one.
+	 * @param schedule schedule or schedule group.
+	 * @throws IllegalArgumentException if a compiled schedule or set is in another time zone.
+	 */
+	public void add(Schedule schedule) {
+		if ( schedule instanceof ScheduleGroup ) {
+			ArrayList members = ((ScheduleGroup)schedule).getEventsList();
+			for (int i=0; i<members.size(); ++i) {
+				add( (Schedule)members.get( i ) );
+			}
+		}
+		else if ( schedule instanceof ScheduleAbstract ) {
+			add( ((ScheduleAbstract)schedule).getCompiledSchedule() );
+		}
+		else if ( schedule instanceof CompiledSchedule ) {
+			add( (CompiledSchedule)schedule );
+		}
+		else {
+			if ( schedule instanceof ScheduleSet ) {
+				checkZone( ((ScheduleSet)schedule).getZoneDays() );
+			}
+			for (int d=0; d<days; ++d) {
+				if ( (plainDays & (1L << d)) == 0 ) {
+					addTimes( schedule, d );
+					continue;
+				}
+				schedule.getScheduleMask( dayStarts[d], mask );
+				int base = d * CompiledSchedule.MINUTES_PER_DAY;
+				for (int w=0; w<CompiledSchedule.DAY_MASK_LENGTH; ++w) {
+					long bits = mask[w];
+					while ( bits != 0 ) {
+						++extra[base + (w << 6) + Long.numberOfTrailingZeros( bits )];
+						bits &= bits - 1;
+					}
+				}
+			}
+			++schedules;
+			counts = null;
+		}
+	}
+
+	/**
+	 * Adds a compiled schedule.
+	 * @param compiled compiled schedule.
+	 * @throws IllegalArgumentException if the schedule is in another time zone.
+	 */
+	public void add(CompiledSchedule compiled) {
+		long dayBits = 0;
+		checkZone( compiled.getZoneDays() );
+		for (int d=0; d<days; ++d) {
+			if ( compiled.matchesDay( dates[d], monthIndexes[d], weekdays[d] ) ) {
+				if ( (plainDays & (1L << d)) != 0 ) {
+					dayBits |= 1L << d;
+				}
+				else {
+					addTimes( compiled, d );
+				}
+			}
+		}
+		if ( dayBits != 0 ) {
+			lookup.minutes = compiled.getMinutes();
+			lookup.hours = compiled.getHours();
+			lookup.dayBits = dayBits;
+			Tally tally = (Tally)tallies.get( lookup );
+			if ( tally == null ) {
+				tally = lookup;
+				tallies.put( tally, tally );
+				lookup = new Tally();
+			}
+			++tally.weight;
+		}
+		++schedules;
+		counts = null;
+	}
+
+	/**
+	 * Counts a schedule on a day with a DST change from its fire times that
+	 * day, by the wall clock minute of each.
+	 * @param schedule schedule in the time zone analyzed.
+	 * @param d day index.
+	 */
+	protected void addTimes(Schedule schedule, int d) {
+		ZoneDays.Day zoneDay = zoneDays.getDayByEpochDay( firstDay + d );
+		if ( zoneDay.getStart() == zoneDay.getEnd() ) {
+			return;
+		}
+		long[] times = schedule.getScheduleTimes( zoneDay.getStart() );
+		int base = d * CompiledSchedule.MINUTES_PER_DAY;
+		for (int i=0; i<times.length; ++i) {
+			++extra[base + zoneDay.getMinuteOfDay( times[i] )];
+		}
+	}
+
+	/**
+	 * Rejects a schedule in another time zone, its minutes of the day are
+	 * not those counted.
+	 */
+	protected void checkZone(ZoneDays zd) {
+		if ( zd != zoneDays ) {
+			throw new IllegalArgumentException( "Schedule in another time zone: " + zd.getID() + ", analyzing " + zoneDays.getID() );
+		}
+	}
+
+	/**
+	 * Returns the number of schedules firing in each minute of the period.
+	 * @return counts indexed by <CODE>day * MINUTES_PER_DAY + minute</CODE>.
+	 */
+	public int[] getCounts() {
+		if ( counts == null ) {
+			int[] c = new int[extra.length];
+			System.arraycopy( extra, 0, c, 0, c.length );
+			Iterator iter = tallies.values().iterator();
+			while ( iter.hasNext() ) {
+				Tally tally = (Tally)iter.next();
+				long dayBits = tally.dayBits;
+				while ( dayBits != 0 ) {
+					int dayBase = Long.numberOfTrailingZeros( dayBits ) * CompiledSchedule.MINUTES_PER_DAY;
+					int hours = tally.hours;
+					while ( hours != 0 ) {
+						int base = dayBase + Integer.numberOfTrailingZeros( hours ) * 60;
+						long minutes = tally.minutes;
+						while ( minutes != 0 ) {
+							c[base + Long.numberOfTrailingZeros( minutes )] += tally.weight;
+							minutes &= minutes - 1;
+						}
+						hours &= hours - 1;
+					}
+					dayBits &= dayBits - 1;
+				}
+			}
+			counts = c;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the highest number of schedules firing in one minute.
+	 * @return the highest count.
+	 */
+	public int getMax() {
+		int[] c = getCounts();
+		int max = 0;
+		for (int i=0; i<c.length; ++i) {
+			if ( c[i] > max ) {
+				max = c[i];
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the busiest minutes of the period, busiest first and earliest
+	 * first among equals. Minutes where nothing fires are left out.
+	 * @param n maximum number of minutes to return.
+	 * @return minute indexes, <CODE>day * MINUTES_PER_DAY + minute</CODE>.
+	 */
+	public int[] getHotspots(int n) {
+		int[] c = getCounts();
+		long[] keys = new long[c.length];
+		int used = 0;
+		for (int i=0; i<c.length; ++i) {
+			if ( c[i] > 0 ) {
+				keys[used++] = ((long)c[i] << 32) | (0xFFFFFFFFL - i);
+			}
+		}
+		Arrays.sort( keys, 0, used );
+		if ( n > used ) {
+			n = used;
+		}
+		int[] hotspots = new int[n];
+		for (int i=0; i<n; ++i) {
+			hotspots[i] = (int)(0xFFFFFFFFL - (keys[used - 1 - i] & 0xFFFFFFFFL));
+		}
+		return hotspots;
+	}
+
+	/**
+	 * Compares with the analysis of another crontab version over the same
+	 * days, typically the one currently deployed.
+	 * @param previous analysis of the other version.
+	 * @return the change in count for each minute, this minus previous.
+	 * @throws IllegalArgumentException if the periods differ in first day,
+	 * length or time zone.
+	 */
+	public int[] compare(ScheduleDensity previous) {
+		if ( previous.days != days ) {
+			throw new IllegalArgumentException( "Periods differ: " + previous.days + " and " + days + " days" );
+		}
+		if ( previous.dayStarts[0] != dayStarts[0] ) {
+			throw new IllegalArgumentException( "Periods differ: starting " + previous.dayStarts[0] + " and " + dayStarts[0] );
+		}
+		if ( previous.zoneDays != zoneDays ) {
+			throw new IllegalArgumentException( "Periods differ: time zones " + previous.zoneDays.getID() + " and " + zoneDays.getID() );
+		}
+		int[] c = getCounts();
+		int[] p = previous.getCounts();
+		int[] delta = new int[c.length];
+		for (int i=0; i<c.length; ++i) {
+			delta[i] = c[i] - p[i];
+		}
+		return delta;
+	}
+
+	/**
+	 * Number of compiled schedules with the same minutes, hours and
+	 * matching days.
+	 */
+	protected static class Tally {
+
+		/** Minute mask. */
+		protected long minutes;
+		/** Hour mask. */
+		protected int hours;
+		/** Matching days, one bit per day analyzed. */
+		protected long dayBits;
+		/** Number of schedules. */
+		protected int weight;
+
+		public int hashCode() {
+			long h = minutes * 31 + hours;
+			h = h * 31 + dayBits;
+			return (int)(h ^ (h >>> 32));
+		}
+
+		public boolean equals(Object obj) {
+			if ( !(obj instanceof Tally) ) {
+				return false;
+			}
+			Tally other = (Tally)obj;
+			return minutes == other.minutes && hours == other.hours && dayBits == other.dayBits;
+		}
+
+	}
+
+}
@@ -0,0 +1,539 @@
+/*
+ * Cron Schedule, timing wheel dispatcher.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Added misfire policies.
+ *               Entries cancelled by the listener while their slot is being
+ *               expired are not dispatched.
+ *               Deferred misfires caught up at the misfire rate per advance.
+ */
+
+package com.antiaction.common.cron;
+
+/**
+ * Dispatcher keeping registered schedules in a hierarchical timing wheel,
+ * keyed by their next fire time. The wheel has a minute level for the
+ * current hour, an hour level for the current day and a day level for the
+ * next <CODE>DAY_SLOTS</CODE> days. Anything further away waits in an
+ * overflow list. Entries are cascaded down a level when their hour or day
+ * comes up, so each minute only touches the schedules actually due.<BR>
+ * <BR>
+ * Registering and cancelling a schedule is O(1). A due schedule is passed
+ * to the <CODE>ScheduleListener</CODE> and re-inserted at its next fire
+ * time, or dropped if it does not fire again.<BR>
+ * <BR>
+ * The wheel is driven either by calling <CODE>advance()</CODE> with the
+ * current time, or by running the dispatcher in its own thread where it
+ * uses a <CODE>CronMinuteAlign</CODE> to wake up on each minute.<BR>
+ * <BR>
+ * When <CODE>advance()</CODE> is called more than the misfire threshold
+ * behind, after a long GC pause, a suspended VM or a clock jump, the fire
+ * times in between are misfires. They are handled according to the
+ * misfire policy: all fired in order, optionally limited to a number of
+ * late firings per advance, coalesced into one firing per schedule, or
+ * skipped.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleDispatcher implements Runnable {
+
+	/** Number of slots in the day level. */
+	public static final int DAY_SLOTS = 512;
+
+	/** Misfire policy, fire every missed time in order. */
+	public static final int MISFIRE_FIRE_ALL = 0;
+	/** Misfire policy, fire once with the latest missed time. */
+	public static final int MISFIRE_COALESCE = 1;
+	/** Misfire policy, drop missed times. */
+	public static final int MISFIRE_SKIP = 2;
+
+	/** Milliseconds per tick. */
+	protected static final long TICK = 60000L;
+
+	/** Minute level, one slot per minute of the current hour. */
+	protected Entry[] minuteWheel = new Entry[60];
+	/** Hour level, one slot per hour of the current day. */
+	protected Entry[] hourWheel = new Entry[24];
+	/** Day level, one slot per day. */
+	protected Entry[] dayWheel = new Entry[DAY_SLOTS];
+	/** Entries further away than the day level reaches. */
+	protected Entry[] overflow = new Entry[1];
+
+	/** Last tick processed, in minutes since the epoch. */
+	protected long currentTick;
+	/** Number of registered entries. */
+	protected int size;
+
+	/** Tick being advanced to. */
+	protected long advanceTick;
+	/** Misfire policy. */
+	protected int misfirePolicy = MISFIRE_FIRE_ALL;
+	/** Minutes a fire time may be behind before it counts as a misfire. */
+	protected int misfireThreshold = 1;
+	/** Maximum number of misfires fired per advance, 0 for no limit. */
+	protected int misfireRate = 0;
+	/** Misfires fired during the current advance. */
+	protected int misfireFired;
+	/** Total number of misfires seen. */
+	protected long misfireCount;
+
+	/** Receiver of due schedules. */
+	protected ScheduleListener listener;
+
+	/** Minute aligner used when running as a thread. */
+	protected CronMinuteAlign align;
+	/** Thread running the dispatcher. */
+	protected Thread thread;
+	/** Keep running. */
+	protected volatile boolean running;
+
+	/**
+	 * Creates a dispatcher starting at the current time.
+	 * @param listener receiver of due schedules.
+	 */
+	public ScheduleDispatcher(ScheduleListener listener) {
+		this( listener, System.currentTimeMillis() );
+	}
+
+	/**
+	 * Creates a dispatcher starting at the given time.
+	 * @param listener receiver of due schedules.
+	 * @param now start time as long.
+	 */
+	public ScheduleDispatcher(ScheduleListener listener, long now) {
+		this.listener = listener;
+		this.currentTick = now / TICK;
+	}
+
+	/**
+	 * Sets the misfire policy.
+	 * @param policy <CODE>MISFIRE_FIRE_ALL</CODE>, <CODE>MISFIRE_COALESCE</CODE> or <CODE>MISFIRE_SKIP</CODE>.
+	 */
+	public synchronized void setMisfirePolicy(int policy) {
+		misfirePolicy = policy;
+	}
+
+	/**
+	 * Sets the number of minutes a fire time may be behind the time
+	 * advanced to before it counts as a misfire.
+	 * @param minutes misfire threshold in minutes.
+	 */
+	public synchronized void setMisfireThreshold(int minutes) {
+		misfireThreshold = minutes;
+	}
+
+	/**
+	 * Sets the maximum number of misfires fired per advance when the policy
+	 * is <CODE>MISFIRE_FIRE_ALL</CODE>. The rest are deferred to the
+	 * following advances, each firing up to this number of the missed fire
+	 * times, so a schedule behind catches up as long as the rate is above
+	 * the number of fire times per advance.
+	 * @param rate maximum misfires per advance, 0 for no limit.
+	 */
+	public synchronized void setMisfireRate(int rate) {
+		misfireRate = rate;
+	}
+
+	/**
+	 * Returns the total number of misfires seen, whether fired or not.
+	 * @return the total number of misfires.
+	 */
+	public synchronized long getMisfireCount() {
+		return misfireCount;
+	}
+
+	/**
+	 * Registers a schedule at its next fire time.
+	 * @param schedule schedule to register.
+	 * @return wheel entry used to cancel the registration, or null if the
+	 * schedule does not fire again.
+	 */
+	public synchronized Entry register(Schedule schedule) {
+		long next = schedule.nextFireTime( currentTick * TICK );
+		if ( next == Schedule.NO_FIRE_TIME ) {
+			return null;
+		}
+		Entry entry = new Entry( schedule );
+		entry.fireTime = next;
+		insert( entry, currentTick + 1 );
+		++size;
+		return entry;
+	}
+
+	/**
+	 * Cancels a registration.
+	 * @param entry wheel entry returned by <CODE>register()</CODE>.
+	 * @return true if the entry was still registered.
+	 */
+	public synchronized boolean cancel(Entry entry) {
+		if ( entry.cancelled ) {
+			return false;
+		}
+		entry.cancelled = true;
+		if ( entry.wheel != null ) {
+			unlink( entry );
+		}
+		--size;
+		return true;
+	}
+
+	/**
+	 * Returns the number of registered schedules.
+	 * @return the number of registered schedules.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the last time processed by the wheel.
+	 * @return the last time processed as long.
+	 */
+	public synchronized long getCurrentTime() {
+		return currentTick * TICK;
+	}
+
+	/**
+	 * Advances the wheel minute by minute up to and including the given
+	 * time, passing every schedule that becomes due to the listener.
+	 * @param now current time as long.
+	 * @return number of schedules dispatched.
+	 */
+	public synchronized int advance(long now) {
+		long nowTick = now / TICK;
+		int n = 0;
+		advanceTick = nowTick;
+		misfireFired = 0;
+		while ( currentTick < nowTick ) {
+			n += tick( currentTick + 1 );
+		}
+		return n;
+	}
+
+	/**
+	 * Processes one tick, cascading the hour and day levels at their
+	 * boundaries before expiring the minute slot. Entries further behind
+	 * the time being advanced to than the misfire threshold are handed to
+	 * <CODE>misfire()</CODE>.
+	 * @param t tick to process.
+	 * @return number of schedules dispatched.
+	 */
+	protected int tick(long t) {
+		Entry e;
+		Entry next;
+		int n = 0;
+
+		currentTick = t;
+
+	// Cascade
+
+		if ( t % (24 * 60) == 0 ) {
+			cascade( dayWheel, (int)((t / (24 * 60)) % DAY_SLOTS) );
+			cascade( overflow, 0 );
+		}
+		if ( t % 60 == 0 ) {
+			cascade( hourWheel, (int)((t / 60) % 24) );
+		}
+
+	// Expire
+
+		e = detach( minuteWheel, (int)(t % 60) );
+		while ( e != null ) {
+			next = e.next;
+			e.prev = null;
+			e.next = null;
+			// Cancelled by the listener for an earlier entry of the slot.
+			if ( e.cancelled ) {
+				e = next;
+				continue;
+			}
+			if ( advanceTick - e.fireTime / TICK > misfireThreshold ) {
+				n += misfire( e );
+				e = next;
+				continue;
+			}
+			++n;
+			listener.scheduleDue( e.schedule, e.fireTime );
+			reschedule( e );
+			e = next;
+		}
+		return n;
+	}
+
+	/**
+	 * Handles an entry which has missed its fire time according to the
+	 * misfire policy and re-inserts it.
+	 * @param e expired entry.
+	 * @return number of schedules dispatched.
+	 */
+	protected int misfire(Entry e) {
+		long limit = (advanceTick - misfireThreshold) * TICK;
+		long l;
+		int n;
+		switch ( misfirePolicy ) {
+			case MISFIRE_COALESCE:
+				++misfireCount;
+				while ( ((l = e.schedule.nextFireTime( e.fireTime )) != Schedule.NO_FIRE_TIME) && (l < limit) ) {
+					e.fireTime = l;
+					++misfireCount;
+				}
+				listener.scheduleDue( e.schedule, e.fireTime );
+				reschedule( e );
+				return 1;
+			case MISFIRE_SKIP:
+				++misfireCount;
+				while ( ((l = e.schedule.nextFireTime( e.fireTime )) != Schedule.NO_FIRE_TIME) && (l < limit) ) {
+					e.fireTime = l;
+					++misfireCount;
+				}
+				reschedule( e );
+				return 0;
+			case MISFIRE_FIRE_ALL:
+			default:
+				n = 0;
+				while ( true ) {
+					if ( advanceTick - e.fireTime / TICK > misfireThreshold ) {
+						if ( (misfireRate > 0) && (misfireFired >= misfireRate) ) {
+							// Deferred to the next advance.
+							insert( e, advanceTick + 1 );
+							return n;
+						}
+						++misfireCount;
+						++misfireFired;
+					}
+					++n;
+					listener.scheduleDue( e.schedule, e.fireTime );
+					if ( e.cancelled ) {
+						return n;
+					}
+					// Fire times up to the tick being processed, left behind by a
+					// deferral, are fired now. Re-inserted they would wait a tick each.
+					l = e.schedule.nextFireTime( e.fireTime );
+					if ( (l == Schedule.NO_FIRE_TIME) || (l / TICK > currentTick) ) {
+						break;
+					}
+					e.fireTime = l;
+				}
+				reschedule( e );
+				return n;
+		}
+	}
+
+	/**
+	 * Re-inserts an entry at the fire time following its current one, or
+	 * drops it if it has been cancelled or does not fire again.
+	 * @param e expired entry.
+	 */
+	protected void reschedule(Entry e) {
+		if ( !e.cancelled ) {
+			e.fireTime = e.schedule.nextFireTime( e.fireTime );
+			if ( e.fireTime != Schedule.NO_FIRE_TIME ) {
+				insert( e, currentTick + 1 );
+			}
+			else {
+				e.cancelled = true;
+				--size;
+			}
+		}
+	}
+
+	/**
+	 * Re-inserts all entries of a slot, moving them to a lower level.
+	 */
+	protected void cascade(Entry[] wheel, int slot) {
+		Entry e = detach( wheel, slot );
+		Entry next;
+		while ( e != null ) {
+			next = e.next;
+			e.prev = null;
+			e.next = null;
+			insert( e, currentTick );
+			e = next;
+		}
+	}
+
+	/**
+	 * Removes and returns the list of a slot, the entries keep their links.
+	 */
+	protected Entry detach(Entry[] wheel, int slot) {
+		Entry e = wheel[slot];
+		wheel[slot] = null;
+		for (Entry i=e; i!=null; i=i.next) {
+			i.wheel = null;
+		}
+		return e;
+	}
+
+	/**
+	 * Inserts an entry in the level matching its distance from the current
+	 * tick. Entries due before the earliest tick are put in that tick.
+	 */
+	protected void insert(Entry entry, long earliest) {
+		long ft = entry.fireTime / TICK;
+		Entry[] wheel;
+		int slot;
+		if ( ft < earliest ) {
+			ft = earliest;
+		}
+		if ( ft / 60 == currentTick / 60 ) {
+			wheel = minuteWheel;
+			slot = (int)(ft % 60);
+		}
+		else if ( ft / (24 * 60) == currentTick / (24 * 60) ) {
+			wheel = hourWheel;
+			slot = (int)((ft / 60) % 24);
+		}
+		else if ( ft / (24 * 60) - currentTick / (24 * 60) < DAY_SLOTS ) {
+			wheel = dayWheel;
+			slot = (int)((ft / (24 * 60)) % DAY_SLOTS);
+		}
+		else {
+			wheel = overflow;
+			slot = 0;
+		}
+		entry.wheel = wheel;
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = wheel[slot];
+		if ( entry.next != null ) {
+			entry.next.prev = entry;
+		}
+		wheel[slot] = entry;
+	}
+
+	/**
+	 * Unlinks an entry from its slot.
+	 */
+	protected void unlink(Entry entry) {
+		if ( entry.prev != null ) {
+			entry.prev.next = entry.next;
+		}
+		else {
+			entry.wheel[entry.slot] = entry.next;
+		}
+		if ( entry.next != null ) {
+			entry.next.prev = entry.prev;
+		}
+		entry.wheel = null;
+		entry.prev = null;
+		entry.next = null;
+	}
+
+	/**
+	 * Starts dispatching in a new thread.
+	 */
+	public synchronized void start() {
+		if ( thread == null ) {
+			running = true;
+			thread = new Thread( this, "ScheduleDispatcher" );
+			thread.setDaemon( true );
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the dispatching thread.
+	 */
+	public void stop() {
+		Thread t;
+		synchronized ( this ) {
+			running = false;
+			t = thread;
+			thread = null;
+		}
+		if ( t != null ) {
+			t.interrupt();
+		}
+	}
+
+	/**
+	 * Sleeps until each minute and advances the wheel, until stopped.
+	 */
+	public void run() {
+		if ( align == null ) {
+			align = new CronMinuteAlign();
+		}
+		while ( running ) {
+			long l = align.sleep();
+			if ( running ) {
+				advance( l );
+			}
+		}
+	}
+
+	/**
+	 * Registration of a schedule in the wheel.
+	 */
+	public static class Entry {
+
+		/** Registered schedule. */
+		protected Schedule schedule;
+		/** Next fire time. */
+		protected long fireTime;
+		/** Level the entry is linked into, null when not registered. */
+		protected Entry[] wheel;
+		/** Slot in the level. */
+		protected int slot;
+		/** Previous entry in the slot. */
+		protected Entry prev;
+		/** Next entry in the slot. */
+		protected Entry next;
+		/** Cancelled or no longer firing. */
+		protected boolean cancelled;
+
+		/**
+		 * Creates an unlinked entry.
+		 * @param schedule registered schedule.
+		 */
+		protected Entry(Schedule schedule) {
+			this.schedule = schedule;
+		}
+
+		/**
+		 * Returns the registered schedule.
+		 * @return the registered schedule.
+		 */
+		public Schedule getSchedule() {
+			return schedule;
+		}
+
+		/**
+		 * Returns true if the entry is no longer registered.
+		 * @return true if the entry is no longer registered.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Returns the next fire time.
+		 * @return the next fire time as long.
+		 */
+		public long getFireTime() {
+			return fireTime;
+		}
+
+	}
+
+}
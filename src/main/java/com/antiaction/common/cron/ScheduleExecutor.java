@@ -0,0 +1,402 @@
+/*
+ * Cron Schedule, job executor.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Runs counted as started once they hold a permit. Commands
+ *               exiting with a non-zero status fail.
+ *               Virtual threads can be turned off.
+ */
+
+package com.antiaction.common.cron;
+
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the jobs of due schedules. Used as the <CODE>ScheduleListener</CODE>
+ * of a <CODE>ScheduleDispatcher</CODE>, each due schedule has its job
+ * started on a thread of its own. Virtual threads are used when the
+ * runtime has them, otherwise a platform thread pool the size of the
+ * concurrency limit.<BR>
+ * <BR>
+ * Each registered job has an overlap policy deciding what happens when the
+ * schedule is due while the previous run is still going: start another run,
+ * skip this one or queue a single run to start when the current one ends.
+ * The total number of jobs running at the same time is capped, jobs over
+ * the cap wait for a permit without holding up the dispatcher.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleExecutor implements ScheduleListener {
+
+	/** Overlap policy, start a new run alongside the running one. */
+	public static final int OVERLAP_ALLOW = 0;
+	/** Overlap policy, skip the run if the previous one is still running. */
+	public static final int OVERLAP_SKIP = 1;
+	/** Overlap policy, queue at most one run until the previous one ends. */
+	public static final int OVERLAP_QUEUE_ONE = 2;
+
+	/** Jobs by schedule. */
+	protected Map jobs = new IdentityHashMap();
+
+	/** Executor running the jobs. */
+	protected ExecutorService executor;
+	/** Using virtual threads. */
+	protected boolean virtual;
+	/** Permits for the global concurrency limit. */
+	protected Semaphore permits;
+	/** Global concurrency limit. */
+	protected int maxConcurrent;
+
+	/** Number of runs started. */
+	protected long started;
+	/** Number of runs skipped by the overlap policy, or not started at all. */
+	protected long skipped;
+	/** Number of runs which threw an exception. */
+	protected long failed;
+
+	/**
+	 * Creates an executor running at most the given number of jobs at the
+	 * same time.
+	 * @param maxConcurrent global concurrency limit.
+	 */
+	public ScheduleExecutor(int maxConcurrent) {
+		this( maxConcurrent, true );
+	}
+
+	/**
+	 * Creates an executor running at most the given number of jobs at the
+	 * same time, on a platform thread pool unless virtual threads are asked
+	 * for and the runtime has them.
+	 * @param maxConcurrent global concurrency limit.
+	 * @param virtualThreads use virtual threads if the runtime has them.
+	 */
+	public ScheduleExecutor(int maxConcurrent, boolean virtualThreads) {
+		this.maxConcurrent = maxConcurrent;
+		permits = new Semaphore( maxConcurrent );
+		executor = virtualThreads ? newVirtualThreadExecutor() : null;
+		if ( executor != null ) {
+			virtual = true;
+		}
+		else {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor( maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS, new LinkedBlockingQueue() );
+			pool.allowCoreThreadTimeOut( true );
+			executor = pool;
+		}
+	}
+
+	/**
+	 * Returns a virtual thread per task executor, or null if the runtime
+	 * does not have virtual threads.
+	 */
+	protected static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod( "newVirtualThreadPerTaskExecutor", new Class[0] ).invoke( null, new Object[0] );
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns true if jobs run on virtual threads.
+	 * @return true if jobs run on virtual threads.
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Registers the job to run when the schedule is due.
+	 * @param schedule schedule.
+	 * @param job job to run.
+	 * @param overlapPolicy <CODE>OVERLAP_ALLOW</CODE>, <CODE>OVERLAP_SKIP</CODE> or <CODE>OVERLAP_QUEUE_ONE</CODE>.
+	 */
+	public void register(Schedule schedule, Runnable job, int overlapPolicy) {
+		synchronized ( jobs ) {
+			jobs.put( schedule, new Job( job, overlapPolicy ) );
+		}
+	}
+
+	/**
+	 * Registers a crontab schedule to run its command through the shell.
+	 * @param schedule crontab schedule.
+	 * @param overlapPolicy <CODE>OVERLAP_ALLOW</CODE>, <CODE>OVERLAP_SKIP</CODE> or <CODE>OVERLAP_QUEUE_ONE</CODE>.
+	 */
+	public void register(CrontabSchedule schedule, int overlapPolicy) {
+		register( schedule, new CommandJob( schedule.getCommand() ), overlapPolicy );
+	}
+
+	/**
+	 * Removes the job of a schedule. Runs already started are not affected.
+	 * @param schedule schedule.
+	 * @return true if the schedule had a job.
+	 */
+	public boolean unregister(Schedule schedule) {
+		synchronized ( jobs ) {
+			return jobs.remove( schedule ) != null;
+		}
+	}
+
+	/**
+	 * Starts the job of a due schedule according to its overlap policy.
+	 * Never blocks.
+	 * @param schedule the schedule which is due.
+	 * @param time the fire time as long.
+	 */
+	public void scheduleDue(Schedule schedule, long time) {
+		Job job;
+		synchronized ( jobs ) {
+			job = (Job)jobs.get( schedule );
+		}
+		if ( job == null ) {
+			return;
+		}
+		synchronized ( job ) {
+			if ( job.running > 0 ) {
+				switch ( job.overlapPolicy ) {
+					case OVERLAP_SKIP:
+						countSkipped();
+						return;
+					case OVERLAP_QUEUE_ONE:
+						if ( job.queued ) {
+							countSkipped();
+						}
+						job.queued = true;
+						return;
+					case OVERLAP_ALLOW:
+					default:
+						break;
+				}
+			}
+			++job.running;
+		}
+		start( job );
+	}
+
+	/**
+	 * Hands a run to the executor.
+	 */
+	protected void start(final Job job) {
+		try {
+			executor.execute( new Runnable() {
+				public void run() {
+					execute( job );
+				}
+			} );
+		}
+		catch (RejectedExecutionException e) {
+			// Shut down.
+			synchronized ( job ) {
+				--job.running;
+				job.queued = false;
+			}
+			countSkipped();
+		}
+	}
+
+	/**
+	 * Runs a job within the concurrency limit, then starts a queued run if
+	 * there is one. A run interrupted while waiting for a permit is counted
+	 * as skipped.
+	 */
+	protected void execute(Job job) {
+		boolean again;
+		try {
+			permits.acquire();
+			synchronized ( this ) {
+				++started;
+			}
+			try {
+				job.job.run();
+			}
+			catch (Throwable t) {
+				synchronized ( this ) {
+					++failed;
+				}
+			}
+			finally {
+				permits.release();
+			}
+		}
+		catch (InterruptedException e) {
+			countSkipped();
+			Thread.currentThread().interrupt();
+		}
+		synchronized ( job ) {
+			again = job.queued;
+			job.queued = false;
+			if ( !again ) {
+				--job.running;
+			}
+		}
+		if ( again ) {
+			start( job );
+		}
+	}
+
+	private synchronized void countSkipped() {
+		++skipped;
+	}
+
+	/**
+	 * Returns the number of runs started.
+	 * @return the number of runs started.
+	 */
+	public synchronized long getStarted() {
+		return started;
+	}
+
+	/**
+	 * Returns the number of runs skipped by the overlap policies, or not
+	 * started because the executor was shut down or interrupted.
+	 * @return the number of runs skipped.
+	 */
+	public synchronized long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of runs which threw an exception, including
+	 * commands exiting with a non-zero status.
+	 * @return the number of failed runs.
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of jobs currently running.
+	 * @return the number of jobs currently running.
+	 */
+	public int getRunning() {
+		return maxConcurrent - permits.availablePermits();
+	}
+
+	/**
+	 * Stops accepting runs, runs already started are completed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for started runs to complete after a shutdown.
+	 * @param millis maximum time to wait in milliseconds.
+	 * @return true if all runs completed.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public boolean awaitTermination(long millis) throws InterruptedException {
+		return executor.awaitTermination( millis, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Job registered for a schedule.
+	 */
+	protected static class Job {
+
+		/** Job to run. */
+		protected Runnable job;
+		/** Overlap policy. */
+		protected int overlapPolicy;
+		/** Number of runs started and not yet completed. */
+		protected int running;
+		/** A run is queued behind the running one. */
+		protected boolean queued;
+
+		/**
+		 * Creates a job.
+		 * @param job job to run.
+		 * @param overlapPolicy overlap policy.
+		 */
+		protected Job(Runnable job, int overlapPolicy) {
+			this.job = job;
+			this.overlapPolicy = overlapPolicy;
+		}
+
+	}
+
+	/**
+	 * Job running a crontab command through <CODE>/bin/sh</CODE> and waiting
+	 * for it to complete. The output of the command is discarded. A command
+	 * which can not be run, or exits with a non-zero status, throws a
+	 * <CODE>RuntimeException</CODE> so the run counts as failed.
+	 */
+	public static class CommandJob implements Runnable {
+
+		/** Command string. */
+		protected String command;
+
+		/**
+		 * Creates a command job.
+		 * @param command command string.
+		 */
+		public CommandJob(String command) {
+			this.command = command;
+		}
+
+		/**
+		 * Runs the command and waits for it to complete.
+		 * @throws RuntimeException if the command could not be run or exited with a non-zero status.
+		 */
+		public void run() {
+			int status;
+			if ( command.length() == 0 ) {
+				return;
+			}
+			try {
+				ProcessBuilder pb = new ProcessBuilder( new String[] { "/bin/sh", "-c", command } );
+				pb.redirectErrorStream( true );
+				Process process = pb.start();
+				process.getOutputStream().close();
+				InputStream in = process.getInputStream();
+				byte[] buffer = new byte[4096];
+				while ( in.read( buffer ) != -1 ) {
+				}
+				in.close();
+				status = process.waitFor();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( e );
+			}
+			catch (Exception e) {
+				throw new RuntimeException( e );
+			}
+			if ( status != 0 ) {
+				throw new RuntimeException( "Command exited with status " + status + ": " + command );
+			}
+		}
+
+	}
+
+}
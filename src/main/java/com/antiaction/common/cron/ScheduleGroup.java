@@ -5,16 +5,44 @@
  * 12-May-2000 : Last recorded change.
  * 24-Feb-2001 : Extends CronEvent.
  * 25-Feb-2001 : addEvent changed.
+ * 17-Oct-2026 : getEvents() implemented as a k-way merge of getScheduleTimes().
+ *               Added getScheduleMask(), removeEvent() and the minute of day index.
+ *               Added nextFireTime().
+ *               Members bucketed by zone and day fields, days matched once
+ *               per bucket.
+ *               Added compact(), pruning equal and contained schedules.
+ *               Day index updated in place when members are added or removed.
  *
  */
 
 package com.antiaction.common.cron;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Class for maintaining a group of cron events as one.
+ * Class for maintaining a group of cron events as one.<BR>
+ * <BR>
+ * Compiled members, and members extending <CODE>ScheduleAbstract</CODE>,
+ * are put in buckets by time zone and day fields: the day of month, month
+ * and day of week masks. On a given day the day fields are matched once per
+ * bucket, using the day looked up once per zone, and only the hour and
+ * minute masks of the members of matching buckets are expanded. Groups of
+ * many schedules usually have few buckets. Other members are evaluated one
+ * by one.<BR>
+ * <BR>
+ * Groups built from configurations often hold the same schedule many
+ * times over, or schedules firing on a subset of the times of another.
+ * After <CODE>compact()</CODE> the fire times of the group are evaluated
+ * from the distinct compiled schedules only, leaving out those contained
+ * in another. Members are counted per compiled schedule, so removing a
+ * member only changes what is evaluated once the last member with that
+ * schedule is gone. The day index still lists every member due.
  *
  * @version 1.00
  * @author Nicholas Clarke
@@ -26,6 +54,47 @@ public class ScheduleGroup implements Schedule {
 	 */
 	protected ArrayList eventsList;
 
+	/** Members of the group when the day index was built. */
+	protected Schedule[] indexMembers;
+	/** Start offset into indexIds for each minute of the day, 1441 entries. */
+	protected int[] indexStart;
+	/** Index into indexMembers of the schedules due, grouped by minute. */
+	protected int[] indexIds;
+	/** Date the day index was built for. */
+	protected long indexDay;
+	/** Schedules added since the day index was built, numbered on from the members. */
+	protected ArrayList indexPending;
+	/** Numbers of the schedules added since the day index was built, by minute of day. */
+	protected int[][] indexPendingIds;
+	/** Number of entries used in each array of indexPendingIds. */
+	protected int[] indexPendingCounts;
+	/** Numbers of the schedules removed since the day index was built, null if none. */
+	protected BitSet indexRemoved;
+	/** Numbers of the schedules in the index by schedule, null until a schedule is removed. */
+	protected HashMap indexNumbers;
+	/** The day index must be rebuilt before the next lookup. */
+	protected boolean indexDirty;
+
+	/** Members the buckets were built from, null if out of date. */
+	protected Schedule[] bucketMembers;
+	/** Bucket of each member, -1 for members which are not compiled. */
+	protected int[] memberBuckets;
+	/** Compiled form of each member, null for members which are not compiled. */
+	protected CompiledSchedule[] memberCompiled;
+	/** A member of each bucket, holding the shared day fields. */
+	protected CompiledSchedule[] bucketDays;
+	/** Zone index of each bucket. */
+	protected int[] bucketZones;
+	/** Zones of the buckets. */
+	protected ZoneDays[] zones;
+
+	/** Fire times are evaluated from the distinct schedules only. */
+	protected boolean compacted;
+	/** Number of members of each distinct compiled schedule, in the order first added. */
+	protected LinkedHashMap refCounts;
+	/** Group of the schedules evaluated when compacted, null if out of date. */
+	protected ScheduleGroup distinctGroup;
+
 	/**
 	 * Creates and initializes an empty cron group.
 	 * @see dk.periskop.cron.CronEvent#parseEventString(String)
@@ -33,6 +102,7 @@ public class ScheduleGroup implements Schedule {
 	 */
 	public ScheduleGroup() {
 		eventsList = new ArrayList();
+		indexPending = new ArrayList();
 	}
 
 	/**
@@ -44,6 +114,19 @@ public class ScheduleGroup implements Schedule {
 		eventsList = new ArrayList();
 		// TODO
 		//valid = true;
+		indexMembers = null;
+		indexStart = null;
+		indexIds = null;
+		indexPending.clear();
+		indexPendingIds = null;
+		indexPendingCounts = null;
+		indexRemoved = null;
+		indexNumbers = null;
+		indexDirty = false;
+		bucketMembers = null;
+		if ( compacted ) {
+			countMembers();
+		}
 	}
 
 	/**
@@ -67,6 +150,45 @@ public class ScheduleGroup implements Schedule {
 			return false;
 		*/
 		eventsList.add(event);
+		bucketMembers = null;
+		if ( (indexMembers != null) && !indexDirty ) {
+			addToIndex( event );
+		}
+		if ( compacted ) {
+			addDistinct( event );
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a cron event from this group.
+	 * @param event cron event to remove.
+	 * @return true if the event was a member of this group.
+	 */
+	public boolean removeEvent(Schedule event) {
+		CompiledSchedule c;
+		int[] count;
+		if ( !eventsList.remove( event ) ) {
+			return false;
+		}
+		bucketMembers = null;
+		if ( (indexMembers != null) && !indexDirty ) {
+			removeFromIndex( event );
+		}
+		if ( compacted ) {
+			c = toCompiled( event );
+			if ( c == null ) {
+				distinctGroup = null;
+			}
+			else {
+				count = (int[])refCounts.get( c );
+				if ( (count == null) || (--count[0] == 0) ) {
+					// Schedules contained in this one may have to come back.
+					refCounts.remove( c );
+					distinctGroup = null;
+				}
+			}
+		}
 		return true;
 	}
 
@@ -84,91 +206,780 @@ public class ScheduleGroup implements Schedule {
 	 */
 	public void setEventsList(ArrayList eL) {
 		eventsList = (ArrayList)eL.clone();
+		bucketMembers = null;
+		if ( indexMembers != null ) {
+			indexDirty = true;
+		}
+		if ( compacted ) {
+			countMembers();
+		}
+	}
+
+	/**
+	 * Makes the group evaluate its fire times from the distinct schedules
+	 * only. Members with equal compiled schedules are counted once, and
+	 * compiled schedules contained in another are left out. Members added
+	 * later are checked against the distinct schedules as they are added.
+	 * @return the number of schedules evaluated.
+	 */
+	public int compact() {
+		compacted = true;
+		countMembers();
+		return getDistinctGroup().eventsList.size();
 	}
 
 	/**
-	 * Computes and returns an ArrayList of DateTime objects, each DateTime
-	 * object is equal to an event due on the date specified.  Mergesort is
-	 * used to merge the different events managed by this group. The DateTime
-	 * objects are returned in ascending order, from first to last event.
+	 * Returns true if <CODE>compact()</CODE> has been called.
+	 * @return true if the fire times are evaluated from the distinct schedules.
+	 */
+	public boolean isCompacted() {
+		return compacted;
+	}
+
+	/**
+	 * Returns the number of members sharing the compiled schedule of the
+	 * given schedule, when compacted.
+	 * @param event schedule.
+	 * @return number of members with the same compiled schedule, 0 if none or not compacted.
+	 */
+	public int getCount(Schedule event) {
+		CompiledSchedule c = toCompiled( event );
+		int[] count;
+		if ( !compacted || (c == null) ) {
+			return 0;
+		}
+		count = (int[])refCounts.get( c );
+		return (count != null) ? count[0] : 0;
+	}
+
+	/**
+	 * Returns the number of schedules evaluated for the fire times of the
+	 * group: the distinct schedules not contained in another when
+	 * compacted, otherwise the number of members.
+	 * @return number of schedules evaluated.
+	 */
+	public int getDistinctCount() {
+		if ( !compacted ) {
+			return eventsList.size();
+		}
+		return getDistinctGroup().eventsList.size();
+	}
+
+	/**
+	 * Returns the compiled form of a schedule, null if it has none.
+	 */
+	private static CompiledSchedule toCompiled(Schedule schedule) {
+		if ( schedule instanceof CompiledSchedule ) {
+			return (CompiledSchedule)schedule;
+		}
+		if ( schedule instanceof ScheduleAbstract ) {
+			return ((ScheduleAbstract)schedule).getCompiledSchedule();
+		}
+		return null;
+	}
+
+	/**
+	 * Counts the members per compiled schedule.
+	 */
+	protected void countMembers() {
+		CompiledSchedule c;
+		int[] count;
+		refCounts = new LinkedHashMap();
+		for (int i=0; i<eventsList.size(); ++i) {
+			c = toCompiled( (Schedule)eventsList.get( i ) );
+			if ( c != null ) {
+				count = (int[])refCounts.get( c );
+				if ( count == null ) {
+					refCounts.put( c, new int[] { 1 } );
+				}
+				else {
+					++count[0];
+				}
+			}
+		}
+		distinctGroup = null;
+	}
+
+	/**
+	 * Returns the group of schedules evaluated when compacted, building it
+	 * from the distinct compiled schedules unless up to date. A schedule
+	 * is left out if another contains it, of two containing each other the
+	 * first added is kept.
+	 */
+	protected ScheduleGroup getDistinctGroup() {
+		CompiledSchedule[] distinct;
+		ScheduleGroup group;
+		boolean contained;
+		Schedule event;
+		if ( distinctGroup != null ) {
+			return distinctGroup;
+		}
+		distinct = (CompiledSchedule[])refCounts.keySet().toArray( new CompiledSchedule[refCounts.size()] );
+		group = new ScheduleGroup();
+		for (int j=0; j<distinct.length; ++j) {
+			contained = false;
+			for (int i=0; (i<distinct.length) && !contained; ++i) {
+				contained = (i != j) && distinct[i].contains( distinct[j] ) && ((i < j) || !distinct[j].contains( distinct[i] ));
+			}
+			if ( !contained ) {
+				group.eventsList.add( distinct[j] );
+			}
+		}
+		for (int i=0; i<eventsList.size(); ++i) {
+			event = (Schedule)eventsList.get( i );
+			if ( toCompiled( event ) == null ) {
+				group.eventsList.add( event );
+			}
+		}
+		distinctGroup = group;
+		return group;
+	}
+
+	/**
+	 * Counts a member added when compacted. A new compiled schedule is
+	 * evaluated unless a schedule already evaluated contains it, and
+	 * replaces the evaluated schedules it contains.
+	 */
+	protected void addDistinct(Schedule event) {
+		CompiledSchedule c = toCompiled( event );
+		int[] count;
+		Iterator iter;
+		Object evaluated;
+		if ( c == null ) {
+			if ( distinctGroup != null ) {
+				distinctGroup.addEvent( event );
+			}
+			return;
+		}
+		count = (int[])refCounts.get( c );
+		if ( count != null ) {
+			++count[0];
+			return;
+		}
+		refCounts.put( c, new int[] { 1 } );
+		if ( distinctGroup == null ) {
+			return;
+		}
+		iter = distinctGroup.eventsList.iterator();
+		while ( iter.hasNext() ) {
+			evaluated = iter.next();
+			if ( (evaluated instanceof CompiledSchedule) && ((CompiledSchedule)evaluated).contains( c ) ) {
+				return;
+			}
+		}
+		iter = distinctGroup.eventsList.iterator();
+		while ( iter.hasNext() ) {
+			evaluated = iter.next();
+			if ( (evaluated instanceof CompiledSchedule) && c.contains( (CompiledSchedule)evaluated ) ) {
+				iter.remove();
+			}
+		}
+		distinctGroup.eventsList.add( c );
+		distinctGroup.bucketMembers = null;
+	}
+
+	/**
+	 * Puts the members in buckets by zone and day fields, unless the
+	 * buckets are up to date.
+	 */
+	protected void buildBuckets() {
+		Schedule[] members;
+		Map keys;
+		Map zoneIds;
+		ArrayList days;
+		ArrayList zoneList;
+		ArrayList bucketZoneList;
+		DayKey key;
+		Integer b;
+		Integer z;
+		CompiledSchedule c;
+		if ( bucketMembers != null ) {
+			return;
+		}
+		members = (Schedule[])eventsList.toArray( new Schedule[eventsList.size()] );
+		memberBuckets = new int[members.length];
+		memberCompiled = new CompiledSchedule[members.length];
+		keys = new HashMap();
+		zoneIds = new HashMap();
+		days = new ArrayList();
+		zoneList = new ArrayList();
+		bucketZoneList = new ArrayList();
+		for (int i=0; i<members.length; ++i) {
+			if ( members[i] instanceof CompiledSchedule ) {
+				c = (CompiledSchedule)members[i];
+			}
+			else if ( members[i] instanceof ScheduleAbstract ) {
+				c = ((ScheduleAbstract)members[i]).getCompiledSchedule();
+			}
+			else {
+				memberBuckets[i] = -1;
+				continue;
+			}
+			memberCompiled[i] = c;
+			key = new DayKey( c );
+			b = (Integer)keys.get( key );
+			if ( b == null ) {
+				z = (Integer)zoneIds.get( c.getZoneDays() );
+				if ( z == null ) {
+					z = new Integer( zoneList.size() );
+					zoneIds.put( c.getZoneDays(), z );
+					zoneList.add( c.getZoneDays() );
+				}
+				b = new Integer( days.size() );
+				keys.put( key, b );
+				days.add( c );
+				bucketZoneList.add( z );
+			}
+			memberBuckets[i] = b.intValue();
+		}
+		bucketDays = (CompiledSchedule[])days.toArray( new CompiledSchedule[days.size()] );
+		bucketZones = new int[bucketDays.length];
+		for (int i=0; i<bucketZones.length; ++i) {
+			bucketZones[i] = ((Integer)bucketZoneList.get( i )).intValue();
+		}
+		zones = (ZoneDays[])zoneList.toArray( new ZoneDays[zoneList.size()] );
+		bucketMembers = members;
+	}
+
+	/**
+	 * Looks up the day of the given date once per zone and matches the day
+	 * fields once per bucket.
+	 * @param l date as long.
+	 * @param zoneDays receives the day of each zone, or null.
+	 * @return true for each bucket whose day fields match.
+	 */
+	protected boolean[] matchBuckets(long l, ZoneDays.Day[] zoneDays) {
+		ZoneDays.Day[] d = (zoneDays != null) ? zoneDays : new ZoneDays.Day[zones.length];
+		boolean[] matches = new boolean[bucketDays.length];
+		ZoneDays.Day day;
+		for (int z=0; z<zones.length; ++z) {
+			d[z] = zones[z].getDay( l );
+		}
+		for (int b=0; b<bucketDays.length; ++b) {
+			day = d[bucketZones[b]];
+			matches[b] = bucketDays[b].matchesDay( day.getDateIndex(), day.getMonthIndex(), day.getWeekdayIndex() );
+		}
+		return matches;
+	}
+
+	/**
+	 * Computes and returns an ArrayList of dates as <CODE>Long</CODE>, each
+	 * equal to an event due on the date specified. The dates are returned
+	 * in ascending order, from first to last event, without duplicates.
 	 * @param refDate the reference date used to select the event(s) on that specific date.
-	 * @return arrayList of datetime objects equal to each of the events that are due for the specified date.
+	 * @return arrayList of dates as <CODE>Long</CODE> equal to each of the events that are due for the specified date.
+	 * @see #getScheduleTimes(long)
 	 */
 	public ArrayList getEvents(Calendar refDate) {
+		long[] times;
 		ArrayList retarray;
-		ArrayList arrayptr1;
-		ArrayList arrayptr2;
-		Calendar tmpdate1;
-		Calendar tmpdate2;
-		long lastEventLong;
-		long tmpLong1;
-		long tmpLong2;
-		if ( eventsList.isEmpty() ) {
-			retarray = new ArrayList();
-		}
-		else {
-			// TODO
-			retarray = new ArrayList();
-			/*
-			int i = 0;
-			retarray = (ArrayList)((CronEvent)eventsList.get(i)).getEvents(refDate).clone();
-			for(i = 1; i<eventsList.size(); i++) {
-				arrayptr1 = retarray;
-				arrayptr2 = ((CronEvent)eventsList.get(i)).getEvents(refDate);
-				if ( arrayptr1.isEmpty() ) {
-					retarray = (ArrayList)arrayptr2.clone();
+		times = getScheduleTimes( refDate.getTime().getTime() );
+		retarray = new ArrayList( times.length );
+		for (int i=0; i<times.length; ++i) {
+			retarray.add( new Long( times[i] ) );
+		}
+		return retarray;
+	}
+
+	/**
+	 * Given a date as long returns an array of the dates as long on which
+	 * any of the schedules in this group fires that day, in ascending order
+	 * and without duplicates. The minutes of the matching compiled members
+	 * are combined into one day mask per zone, converted to dates in one go.
+	 * These and the fire times of the other members are combined with a
+	 * heap based k-way merge, each date is only moved once.
+	 * @param l date as long.
+	 * @return array of dates as long.
+	 */
+	public long[] getScheduleTimes(long l) {
+		ZoneDays.Day[] zoneDays;
+		boolean[] matches;
+		long[][] masks;
+		long[] buffer;
+		int others;
+		long[][] streams;
+		int[] pos;
+		int[] heap;
+		int heapSize;
+		int total;
+		long[] times;
+		int n;
+		int s;
+		long t;
+
+		if ( compacted ) {
+			return getDistinctGroup().getScheduleTimes( l );
+		}
+
+	// Day mask per zone
+
+		buildBuckets();
+		zoneDays = new ZoneDays.Day[zones.length];
+		matches = matchBuckets( l, zoneDays );
+		masks = new long[zones.length][CompiledSchedule.DAY_MASK_LENGTH];
+		others = 0;
+		for (int i=0; i<bucketMembers.length; ++i) {
+			if ( memberBuckets[i] == -1 ) {
+				++others;
+			}
+			else if ( matches[memberBuckets[i]] ) {
+				memberCompiled[i].fillDayMask( masks[bucketZones[memberBuckets[i]]] );
+			}
+		}
+
+	// Streams, one per zone and one per other member
+
+		streams = new long[zones.length + others][];
+		pos = new int[streams.length];
+		heap = new int[streams.length];
+		heapSize = 0;
+		total = 0;
+		buffer = new long[CompiledSchedule.MINUTES_PER_DAY];
+		for (int z=0; z<zones.length; ++z) {
+			n = zoneDays[z].getTimes( masks[z], buffer );
+			streams[z] = new long[n];
+			System.arraycopy( buffer, 0, streams[z], 0, n );
+		}
+		s = zones.length;
+		for (int i=0; i<bucketMembers.length; ++i) {
+			if ( memberBuckets[i] == -1 ) {
+				streams[s++] = bucketMembers[i].getScheduleTimes( l );
+			}
+		}
+		for (int i=0; i<streams.length; ++i) {
+			if ( streams[i].length > 0 ) {
+				heap[heapSize++] = i;
+				total += streams[i].length;
+			}
+		}
+		for (int i=heapSize/2 - 1; i>=0; --i) {
+			siftDown( heap, heapSize, i, streams, pos );
+		}
+
+	// Merge
+
+		times = new long[total];
+		n = 0;
+		while ( heapSize > 0 ) {
+			s = heap[0];
+			t = streams[s][pos[s]++];
+			if ( (n == 0) || (times[n - 1] != t) ) {
+				times[n++] = t;
+			}
+			if ( pos[s] == streams[s].length ) {
+				heap[0] = heap[--heapSize];
+			}
+			if ( heapSize > 0 ) {
+				siftDown( heap, heapSize, 0, streams, pos );
+			}
+		}
+
+		if ( n < total ) {
+			long[] tmpArray = new long[n];
+			System.arraycopy( times, 0, tmpArray, 0, n );
+			times = tmpArray;
+		}
+		return times;
+	}
+
+	/**
+	 * Restores the heap property below index i, ordering streams by their
+	 * current head date.
+	 */
+	private static void siftDown(int[] heap, int heapSize, int i, long[][] streams, int[] pos) {
+		int s = heap[i];
+		long t = streams[s][pos[s]];
+		int c;
+		while ( (c = 2*i + 1) < heapSize ) {
+			if ( (c + 1 < heapSize) && (streams[heap[c + 1]][pos[heap[c + 1]]] < streams[heap[c]][pos[heap[c]]]) ) {
+				++c;
+			}
+			if ( t <= streams[heap[c]][pos[heap[c]]] ) {
+				break;
+			}
+			heap[i] = heap[c];
+			i = c;
+		}
+		heap[i] = s;
+	}
+
+	/**
+	 * Given a date as long fills the supplied day mask with one bit per
+	 * minute of the day on which any of the schedules in this group fires.
+	 * @param l date as long.
+	 * @param mask day mask of at least <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+	 * @return the supplied day mask.
+	 */
+	public long[] getScheduleMask(long l, long[] mask) {
+		long[] tmpMask = null;
+		boolean[] matches;
+		if ( compacted ) {
+			return getDistinctGroup().getScheduleMask( l, mask );
+		}
+		buildBuckets();
+		matches = matchBuckets( l, null );
+		for (int i=0; i<CompiledSchedule.DAY_MASK_LENGTH; ++i) {
+			mask[i] = 0;
+		}
+		for (int i=0; i<bucketMembers.length; ++i) {
+			if ( memberBuckets[i] != -1 ) {
+				if ( matches[memberBuckets[i]] ) {
+					memberCompiled[i].fillDayMask( mask );
 				}
-				else if ( arrayptr2.isEmpty() ) {
-					retarray = (ArrayList)arrayptr1.clone();
+			}
+			else {
+				if ( tmpMask == null ) {
+					tmpMask = new long[CompiledSchedule.DAY_MASK_LENGTH];
 				}
-				else {
-					lastEventLong = 0;
-					retarray = new ArrayList();
-					while ( !arrayptr1.isEmpty() || !arrayptr2.isEmpty() ) {
-						if ( arrayptr1.isEmpty() ) {
-							tmpdate2 = (Calendar)arrayptr2.get(0);
-							arrayptr2.remove(0);
-							tmpLong2 = tmpdate2.getTime().getTime();
-							if ( tmpLong2 > lastEventLong ) {
-								retarray.add(tmpdate2);
-								lastEventLong = tmpLong2;
-							}
-						}
-						else if ( arrayptr2.isEmpty() ) {
-							tmpdate1 = (Calendar)arrayptr1.get(0);
-							arrayptr1.remove(0);
-							tmpLong1 = tmpdate1.getTime().getTime();
-							if ( tmpLong1 > lastEventLong ) {
-								retarray.add(tmpdate1);
-								lastEventLong = tmpLong1;
-							}
-						}
-						else {
-							tmpdate1 = (Calendar)arrayptr1.get(0);
-							tmpdate2 = (Calendar)arrayptr2.get(0);
-							tmpLong1 = tmpdate1.getTime().getTime();
-							tmpLong2 = tmpdate2.getTime().getTime();
-							if ( tmpLong1 <= tmpLong2 ) {
-								arrayptr1.remove(0);
-								if ( tmpLong1 > lastEventLong ) {
-									retarray.add(tmpdate1);
-									lastEventLong = tmpLong1;
-								}
-							}
-							else {
-								arrayptr2.remove(0);
-								if ( tmpLong2 > lastEventLong ) {
-									retarray.add(tmpdate2);
-									lastEventLong = tmpLong2;
-								}
-							}
-						}
-					}
+				bucketMembers[i].getScheduleMask( l, tmpMask );
+				for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+					mask[j] |= tmpMask[j];
 				}
 			}
-			*/
 		}
-		return retarray;
+		return mask;
+	}
+
+	/**
+	 * Returns the first minute strictly after the given date on which any
+	 * of the schedules in this group fires.
+	 * @param after date as long.
+	 * @return next fire time as long or <CODE>NO_FIRE_TIME</CODE>.
+	 */
+	public long nextFireTime(long after) {
+		long next = NO_FIRE_TIME;
+		long l;
+		if ( compacted ) {
+			return getDistinctGroup().nextFireTime( after );
+		}
+		for (int i=0; i<eventsList.size(); ++i) {
+			l = ((Schedule)eventsList.get(i)).nextFireTime( after );
+			if ( (l != NO_FIRE_TIME) && ((next == NO_FIRE_TIME) || (l < next)) ) {
+				next = l;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Builds the index from minute of day to the schedules due at that
+	 * minute, for the day of the given date. Meant to be called when
+	 * <CODE>CronMinuteAlign.isDayTurnOver()</CODE> returns true, the index
+	 * is never moved to another day by the lookups. Schedules added after
+	 * the index is built are stored at their minutes of the day, removed
+	 * schedules are marked as such, neither causes a rebuild until the
+	 * changes outnumber half the schedules the index was built with.
+	 * Replacing the list of members causes a rebuild on the next lookup.
+	 * @param l date as long.
+	 */
+	public void buildDayIndex(long l) {
+		Schedule[] members;
+		boolean[] matches;
+		long[] mask;
+		int[] start;
+		int[] ids;
+		int[] fill;
+
+		buildBuckets();
+		members = bucketMembers;
+		matches = matchBuckets( l, null );
+		mask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+		start = new int[CompiledSchedule.MINUTES_PER_DAY + 1];
+
+	// Count
+
+		for (int i=0; i<members.length; ++i) {
+			if ( memberBuckets[i] != -1 ) {
+				if ( matches[memberBuckets[i]] ) {
+					countMinutes( memberCompiled[i], start );
+				}
+				continue;
+			}
+			members[i].getScheduleMask( l, mask );
+			for (int w=0; w<CompiledSchedule.DAY_MASK_LENGTH; ++w) {
+				long bits = mask[w];
+				while ( bits != 0 ) {
+					++start[(w << 6) + Long.numberOfTrailingZeros( bits ) + 1];
+					bits &= bits - 1;
+				}
+			}
+		}
+		for (int i=1; i<start.length; ++i) {
+			start[i] += start[i - 1];
+		}
+
+	// Fill
+
+		ids = new int[start[CompiledSchedule.MINUTES_PER_DAY]];
+		fill = new int[CompiledSchedule.MINUTES_PER_DAY];
+		System.arraycopy( start, 0, fill, 0, fill.length );
+		for (int i=0; i<members.length; ++i) {
+			if ( memberBuckets[i] != -1 ) {
+				if ( matches[memberBuckets[i]] ) {
+					fillMinutes( memberCompiled[i], ids, fill, i );
+				}
+				continue;
+			}
+			members[i].getScheduleMask( l, mask );
+			for (int w=0; w<CompiledSchedule.DAY_MASK_LENGTH; ++w) {
+				long bits = mask[w];
+				while ( bits != 0 ) {
+					ids[fill[(w << 6) + Long.numberOfTrailingZeros( bits )]++] = i;
+					bits &= bits - 1;
+				}
+			}
+		}
+
+		indexMembers = members;
+		indexStart = start;
+		indexIds = ids;
+		indexDay = l;
+		indexPending.clear();
+		indexPendingIds = new int[CompiledSchedule.MINUTES_PER_DAY][];
+		indexPendingCounts = new int[CompiledSchedule.MINUTES_PER_DAY];
+		indexRemoved = null;
+		indexNumbers = null;
+		indexDirty = false;
+	}
+
+	/**
+	 * Stores a schedule added after the day index was built at its minutes
+	 * of the day.
+	 */
+	protected void addToIndex(Schedule event) {
+		int id = indexMembers.length + indexPending.size();
+		long[] mask = event.getScheduleMask( indexDay, new long[CompiledSchedule.DAY_MASK_LENGTH] );
+		int mod;
+		int[] ids;
+		indexPending.add( event );
+		for (int w=0; w<CompiledSchedule.DAY_MASK_LENGTH; ++w) {
+			long bits = mask[w];
+			while ( bits != 0 ) {
+				mod = (w << 6) + Long.numberOfTrailingZeros( bits );
+				ids = indexPendingIds[mod];
+				if ( ids == null ) {
+					ids = new int[4];
+					indexPendingIds[mod] = ids;
+				}
+				else if ( indexPendingCounts[mod] == ids.length ) {
+					ids = new int[ids.length * 2];
+					System.arraycopy( indexPendingIds[mod], 0, ids, 0, indexPendingCounts[mod] );
+					indexPendingIds[mod] = ids;
+				}
+				ids[indexPendingCounts[mod]++] = id;
+				bits &= bits - 1;
+			}
+		}
+		if ( indexNumbers != null ) {
+			addNumber( event, id );
+		}
+		checkIndexChanges();
+	}
+
+	/**
+	 * Marks a removed schedule in the day index, one of them if the
+	 * schedule is in the index more than once.
+	 */
+	protected void removeFromIndex(Schedule event) {
+		ArrayList numbers;
+		if ( indexNumbers == null ) {
+			indexRemoved = new BitSet();
+			indexNumbers = new HashMap();
+			for (int i=0; i<indexMembers.length; ++i) {
+				addNumber( indexMembers[i], i );
+			}
+			for (int i=0; i<indexPending.size(); ++i) {
+				addNumber( (Schedule)indexPending.get( i ), indexMembers.length + i );
+			}
+		}
+		numbers = (ArrayList)indexNumbers.get( event );
+		if ( (numbers != null) && !numbers.isEmpty() ) {
+			indexRemoved.set( ((Integer)numbers.remove( numbers.size() - 1 )).intValue() );
+		}
+		checkIndexChanges();
+	}
+
+	private void addNumber(Schedule event, int id) {
+		ArrayList numbers = (ArrayList)indexNumbers.get( event );
+		if ( numbers == null ) {
+			numbers = new ArrayList();
+			indexNumbers.put( event, numbers );
+		}
+		numbers.add( new Integer( id ) );
+	}
+
+	/**
+	 * Rebuilds the day index on the next lookup once the schedules added
+	 * and removed outnumber half the schedules it was built with.
+	 */
+	private void checkIndexChanges() {
+		int changes = indexPending.size() + ((indexRemoved != null) ? indexRemoved.cardinality() : 0);
+		if ( changes > 64 + indexMembers.length / 2 ) {
+			indexDirty = true;
+		}
+	}
+
+	/**
+	 * Returns a schedule of the day index by number.
+	 */
+	private Schedule indexSchedule(int id) {
+		if ( id < indexMembers.length ) {
+			return indexMembers[id];
+		}
+		return (Schedule)indexPending.get( id - indexMembers.length );
+	}
+
+	/**
+	 * Counts the minutes of a compiled schedule, one position ahead.
+	 */
+	private static void countMinutes(CompiledSchedule c, int[] start) {
+		int hours = c.getHours();
+		int base;
+		long minutes;
+		while ( hours != 0 ) {
+			base = Integer.numberOfTrailingZeros( hours ) * 60 + 1;
+			minutes = c.getMinutes();
+			while ( minutes != 0 ) {
+				++start[base + Long.numberOfTrailingZeros( minutes )];
+				minutes &= minutes - 1;
+			}
+			hours &= hours - 1;
+		}
+	}
+
+	/**
+	 * Stores the member index at the minutes of a compiled schedule.
+	 */
+	private static void fillMinutes(CompiledSchedule c, int[] ids, int[] fill, int i) {
+		int hours = c.getHours();
+		int base;
+		long minutes;
+		while ( hours != 0 ) {
+			base = Integer.numberOfTrailingZeros( hours ) * 60;
+			minutes = c.getMinutes();
+			while ( minutes != 0 ) {
+				ids[fill[base + Long.numberOfTrailingZeros( minutes )]++] = i;
+				minutes &= minutes - 1;
+			}
+			hours &= hours - 1;
+		}
+	}
+
+	/**
+	 * Returns the number of schedules due at the given minute of day of the
+	 * day the index was built for.
+	 * @param mod minute of day from 0-1439.
+	 * @return the number of schedules due, 0 if no day index has been built.
+	 * @see #buildDayIndex(long)
+	 */
+	public int getDueCount(int mod) {
+		return getDue( mod, null );
+	}
+
+	/**
+	 * Fills the supplied array with the schedules due at the given minute
+	 * of the day the index was built for. The cost is proportional to the
+	 * number of schedules due, not the size of the group. The index is not
+	 * moved to the next day, <CODE>buildDayIndex()</CODE> must be called
+	 * again at the day turnover.
+	 * @param mod minute of day from 0-1439.
+	 * @param due array large enough to hold <CODE>getDueCount(mod)</CODE> schedules, null to count only.
+	 * @return the number of schedules due, 0 if no day index has been built.
+	 * @see #buildDayIndex(long)
+	 */
+	public int getDue(int mod, Schedule[] due) {
+		int n;
+		int id;
+		int[] ids;
+		if ( indexMembers == null ) {
+			return 0;
+		}
+		if ( indexDirty ) {
+			buildDayIndex( indexDay );
+		}
+		n = 0;
+		for (int i=indexStart[mod]; i<indexStart[mod + 1]; ++i) {
+			id = indexIds[i];
+			if ( (indexRemoved == null) || !indexRemoved.get( id ) ) {
+				if ( due != null ) {
+					due[n] = indexMembers[id];
+				}
+				++n;
+			}
+		}
+		ids = indexPendingIds[mod];
+		for (int i=0; i<indexPendingCounts[mod]; ++i) {
+			id = ids[i];
+			if ( (indexRemoved == null) || !indexRemoved.get( id ) ) {
+				if ( due != null ) {
+					due[n] = indexSchedule( id );
+				}
+				++n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the schedules due at the given minute of day.
+	 * @param mod minute of day from 0-1439.
+	 * @return array of the schedules due.
+	 * @see #getDue(int, Schedule[])
+	 */
+	public Schedule[] getDue(int mod) {
+		Schedule[] due = new Schedule[getDueCount( mod )];
+		getDue( mod, due );
+		return due;
+	}
+
+	/**
+	 * Time zone and day fields of a compiled schedule, the bucket key.
+	 */
+	protected static class DayKey {
+
+		/** Days of the time zone. */
+		protected ZoneDays zoneDays;
+		/** Day of month mask. */
+		protected int daysOfMonth;
+		/** Month mask. */
+		protected int months;
+		/** Day of week mask. */
+		protected int daysOfWeek;
+		/** Day of month all. */
+		protected boolean dayofmonthAll;
+		/** Day of week all. */
+		protected boolean dayofweekAll;
+
+		protected DayKey(CompiledSchedule c) {
+			zoneDays = c.getZoneDays();
+			daysOfMonth = c.getDaysOfMonth();
+			months = c.getMonths();
+			daysOfWeek = c.getDaysOfWeek();
+			dayofmonthAll = c.isDayofmonthAll();
+			dayofweekAll = c.isDayofweekAll();
+		}
+
+		public int hashCode() {
+			int h = zoneDays.hashCode();
+			h = h * 31 + daysOfMonth;
+			h = h * 31 + months;
+			h = h * 31 + daysOfWeek;
+			return h * 4 + (dayofmonthAll ? 2 : 0) + (dayofweekAll ? 1 : 0);
+		}
+
+		public boolean equals(Object obj) {
+			if ( !(obj instanceof DayKey) ) {
+				return false;
+			}
+			DayKey other = (DayKey)obj;
+			return zoneDays == other.zoneDays
+					&& daysOfMonth == other.daysOfMonth
+					&& months == other.months
+					&& daysOfWeek == other.daysOfWeek
+					&& dayofmonthAll == other.dayofmonthAll
+					&& dayofweekAll == other.dayofweekAll;
+		}
+
 	}
 
 }
@@ -0,0 +1,368 @@
+/*
+ * Cron Schedule, parallel fire time horizon.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Added serialVersionUID to HorizonTask.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the fire times of many schedules over a time range in parallel,
+ * for forecasting a year ahead for instance. The work is split by schedule
+ * and by blocks of days into fork/join tasks.<BR>
+ * <BR>
+ * Computing is done in two passes. The first counts the fire times of each
+ * schedule in each block of days, from which one array per schedule is
+ * allocated with the exact size. The second fills the arrays, each task
+ * writing its own part. Compiled schedules are evaluated day by day in
+ * their own time zone. On a day with 24 hours lying within the block a
+ * compiled schedule is counted by multiplying bit counts and filled by
+ * plain arithmetic from the start of the day, other days go through
+ * <CODE>getScheduleTimes()</CODE>. Schedules which are not compiled, such
+ * as groups, are followed with <CODE>nextFireTime()</CODE>.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleHorizon {
+
+	/** Default number of days per task. */
+	public static final int BLOCK_DAYS = 16;
+	/** Default number of schedules per task. */
+	public static final int BLOCK_SCHEDULES = 256;
+
+	/** Schedules. */
+	protected Schedule[] schedules;
+	/** Compiled form of each schedule, null if it has none. */
+	protected CompiledSchedule[] compiled;
+
+	/** Start of the range, inclusive. */
+	protected long from;
+	/** End of the range, exclusive. */
+	protected long to;
+
+	/** Number of days per task. */
+	protected int blockDays = BLOCK_DAYS;
+	/** Number of schedules per task. */
+	protected int blockSchedules = BLOCK_SCHEDULES;
+	/** Length of a block of days in milliseconds. */
+	protected long blockMillis;
+	/** Number of blocks of days. */
+	protected int blocks;
+
+	/** Count, then start offset, of each schedule and block, <CODE>schedule * blocks + block</CODE>. */
+	protected int[] blockCounts;
+	/** Fire times of each schedule, null until computed. */
+	protected long[][] times;
+	/** Total number of fire times. */
+	protected long total;
+
+	/**
+	 * Creates a horizon for a collection of schedules.
+	 * @param schedules collection of <CODE>Schedule</CODE>s.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive.
+	 * @throws IllegalArgumentException if the range ends before it starts.
+	 */
+	public ScheduleHorizon(Collection schedules, long from, long to) {
+		this( (Schedule[])schedules.toArray( new Schedule[schedules.size()] ), from, to );
+	}
+
+	/**
+	 * Creates a horizon for an array of schedules.
+	 * @param schedules schedules.
+	 * @param from start of the range as long, inclusive.
+	 * @param to end of the range as long, exclusive.
+	 * @throws IllegalArgumentException if the range ends before it starts.
+	 */
+	public ScheduleHorizon(Schedule[] schedules, long from, long to) {
+		if ( to < from ) {
+			throw new IllegalArgumentException( "Range ends before it starts: " + from + " - " + to );
+		}
+		this.schedules = schedules;
+		this.from = from;
+		this.to = to;
+		compiled = new CompiledSchedule[schedules.length];
+		for (int i=0; i<schedules.length; ++i) {
+			if ( schedules[i] instanceof CompiledSchedule ) {
+				compiled[i] = (CompiledSchedule)schedules[i];
+			}
+			else if ( schedules[i] instanceof ScheduleAbstract ) {
+				compiled[i] = ((ScheduleAbstract)schedules[i]).getCompiledSchedule();
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of days per task.
+	 * @param blockDays number of days per task.
+	 */
+	public void setBlockDays(int blockDays) {
+		this.blockDays = Math.max( blockDays, 1 );
+	}
+
+	/**
+	 * Sets the number of schedules per task.
+	 * @param blockSchedules number of schedules per task.
+	 */
+	public void setBlockSchedules(int blockSchedules) {
+		this.blockSchedules = Math.max( blockSchedules, 1 );
+	}
+
+	/**
+	 * Computes the fire times on the common fork/join pool.
+	 */
+	public void compute() {
+		compute( ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Computes the fire times on the given pool, returning when done.
+	 * @param pool fork/join pool.
+	 */
+	public void compute(ForkJoinPool pool) {
+		long[][] t;
+		int offset;
+		int count;
+		long sum;
+
+		blockMillis = blockDays * ZoneDays.DAY_MILLIS;
+		blocks = (int)((to - from + blockMillis - 1) / blockMillis);
+		blockCounts = new int[schedules.length * blocks];
+
+	// Count
+
+		pool.invoke( new HorizonTask( false, null, 0, schedules.length, 0, blocks ) );
+
+	// Allocate, turning the counts into start offsets.
+
+		t = new long[schedules.length][];
+		sum = 0;
+		for (int s=0; s<schedules.length; ++s) {
+			offset = 0;
+			for (int b=s*blocks; b<(s + 1)*blocks; ++b) {
+				count = blockCounts[b];
+				blockCounts[b] = offset;
+				offset += count;
+			}
+			t[s] = new long[offset];
+			sum += offset;
+		}
+
+	// Fill
+
+		pool.invoke( new HorizonTask( true, t, 0, schedules.length, 0, blocks ) );
+
+		times = t;
+		total = sum;
+	}
+
+	/**
+	 * Counts or fills the fire times of one schedule in one block of days.
+	 * @param fill fill the times array instead of counting.
+	 * @param t times arrays being filled.
+	 * @param s schedule index.
+	 * @param b block index.
+	 * @param buffer buffer of <CODE>MINUTES_PER_DAY</CODE> longs.
+	 */
+	protected void evaluate(boolean fill, long[][] t, int s, int b, long[] buffer) {
+		CompiledSchedule c = compiled[s];
+		long[] dst = fill ? t[s] : null;
+		int n = fill ? blockCounts[s * blocks + b] : 0;
+		long blockFrom = from + b * blockMillis;
+		long blockTo = Math.min( to, blockFrom + blockMillis );
+		ZoneDays zoneDays;
+		ZoneDays.Day day;
+		int len;
+		long dayStart;
+		long l;
+		int hours;
+		long minutes;
+		int base;
+		if ( c != null ) {
+			zoneDays = c.getZoneDays();
+			day = zoneDays.getDay( blockFrom );
+			while ( day.getStart() < blockTo ) {
+				if ( c.matchesDay( day.getDateIndex(), day.getMonthIndex(), day.getWeekdayIndex() ) ) {
+					dayStart = day.getStart();
+					if ( day.isPlain() && (dayStart >= blockFrom) && (day.getEnd() <= blockTo) ) {
+						if ( !fill ) {
+							n += Integer.bitCount( c.getHours() ) * Long.bitCount( c.getMinutes() );
+						}
+						else {
+							hours = c.getHours();
+							while ( hours != 0 ) {
+								base = Integer.numberOfTrailingZeros( hours ) * 60;
+								minutes = c.getMinutes();
+								while ( minutes != 0 ) {
+									dst[n++] = dayStart + (base + Long.numberOfTrailingZeros( minutes )) * 60000L;
+									minutes &= minutes - 1;
+								}
+								hours &= hours - 1;
+							}
+						}
+					}
+					else {
+						len = c.getScheduleTimes( day, buffer );
+						for (int i=0; i<len; ++i) {
+							l = buffer[i];
+							if ( (l >= blockFrom) && (l < blockTo) ) {
+								if ( fill ) {
+									dst[n] = l;
+								}
+								++n;
+							}
+						}
+					}
+				}
+				day = zoneDays.getDayByEpochDay( day.getEpochDay() + 1 );
+			}
+		}
+		else {
+			l = schedules[s].nextFireTime( blockFrom - 1 );
+			while ( (l != Schedule.NO_FIRE_TIME) && (l < blockTo) ) {
+				if ( fill ) {
+					dst[n] = l;
+				}
+				++n;
+				l = schedules[s].nextFireTime( l );
+			}
+		}
+		if ( !fill ) {
+			blockCounts[s * blocks + b] = n;
+		}
+	}
+
+	/**
+	 * Returns the number of schedules.
+	 * @return the number of schedules.
+	 */
+	public int size() {
+		return schedules.length;
+	}
+
+	/**
+	 * Returns a schedule.
+	 * @param i schedule index.
+	 * @return the schedule.
+	 */
+	public Schedule getSchedule(int i) {
+		return schedules[i];
+	}
+
+	/**
+	 * Returns the fire times of a schedule within the range, in ascending
+	 * order. The array is not copied.
+	 * @param i schedule index.
+	 * @return fire times as long, null if not computed yet.
+	 */
+	public long[] getTimes(int i) {
+		if ( times == null ) {
+			return null;
+		}
+		return times[i];
+	}
+
+	/**
+	 * Returns the number of fire times of a schedule within the range.
+	 * @param i schedule index.
+	 * @return the number of fire times, 0 if not computed yet.
+	 */
+	public int getCount(int i) {
+		if ( times == null ) {
+			return 0;
+		}
+		return times[i].length;
+	}
+
+	/**
+	 * Returns the total number of fire times of all the schedules.
+	 * @return the total number of fire times, 0 if not computed yet.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Task counting or filling a range of schedules over a range of day
+	 * blocks. Splits the schedules in halves down to a task's worth, then
+	 * the blocks.
+	 */
+	protected class HorizonTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Fill instead of count. */
+		protected boolean fill;
+		/** Times arrays being filled. */
+		protected long[][] t;
+		/** First schedule, inclusive. */
+		protected int s0;
+		/** Last schedule, exclusive. */
+		protected int s1;
+		/** First block, inclusive. */
+		protected int b0;
+		/** Last block, exclusive. */
+		protected int b1;
+
+		/**
+		 * Creates a task.
+		 */
+		protected HorizonTask(boolean fill, long[][] t, int s0, int s1, int b0, int b1) {
+			this.fill = fill;
+			this.t = t;
+			this.s0 = s0;
+			this.s1 = s1;
+			this.b0 = b0;
+			this.b1 = b1;
+		}
+
+		protected void compute() {
+			int mid;
+			long[] buffer;
+			if ( s1 - s0 > blockSchedules ) {
+				mid = (s0 + s1) >>> 1;
+				invokeAll( new HorizonTask( fill, t, s0, mid, b0, b1 ), new HorizonTask( fill, t, mid, s1, b0, b1 ) );
+			}
+			else if ( b1 - b0 > 1 ) {
+				mid = (b0 + b1) >>> 1;
+				invokeAll( new HorizonTask( fill, t, s0, s1, b0, mid ), new HorizonTask( fill, t, s0, s1, mid, b1 ) );
+			}
+			else {
+				buffer = new long[CompiledSchedule.MINUTES_PER_DAY];
+				for (int s=s0; s<s1; ++s) {
+					for (int b=b0; b<b1; ++b) {
+						evaluate( fill, t, s, b, buffer );
+					}
+				}
+			}
+		}
+
+	}
+
+}
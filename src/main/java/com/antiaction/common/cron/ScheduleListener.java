@@ -0,0 +1,44 @@
+/*
+ * Cron Schedule, listener interface.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ */
+
+package com.antiaction.common.cron;
+
+/**
+ * Interface for receiving schedules as they become due.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public interface ScheduleListener {
+
+	/**
+	 * Called when a schedule is due.
+	 * @param schedule the schedule which is due.
+	 * @param time the fire time as long.
+	 */
+	public void scheduleDue(Schedule schedule, long time);
+
+}
@@ -0,0 +1,518 @@
+/*
+ * Cron Schedule, union, intersection and difference of schedules.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Time zones of group members checked.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Schedule combining other schedules by a set operation: the union fires
+ * when any of them fires, the intersection when all of them fire and the
+ * difference when the first fires and none of the others do. Business
+ * hours and every 5 minutes is an intersection, a schedule with a blackout
+ * window a difference.<BR>
+ * <BR>
+ * The factory methods first try to combine compiled schedules into one
+ * <CODE>CompiledSchedule</CODE>, see <CODE>CompiledSchedule.union()</CODE>
+ * and friends, and only return a <CODE>ScheduleSet</CODE> for what is left.
+ * A set is evaluated a day at a time, combining the day masks of its
+ * schedules with bitwise operations into one mask of the minutes it fires
+ * on. The operations are on the minutes of the day, all the schedules
+ * of a set must therefore be in the same time zone.<BR>
+ * <BR>
+ * The mask of the current day is cached, so once a group of schedules is
+ * collapsed into a union <CODE>isDue()</CODE> is a single bit test for
+ * the rest of the day.
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public class ScheduleSet implements Schedule {
+
+	/** Fires when any of the schedules fires. */
+	public static final int UNION = 0;
+	/** Fires when all of the schedules fire. */
+	public static final int INTERSECTION = 1;
+	/** Fires when the first schedule fires and none of the others. */
+	public static final int DIFFERENCE = 2;
+
+	/** Set operation. */
+	protected int operation;
+	/** Schedules combined. */
+	protected Schedule[] schedules;
+	/** Compiled form of each schedule, null if it has none. */
+	protected CompiledSchedule[] compiled;
+	/** Days of the time zone of the schedules. */
+	protected ZoneDays zoneDays;
+
+	/** Mask of the last day evaluated by isDue(). */
+	protected volatile DayMask last;
+
+	/**
+	 * Creates a set of schedules. The factory methods should normally be
+	 * used instead, they compile what they can.<BR>
+	 * <BR>
+	 * The time zones of compiled schedules, sets and the members of groups
+	 * must be the same. Schedules of other classes have no time zone to
+	 * check, their day masks are taken to be in the time zone of the set.
+	 * @param operation <CODE>UNION</CODE>, <CODE>INTERSECTION</CODE> or <CODE>DIFFERENCE</CODE>.
+	 * @param schedules schedules to combine.
+	 * @throws IllegalArgumentException if the operation is unknown, there are no schedules or their time zones differ.
+	 */
+	public ScheduleSet(int operation, Schedule[] schedules) {
+		if ( (operation < UNION) || (operation > DIFFERENCE) ) {
+			throw new IllegalArgumentException( "Unknown operation: " + operation );
+		}
+		if ( schedules.length == 0 ) {
+			throw new IllegalArgumentException( "No schedules" );
+		}
+		this.operation = operation;
+		this.schedules = schedules.clone();
+		compiled = new CompiledSchedule[schedules.length];
+		for (int i=0; i<schedules.length; ++i) {
+			compiled[i] = toCompiled( schedules[i] );
+			checkZone( schedules[i] );
+		}
+		if ( zoneDays == null ) {
+			zoneDays = ZoneDays.getInstance( null );
+		}
+	}
+
+	/**
+	 * Takes the time zone of a schedule, of the members one by one for a
+	 * group.
+	 * @throws IllegalArgumentException if it differs from the time zone taken so far.
+	 */
+	protected void checkZone(Schedule schedule) {
+		ZoneDays zd = null;
+		CompiledSchedule c = toCompiled( schedule );
+		if ( c != null ) {
+			zd = c.getZoneDays();
+		}
+		else if ( schedule instanceof ScheduleSet ) {
+			zd = ((ScheduleSet)schedule).getZoneDays();
+		}
+		else if ( schedule instanceof ScheduleGroup ) {
+			ArrayList members = ((ScheduleGroup)schedule).getEventsList();
+			for (int i=0; i<members.size(); ++i) {
+				checkZone( (Schedule)members.get( i ) );
+			}
+		}
+		if ( zd != null ) {
+			if ( (zoneDays != null) && (zoneDays != zd) ) {
+				throw new IllegalArgumentException( "Schedules in different time zones: " + zoneDays.getID() + ", " + zd.getID() );
+			}
+			zoneDays = zd;
+		}
+	}
+
+	/**
+	 * Returns a schedule firing when any of the schedules fires. Compiled
+	 * schedules are merged into each other where possible.
+	 * @param schedules schedules to combine.
+	 * @return a compiled schedule or a set.
+	 */
+	public static Schedule union(Schedule[] schedules) {
+		ArrayList list = new ArrayList();
+		CompiledSchedule c;
+		CompiledSchedule merged;
+		boolean changed;
+		for (int i=0; i<schedules.length; ++i) {
+			c = toCompiled( schedules[i] );
+			if ( c == null ) {
+				list.add( schedules[i] );
+				continue;
+			}
+			// Merging may enable further merges, keep going until it does not.
+			changed = true;
+			while ( changed ) {
+				changed = false;
+				for (int j=0; j<list.size(); ++j) {
+					if ( list.get( j ) instanceof CompiledSchedule ) {
+						merged = c.union( (CompiledSchedule)list.get( j ) );
+						if ( merged != null ) {
+							c = merged;
+							list.remove( j );
+							changed = true;
+							break;
+						}
+					}
+				}
+			}
+			list.add( c );
+		}
+		if ( list.size() == 1 ) {
+			return (Schedule)list.get( 0 );
+		}
+		return new ScheduleSet( UNION, (Schedule[])list.toArray( new Schedule[list.size()] ) );
+	}
+
+	/**
+	 * Returns a schedule firing when any schedule of a collection fires.
+	 * @param schedules collection of <CODE>Schedule</CODE>s, the members of a group for instance.
+	 * @return a compiled schedule or a set.
+	 */
+	public static Schedule union(Collection schedules) {
+		return union( (Schedule[])schedules.toArray( new Schedule[schedules.size()] ) );
+	}
+
+	/**
+	 * Returns a schedule firing when all of the schedules fire. Compiled
+	 * schedules are intersected into one where possible.
+	 * @param schedules schedules to combine.
+	 * @return a compiled schedule or a set.
+	 */
+	public static Schedule intersection(Schedule[] schedules) {
+		ArrayList list = new ArrayList();
+		CompiledSchedule acc = null;
+		CompiledSchedule c;
+		CompiledSchedule merged;
+		for (int i=0; i<schedules.length; ++i) {
+			c = toCompiled( schedules[i] );
+			if ( c == null ) {
+				list.add( schedules[i] );
+			}
+			else if ( acc == null ) {
+				acc = c;
+			}
+			else {
+				merged = acc.intersection( c );
+				if ( merged != null ) {
+					acc = merged;
+				}
+				else {
+					list.add( c );
+				}
+			}
+		}
+		if ( acc != null ) {
+			if ( list.isEmpty() || acc.isEmpty() ) {
+				return acc;
+			}
+			list.add( 0, acc );
+		}
+		if ( list.size() == 1 ) {
+			return (Schedule)list.get( 0 );
+		}
+		return new ScheduleSet( INTERSECTION, (Schedule[])list.toArray( new Schedule[list.size()] ) );
+	}
+
+	/**
+	 * Returns a schedule firing when the first schedule fires and the
+	 * second does not.
+	 * @param schedule schedule.
+	 * @param excluded schedule to leave out, a blackout window for instance.
+	 * @return a compiled schedule or a set.
+	 */
+	public static Schedule difference(Schedule schedule, Schedule excluded) {
+		CompiledSchedule c = toCompiled( schedule );
+		CompiledSchedule e = toCompiled( excluded );
+		CompiledSchedule merged;
+		if ( (c != null) && (e != null) ) {
+			merged = c.difference( e );
+			if ( merged != null ) {
+				return merged;
+			}
+		}
+		return new ScheduleSet( DIFFERENCE, new Schedule[] { schedule, excluded } );
+	}
+
+	/**
+	 * Returns the compiled form of a schedule, null if it has none.
+	 */
+	private static CompiledSchedule toCompiled(Schedule schedule) {
+		if ( schedule instanceof CompiledSchedule ) {
+			return (CompiledSchedule)schedule;
+		}
+		if ( schedule instanceof ScheduleAbstract ) {
+			return ((ScheduleAbstract)schedule).getCompiledSchedule();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the set operation.
+	 * @return <CODE>UNION</CODE>, <CODE>INTERSECTION</CODE> or <CODE>DIFFERENCE</CODE>.
+	 */
+	public int getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the schedules combined.
+	 * @return a copy of the schedules.
+	 */
+	public Schedule[] getSchedules() {
+		return schedules.clone();
+	}
+
+	/**
+	 * Returns the cached days of the time zone of the set.
+	 * @return the days of the time zone.
+	 */
+	public ZoneDays getZoneDays() {
+		return zoneDays;
+	}
+
+	/**
+	 * Fills the mask with the minutes of the day on which the set fires.
+	 * @param day day of the time zone of the set.
+	 * @param mask day mask receiving the result.
+	 * @param tmpMask day mask used for the schedules which are not compiled.
+	 * @return true if any bit is set.
+	 */
+	protected boolean fillMask(ZoneDays.Day day, long[] mask, long[] tmpMask) {
+		boolean any = false;
+		long[] src;
+		for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+			mask[j] = 0;
+		}
+		for (int i=0; i<schedules.length; ++i) {
+			src = tmpMask;
+			if ( compiled[i] != null ) {
+				if ( !compiled[i].matchesDay( day.getDateIndex(), day.getMonthIndex(), day.getWeekdayIndex() ) ) {
+					src = null;
+				}
+				else if ( (operation == UNION) || (i == 0) ) {
+					compiled[i].fillDayMask( mask );
+					continue;
+				}
+				else {
+					for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+						tmpMask[j] = 0;
+					}
+					compiled[i].fillDayMask( tmpMask );
+				}
+			}
+			else {
+				schedules[i].getScheduleMask( day.getStart(), tmpMask );
+			}
+			if ( (operation == UNION) || (i == 0) ) {
+				if ( src != null ) {
+					for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+						mask[j] |= src[j];
+					}
+				}
+			}
+			else if ( operation == INTERSECTION ) {
+				if ( src == null ) {
+					for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+						mask[j] = 0;
+					}
+					return false;
+				}
+				for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+					mask[j] &= src[j];
+				}
+			}
+			else if ( src != null ) {
+				for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+					mask[j] &= ~src[j];
+				}
+			}
+			if ( (operation != UNION) && (nextSet( mask ) == -1) ) {
+				return false;
+			}
+		}
+		return nextSet( mask ) != -1;
+	}
+
+	private static int nextSet(long[] mask) {
+		return CompiledSchedule.nextSet( mask, 0 );
+	}
+
+	/**
+	 * Returns the mask of the day of the given date, cached until another
+	 * day is asked for.
+	 */
+	protected DayMask getDayMask(long l) {
+		DayMask dm = last;
+		ZoneDays.Day day;
+		long[] mask;
+		long[] buffer;
+		long[] times;
+		int n;
+		if ( (dm != null) && (l >= dm.day.getStart()) && (l < dm.day.getEnd()) ) {
+			return dm;
+		}
+		day = zoneDays.getDay( l );
+		mask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+		fillMask( day, mask, new long[CompiledSchedule.DAY_MASK_LENGTH] );
+		times = null;
+		if ( !day.isPlain() ) {
+			buffer = new long[CompiledSchedule.MINUTES_PER_DAY];
+			n = day.getTimes( mask, buffer );
+			times = new long[n];
+			System.arraycopy( buffer, 0, times, 0, n );
+		}
+		dm = new DayMask( day, mask, times );
+		last = dm;
+		return dm;
+	}
+
+	/**
+	 * Returns true if the set fires in the minute of the given date. On a
+	 * day with 24 hours this is a bit test in the cached mask of the day.
+	 * @param l date as long.
+	 * @return true if the set fires in the minute of the date.
+	 */
+	public boolean isDue(long l) {
+		DayMask dm = getDayMask( l );
+		int lo;
+		int hi;
+		int mid;
+		if ( dm.times == null ) {
+			return CompiledSchedule.isSet( dm.mask, (int)((l - dm.day.getStart()) / 60000) );
+		}
+		// Find the last fire time not after the date.
+		lo = 0;
+		hi = dm.times.length - 1;
+		while ( lo <= hi ) {
+			mid = (lo + hi) >>> 1;
+			if ( dm.times[mid] <= l ) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return (hi >= 0) && (l - dm.times[hi] < 60000);
+	}
+
+	/**
+	 * Given a date as long returns an array of the dates as long on which
+	 * the set fires that day, in ascending order.
+	 * @param l date as long.
+	 * @return array of dates as long.
+	 */
+	public long[] getScheduleTimes(long l) {
+		ZoneDays.Day day = zoneDays.getDay( l );
+		long[] mask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+		long[] times = new long[CompiledSchedule.MINUTES_PER_DAY];
+		int n = 0;
+		if ( fillMask( day, mask, new long[CompiledSchedule.DAY_MASK_LENGTH] ) ) {
+			n = day.getTimes( mask, times );
+		}
+		long[] tmpArray = new long[n];
+		System.arraycopy( times, 0, tmpArray, 0, n );
+		return tmpArray;
+	}
+
+	/**
+	 * Given a date as long fills the supplied day mask with one bit per
+	 * minute of the day. A set bit indicating an event. The mask is cleared
+	 * first, so the same buffer can be reused from day to day.
+	 * @param l date as long.
+	 * @param mask day mask of at least <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+	 * @return the supplied day mask.
+	 */
+	public long[] getScheduleMask(long l, long[] mask) {
+		fillMask( zoneDays.getDay( l ), mask, new long[CompiledSchedule.DAY_MASK_LENGTH] );
+		return mask;
+	}
+
+	/**
+	 * Returns the first minute strictly after the given date on which the
+	 * set fires, walking the days and combining their masks.
+	 * @param after date as long.
+	 * @return next fire time as long or <CODE>NO_FIRE_TIME</CODE> if the set
+	 * does not fire within <CODE>CompiledSchedule.NEXT_FIRE_YEARS</CODE> years.
+	 */
+	public long nextFireTime(long after) {
+		ZoneDays.Day day = zoneDays.getDay( after );
+		long limit = day.getEpochDay() + CompiledSchedule.NEXT_FIRE_YEARS * 366;
+		int mod = day.getMinuteOfDay( after );
+		long[] mask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+		long[] tmpMask = new long[CompiledSchedule.DAY_MASK_LENGTH];
+		long t;
+		while ( day.getEpochDay() <= limit ) {
+			if ( !day.isSkipped() && fillMask( day, mask, tmpMask ) ) {
+				mod = CompiledSchedule.nextSet( mask, mod );
+				while ( mod != -1 ) {
+					t = day.getTime( mod );
+					if ( t > after ) {
+						return t;
+					}
+					mod = CompiledSchedule.nextSet( mask, mod + 1 );
+				}
+			}
+			day = zoneDays.getDayByEpochDay( day.getEpochDay() + 1 );
+			mod = 0;
+		}
+		return NO_FIRE_TIME;
+	}
+
+	/**
+	 * Returns a string representation of the set.
+	 * Used mainly for debugging purposes.
+	 * @return a string representation of the set.
+	 */
+	public String toString() {
+		StringBuffer tmpStrB = new StringBuffer();
+		switch ( operation ) {
+		case UNION:
+			tmpStrB.append( "Union(" );
+			break;
+		case INTERSECTION:
+			tmpStrB.append( "Intersection(" );
+			break;
+		default:
+			tmpStrB.append( "Difference(" );
+			break;
+		}
+		for (int i=0; i<schedules.length; ++i) {
+			if ( i > 0 ) {
+				tmpStrB.append( ", " );
+			}
+			tmpStrB.append( (compiled[i] != null) ? compiled[i] : schedules[i] );
+		}
+		tmpStrB.append( ")" );
+		return tmpStrB.toString();
+	}
+
+	/**
+	 * Mask of a day, with its fire times on a day without 24 hours.
+	 */
+	protected static class DayMask {
+
+		/** Day. */
+		protected final ZoneDays.Day day;
+		/** Minutes of the day the set fires on. */
+		protected final long[] mask;
+		/** Fire times, null on a day with 24 hours. */
+		protected final long[] times;
+
+		protected DayMask(ZoneDays.Day day, long[] mask, long[] times) {
+			this.day = day;
+			this.mask = mask;
+			this.times = times;
+		}
+
+	}
+
+}
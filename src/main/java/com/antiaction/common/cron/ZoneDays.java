@@ -0,0 +1,624 @@
+/*
+ * Cron Schedule, cached days of a time zone.
+ * Copyright (C) 2026  Nicholas Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/*
+ * History:
+ *
+ * 17-Oct-2026 : First implementation.
+ *               Date fields by civil date arithmetic. Fixed offset zones
+ *               without a Calendar.
+ *               Added getTimes() of a day mask.
+ *               Least recently used blocks dropped from the cache.
+ *               Instances shared by zone ID and rules.
+ */
+
+package com.antiaction.common.cron;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The days of a time zone, each worked out once and cached: where the day
+ * starts and ends, its date fields and the UTC offset changes within it.
+ * With a day at hand converting between wall clock minute of day and date
+ * as long is plain arithmetic. There is one shared, thread safe instance
+ * per zone ID and rules. The cache keeps the days of the most recently used
+ * 32 blocks of 512 days.<BR>
+ * <BR>
+ * Date fields are computed from the epoch day by civil date arithmetic.
+ * In UTC and other zones which have always had the same offset the days
+ * are pure arithmetic as well, only zones with DST or historic offset
+ * changes resolve midnight through a <CODE>Calendar</CODE>.<BR>
+ * <BR>
+ * DST changes are handled the same way for every schedule:
+ * <UL>
+ * <LI>Wall clock times skipped when the clocks go forward map to the end
+ * of the gap, the first minute after the change. A job at 02:30 still runs
+ * on the day the clocks skip from 02:00 to 03:00, at 03:00.</LI>
+ * <LI>Wall clock times repeated when the clocks go back map to their first
+ * occurrence, so they fire once.</LI>
+ * <LI>A day skipped entirely, as when a zone moves across the date line,
+ * has no wall clock times.</LI>
+ * </UL>
+ *
+ * @version 1.00
+ * @author Nicholas Clarke <nclarke@diku.dk>
+ */
+public final class ZoneDays {
+
+	/** Milliseconds in a day of 24 hours. */
+	public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	/** Number of days per block of the cache, as a shift. */
+	private static final int BLOCK_SHIFT = 9;
+	/** Number of days per block of the cache. */
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	/** Maximum number of blocks cached. */
+	private static final int MAX_BLOCKS = 32;
+
+	/** Shared instances by zone ID, the first of those with the ID. */
+	private static final Map instances = new ConcurrentHashMap();
+
+	/** Time zone, a private copy. */
+	private final TimeZone zone;
+	/** Standard offset, used to guess the day of a date. */
+	private final int rawOffset;
+	/** The zone has always had the same offset. */
+	private final boolean fixed;
+	/** Blocks of cached days by epoch day / <CODE>BLOCK_SIZE</CODE>, least recently used first. */
+	private final BlockCache blocks = new BlockCache();
+	/** Block looked up last. */
+	private volatile Block last;
+	/** Next instance with the same zone ID but other rules. */
+	private final ZoneDays sameId;
+
+	/**
+	 * Creates the days of a zone.
+	 * @param zone time zone, not modified.
+	 * @param sameId next instance with the same zone ID, or null.
+	 */
+	private ZoneDays(TimeZone zone, ZoneDays sameId) {
+		this.zone = zone;
+		this.sameId = sameId;
+		rawOffset = zone.getRawOffset();
+		fixed = isFixedOffset( zone );
+		last = new Block( Long.MIN_VALUE );
+	}
+
+	/**
+	 * Returns the shared instance of a time zone. Zones with the same ID and
+	 * rules share an instance. A zone with the ID of another but other
+	 * rules, a custom <CODE>SimpleTimeZone</CODE> for instance, shares an
+	 * instance with the zones having its rules, so schedules in it still
+	 * compare equal.
+	 * @param zone time zone, null for the default time zone.
+	 * @return the days of the time zone.
+	 */
+	public static ZoneDays getInstance(TimeZone zone) {
+		ZoneDays zoneDays;
+		if ( zone == null ) {
+			zone = TimeZone.getDefault();
+		}
+		zoneDays = find( (ZoneDays)instances.get( zone.getID() ), zone );
+		if ( zoneDays == null ) {
+			synchronized ( instances ) {
+				ZoneDays first = (ZoneDays)instances.get( zone.getID() );
+				zoneDays = find( first, zone );
+				if ( zoneDays == null ) {
+					zoneDays = new ZoneDays( (TimeZone)zone.clone(), first );
+					instances.put( zone.getID(), zoneDays );
+				}
+			}
+		}
+		return zoneDays;
+	}
+
+	/**
+	 * Returns the instance with the rules of a zone among those with its ID,
+	 * null if none.
+	 */
+	private static ZoneDays find(ZoneDays zoneDays, TimeZone zone) {
+		while ( (zoneDays != null) && !zoneDays.zone.hasSameRules( zone ) ) {
+			zoneDays = zoneDays.sameId;
+		}
+		return zoneDays;
+	}
+
+	/**
+	 * Returns true if the zone has always had the same offset, in which
+	 * case every day is plain.
+	 */
+	private static boolean isFixedOffset(TimeZone zone) {
+		if ( zone instanceof SimpleTimeZone ) {
+			return !zone.useDaylightTime();
+		}
+		try {
+			return zone.toZoneId().getRules().isFixedOffset();
+		}
+		catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns true if the zone has always had the same offset.
+	 * @return true if the zone has a fixed offset, UTC for instance.
+	 */
+	public boolean isFixedOffset() {
+		return fixed;
+	}
+
+	/**
+	 * Returns a copy of the time zone.
+	 * @return the time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return (TimeZone)zone.clone();
+	}
+
+	/**
+	 * Returns the time zone ID.
+	 * @return the time zone ID.
+	 */
+	public String getID() {
+		return zone.getID();
+	}
+
+	/**
+	 * Returns the day containing a date.
+	 * @param l date as long.
+	 * @return the day.
+	 */
+	public Day getDay(long l) {
+		Day day = getDayByEpochDay( Math.floorDiv( l + rawOffset, DAY_MILLIS ) );
+		while ( l < day.start ) {
+			day = getDayByEpochDay( day.epochDay - 1 );
+		}
+		while ( l >= day.end ) {
+			day = getDayByEpochDay( day.epochDay + 1 );
+		}
+		return day;
+	}
+
+	/**
+	 * Returns a day by its number of days from 1970-01-01 in the zone.
+	 * @param epochDay day number.
+	 * @return the day.
+	 */
+	public Day getDayByEpochDay(long epochDay) {
+		long key = epochDay >> BLOCK_SHIFT;
+		int idx = (int)(epochDay & (BLOCK_SIZE - 1));
+		Block block = last;
+		Day day;
+		if ( block.key != key ) {
+			synchronized ( blocks ) {
+				block = (Block)blocks.get( new Long( key ) );
+				if ( block == null ) {
+					block = new Block( key );
+					blocks.put( new Long( key ), block );
+				}
+			}
+			last = block;
+		}
+		day = block.days[idx];
+		if ( day == null ) {
+			// Computing a day twice from two threads is harmless.
+			day = computeDay( epochDay );
+			block.days[idx] = day;
+		}
+		return day;
+	}
+
+	/**
+	 * Works out a day, with a <CODE>Calendar</CODE> in the zone unless it
+	 * has a fixed offset.
+	 */
+	private Day computeDay(long epochDay) {
+		Calendar cal;
+		long midnight = epochDay * DAY_MILLIS;
+		long start;
+		long end;
+		long[] transitions;
+		int[] offsets;
+		int n;
+		long lo, hi, mid;
+		int offset;
+		int year;
+		int month;
+		int date;
+
+	// Civil date, month from 1-12.
+
+		long z = epochDay + 719468;
+		long era = Math.floorDiv( z, 146097 );
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		date = (int)(doy - (153 * mp + 2) / 5 + 1);
+		month = (int)((mp < 10) ? mp + 3 : mp - 9);
+		year = (int)(yoe + era * 400 + ((month <= 2) ? 1 : 0));
+
+		transitions = new long[2];
+		offsets = new int[3];
+		n = 0;
+
+		if ( fixed ) {
+			offsets[0] = rawOffset;
+			start = midnight - rawOffset;
+			end = start + DAY_MILLIS;
+		}
+		else {
+			cal = new GregorianCalendar( zone );
+			cal.clear();
+			cal.set( year, month - 1 + Calendar.JANUARY, date );
+			start = firstInstant( cal.getTimeInMillis(), midnight );
+			cal.add( Calendar.DATE, 1 );
+			cal.set( Calendar.HOUR_OF_DAY, 0 );
+			end = firstInstant( cal.getTimeInMillis(), midnight + DAY_MILLIS );
+
+		// Offset changes within the day, found by bisection.
+
+			offsets[0] = zone.getOffset( start );
+			lo = start;
+			while ( (n < transitions.length) && (zone.getOffset( end - 1 ) != offsets[n]) ) {
+				offset = offsets[n];
+				hi = end - 1;
+				while ( hi - lo > 1 ) {
+					mid = (lo + hi) >>> 1;
+					if ( zone.getOffset( mid ) == offset ) {
+						lo = mid;
+					}
+					else {
+						hi = mid;
+					}
+				}
+				transitions[n++] = hi;
+				offsets[n] = zone.getOffset( hi );
+				lo = hi;
+			}
+		}
+
+		return new Day( epochDay, start, end, year,
+				date - 1,
+				month - 1,
+				(int)Math.floorMod( epochDay + 4, 7 ),
+				monthLength( year, month - 1 ),
+				transitions, offsets, n );
+	}
+
+	/**
+	 * Returns the number of days from 1970-01-01 of a date.
+	 * @param year year.
+	 * @param monthIndex month index from 0-11.
+	 * @param dateIndex day of month index from 0-30.
+	 * @return the epoch day.
+	 */
+	public static long toEpochDay(int year, int monthIndex, int dateIndex) {
+		long y = (monthIndex < 2) ? year - 1 : year;
+		long era = Math.floorDiv( y, 400 );
+		long yoe = y - era * 400;
+		long doy = (153 * ((monthIndex > 1) ? monthIndex - 2 : monthIndex + 10) + 2) / 5 + dateIndex;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/**
+	 * Returns the number of days in a month.
+	 * @param year year.
+	 * @param monthIndex month index from 0-11.
+	 * @return the number of days in the month.
+	 */
+	public static int monthLength(int year, int monthIndex) {
+		switch ( monthIndex ) {
+			case 1:
+				return ((year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0))) ? 29 : 28;
+			case 3:
+			case 5:
+			case 8:
+			case 10:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	/**
+	 * Returns the first instant of a day given its midnight as resolved by
+	 * a <CODE>Calendar</CODE>, which takes a repeated midnight to be the
+	 * second one.
+	 */
+	private long firstInstant(long resolved, long midnight) {
+		int offset = zone.getOffset( resolved - 1 );
+		if ( resolved - 1 + offset >= midnight ) {
+			return midnight - offset;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Blocks by key in access order, dropping the least recently used
+	 * beyond <CODE>MAX_BLOCKS</CODE>.
+	 */
+	private static final class BlockCache extends LinkedHashMap {
+
+		private static final long serialVersionUID = 1L;
+
+		private BlockCache() {
+			super( 16, 0.75f, true );
+		}
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_BLOCKS;
+		}
+
+	}
+
+	/**
+	 * Cached days of consecutive epoch days.
+	 */
+	private static final class Block {
+
+		/** Epoch day / <CODE>BLOCK_SIZE</CODE>. */
+		private final long key;
+		/** Days, null until computed. */
+		private final Day[] days = new Day[BLOCK_SIZE];
+
+		private Block(long key) {
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * A day in a time zone. Immutable.
+	 */
+	public static final class Day {
+
+		/** Number of days from 1970-01-01. */
+		private final long epochDay;
+		/** Local midnight in UTC as long, the base of wall clock times. */
+		private final long midnight;
+		/** First date as long of the day. */
+		private final long start;
+		/** First date as long of the next day. */
+		private final long end;
+		/** Year. */
+		private final int year;
+		/** Day of month index, 0-30. */
+		private final int dateIndex;
+		/** Month index, 0-11. */
+		private final int monthIndex;
+		/** Day of week index, 0-6 (Sun-Sat). */
+		private final int weekdayIndex;
+		/** Number of days in the month. */
+		private final int monthLength;
+		/** Whole day at one offset, starting at midnight. */
+		private final boolean plain;
+		/** Dates as long the offset changes. */
+		private final long[] transitions;
+		/** Offset from the start and after each change, in milliseconds. */
+		private final int[] offsets;
+
+		private Day(long epochDay, long start, long end, int year, int dateIndex, int monthIndex, int weekdayIndex, int monthLength, long[] transitions, int[] offsets, int n) {
+			this.epochDay = epochDay;
+			this.midnight = epochDay * DAY_MILLIS;
+			this.start = start;
+			this.end = end;
+			this.year = year;
+			this.dateIndex = dateIndex;
+			this.monthIndex = monthIndex;
+			this.weekdayIndex = weekdayIndex;
+			this.monthLength = monthLength;
+			this.transitions = new long[n];
+			this.offsets = new int[n + 1];
+			System.arraycopy( transitions, 0, this.transitions, 0, n );
+			System.arraycopy( offsets, 0, this.offsets, 0, n + 1 );
+			plain = (n == 0) && (start == midnight - offsets[0]) && (end - start == DAY_MILLIS);
+		}
+
+		/**
+		 * Returns the number of days from 1970-01-01.
+		 * @return the epoch day.
+		 */
+		public long getEpochDay() {
+			return epochDay;
+		}
+
+		/**
+		 * Returns the first date as long of the day, midnight unless
+		 * midnight was skipped by a DST change.
+		 * @return start of the day as long.
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the start of the next day.
+		 * @return end of the day as long, exclusive.
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * Returns the year.
+		 * @return the year.
+		 */
+		public int getYear() {
+			return year;
+		}
+
+		/**
+		 * Returns the day of month index.
+		 * @return day of month index from 0-30.
+		 */
+		public int getDateIndex() {
+			return dateIndex;
+		}
+
+		/**
+		 * Returns the month index.
+		 * @return month index from 0-11.
+		 */
+		public int getMonthIndex() {
+			return monthIndex;
+		}
+
+		/**
+		 * Returns the day of week index.
+		 * @return day of week index from 0-6 (Sun-Sat).
+		 */
+		public int getWeekdayIndex() {
+			return weekdayIndex;
+		}
+
+		/**
+		 * Returns the number of days in the month.
+		 * @return the number of days in the month.
+		 */
+		public int getMonthLength() {
+			return monthLength;
+		}
+
+		/**
+		 * Returns true if the day has 24 hours at one offset, so minute of
+		 * day n is <CODE>getStart() + n * 60000</CODE>.
+		 * @return true if there is no DST change that day.
+		 */
+		public boolean isPlain() {
+			return plain;
+		}
+
+		/**
+		 * Returns true if the day was skipped entirely, starting where it ends.
+		 * @return true if the day has no wall clock times.
+		 */
+		public boolean isSkipped() {
+			return start == end;
+		}
+
+		/**
+		 * Returns the UTC offset at a date within the day.
+		 * @param l date as long.
+		 * @return offset in milliseconds.
+		 */
+		public int getOffset(long l) {
+			int i = 0;
+			while ( (i < transitions.length) && (l >= transitions[i]) ) {
+				++i;
+			}
+			return offsets[i];
+		}
+
+		/**
+		 * Returns the wall clock minute of day of a date within the day.
+		 * @param l date as long.
+		 * @return minute of day from 0-1439.
+		 */
+		public int getMinuteOfDay(long l) {
+			long mod;
+			if ( plain ) {
+				return (int)((l - start) / 60000);
+			}
+			mod = Math.floorDiv( l + getOffset( l ) - midnight, 60000L );
+			if ( mod < 0 ) {
+				return 0;
+			}
+			if ( mod >= CompiledSchedule.MINUTES_PER_DAY ) {
+				return CompiledSchedule.MINUTES_PER_DAY - 1;
+			}
+			return (int)mod;
+		}
+
+		/**
+		 * Returns the date as long of a wall clock minute of day. Skipped
+		 * minutes give the end of the gap, repeated minutes their first
+		 * occurrence, so the result never decreases with the minute.
+		 * @param mod minute of day from 0-1439.
+		 * @return date as long, or <CODE>Schedule.NO_FIRE_TIME</CODE> if the
+		 * minute lies beyond a day cut short.
+		 */
+		public long getTime(int mod) {
+			long wall;
+			long t;
+			long segStart;
+			long segEnd;
+			if ( plain ) {
+				return start + mod * 60000L;
+			}
+			wall = midnight + mod * 60000L;
+			for (int i=0; i<offsets.length; ++i) {
+				t = wall - offsets[i];
+				segStart = (i == 0) ? start : transitions[i - 1];
+				segEnd = (i == transitions.length) ? end : transitions[i];
+				if ( t < segStart ) {
+					return segStart;
+				}
+				if ( t < segEnd ) {
+					return t;
+				}
+			}
+			return Schedule.NO_FIRE_TIME;
+		}
+
+		/**
+		 * Fills the supplied array with the dates as long of the minutes set
+		 * in a day mask, in ascending order. Skipped minutes sharing the end
+		 * of a gap are stored once.
+		 * @param mask day mask of <CODE>CompiledSchedule.DAY_MASK_LENGTH</CODE> longs.
+		 * @param times array of at least <CODE>CompiledSchedule.MINUTES_PER_DAY</CODE> longs.
+		 * @return number of dates stored in the array.
+		 */
+		public int getTimes(long[] mask, long[] times) {
+			int n = 0;
+			int mod;
+			long t;
+			if ( start == end ) {
+				return 0;
+			}
+			mod = CompiledSchedule.nextSet( mask, 0 );
+			if ( plain ) {
+				while ( mod != -1 ) {
+					times[n++] = start + mod * 60000L;
+					mod = CompiledSchedule.nextSet( mask, mod + 1 );
+				}
+			}
+			else {
+				while ( mod != -1 ) {
+					t = getTime( mod );
+					if ( (t != Schedule.NO_FIRE_TIME) && ((n == 0) || (t > times[n - 1])) ) {
+						times[n++] = t;
+					}
+					mod = CompiledSchedule.nextSet( mask, mod + 1 );
+				}
+			}
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.antiaction.common.cron;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestCronMinuteAlign extends TestCase {
+
+	public void testSchedule() {
+		CronMinuteAlign align = new CronMinuteAlign();
+		long base = System.currentTimeMillis();
+		ListSchedule schedule = new ListSchedule( new long[] { base - 5000, base - 4000, base - 3000, base - 200, base + 300 } );
+		align.cronPrev.setTime( new Date( base - 6000 ) );
+		align.setSchedule( schedule );
+		Assert.assertSame( schedule, align.getSchedule() );
+
+		// Fire times passed by more than the tolerance are skipped, one just passed is due at once.
+		Assert.assertEquals( base - 200, align.sleep() );
+		Assert.assertEquals( 3, align.getMissed() );
+		Assert.assertTrue( align.getLateness() >= 200000000L );
+		Assert.assertEquals( base - 200, align.getCronPrev() );
+
+		// Sleeps until the next fire time.
+		Assert.assertEquals( base + 300, align.sleep() );
+		Assert.assertTrue( System.currentTimeMillis() >= base + 300 );
+		Assert.assertEquals( 0, align.getMissed() );
+		Assert.assertTrue( align.getLateness() >= 0 );
+		Assert.assertEquals( base + 300, align.getCronNext() );
+		Assert.assertEquals( base + 300, align.getCronPrev() );
+		Calendar cal = new GregorianCalendar();
+		cal.setTimeInMillis( base + 300 );
+		Assert.assertEquals( cal.get( Calendar.HOUR_OF_DAY ) * 60 + cal.get( Calendar.MINUTE ), align.getMinuteOfDay() );
+	}
+
+	public void testRearm() throws InterruptedException {
+		CronMinuteAlign align = new CronMinuteAlign();
+		ListSchedule schedule = new ListSchedule( new long[ 0 ] );
+		align.setSchedule( schedule );
+
+		// No fire time, sleeps until the changed schedule is rearmed.
+		SleepThread thread = new SleepThread( align );
+		awaitSleeping( thread );
+		long due = System.currentTimeMillis() + 100;
+		schedule.times = new long[] { due };
+		align.rearm();
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertEquals( due, thread.result );
+
+		// A new schedule replaces one due much later.
+		schedule.times = new long[] { due + 3600000L };
+		thread = new SleepThread( align );
+		awaitSleeping( thread );
+		long due2 = System.currentTimeMillis() + 100;
+		align.setSchedule( new ListSchedule( new long[] { due2 } ) );
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertEquals( due2, thread.result );
+
+		// Without a schedule a sleeping thread returns at once.
+		align.setSchedule( schedule );
+		thread = new SleepThread( align );
+		awaitSleeping( thread );
+		long before = System.currentTimeMillis();
+		align.setSchedule( null );
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertTrue( thread.result >= before );
+		Assert.assertTrue( thread.result < due + 3600000L );
+		Assert.assertNull( align.getSchedule() );
+	}
+
+	public void testInterrupt() throws InterruptedException {
+		// Minute mode, the next call waits for the same minute.
+		CronMinuteAlign align = new CronMinuteAlign();
+		long prev = align.getCronPrev();
+		SleepThread thread = new SleepThread( align );
+		awaitSleeping( thread );
+		thread.interrupt();
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertEquals( prev, align.getCronPrev() );
+		Assert.assertTrue( thread.result < align.getCronNext() );
+
+		// Schedule mode, the fire time is not lost.
+		long base = System.currentTimeMillis();
+		ListSchedule schedule = new ListSchedule( new long[] { base + 300 } );
+		align.cronPrev.setTime( new Date( base - 1000 ) );
+		align.setSchedule( schedule );
+		thread = new SleepThread( align );
+		awaitSleeping( thread );
+		thread.interrupt();
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertTrue( thread.result < base + 300 );
+		Assert.assertEquals( base - 1000, align.getCronPrev() );
+		Assert.assertEquals( base + 300, align.sleep() );
+		Assert.assertEquals( 0, align.getMissed() );
+	}
+
+	public void testPrecise() throws InterruptedException {
+		CronMinuteAlign align = new CronMinuteAlign();
+		align.setPrecise( true );
+		long base = System.currentTimeMillis();
+		ListSchedule schedule = new ListSchedule( new long[] { base - 3000, base + 300, base + 600 } );
+		align.cronPrev.setTime( new Date( base - 4000 ) );
+		align.setSchedule( schedule );
+
+		// An interrupt returns early and leaves the alignment as it was.
+		SleepThread thread = new SleepThread( align );
+		awaitSleeping( thread );
+		thread.interrupt();
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertTrue( thread.result < base + 300 );
+		Assert.assertEquals( base - 4000, align.getCronPrev() );
+
+		Assert.assertEquals( base + 300, align.sleep() );
+		Assert.assertTrue( System.currentTimeMillis() >= base + 300 );
+		Assert.assertEquals( 1, align.getMissed() );
+		Assert.assertTrue( align.getLateness() >= 0 );
+		Assert.assertEquals( base + 600, align.sleep() );
+		Assert.assertEquals( 0, align.getMissed() );
+	}
+
+	public void testPreciseRearm() throws InterruptedException {
+		CronMinuteAlign align = new CronMinuteAlign();
+		align.setPrecise( true );
+		boolean rearmed = false;
+		// The final park is short, retry if this thread was not run in time.
+		for (int i=0; (i<5) && !rearmed; ++i) {
+			long due = System.currentTimeMillis() + 200;
+			ListSchedule schedule = new ListSchedule( new long[] { due } );
+			schedule.calls = new CountDownLatch( 2 );
+			align.cronPrev.setTime( new Date( due - 1000 ) );
+			align.setSchedule( schedule );
+			SleepThread thread = new SleepThread( align );
+			thread.start();
+			// Second lookup, shortly before parking for the rest of the wait.
+			Assert.assertTrue( schedule.calls.await( 10, TimeUnit.SECONDS ) );
+			schedule.times = new long[] { due + 100 };
+			align.rearm();
+			thread.join( 10000 );
+			Assert.assertFalse( thread.isAlive() );
+			rearmed = thread.result == due + 100;
+			Assert.assertTrue( rearmed || thread.result == due );
+		}
+		Assert.assertTrue( rearmed );
+	}
+
+	protected static void awaitSleeping(Thread thread) {
+		thread.start();
+		long timeout = System.currentTimeMillis() + 10000;
+		Thread.State state = thread.getState();
+		while ( state != Thread.State.WAITING && state != Thread.State.TIMED_WAITING ) {
+			Assert.assertTrue( System.currentTimeMillis() < timeout );
+			Thread.yield();
+			state = thread.getState();
+		}
+	}
+
+	/**
+	 * Thread calling <CODE>sleep()</CODE> once.
+	 */
+	static class SleepThread extends Thread {
+
+		final CronMinuteAlign align;
+
+		volatile long result;
+
+		SleepThread(CronMinuteAlign align) {
+			this.align = align;
+		}
+
+		public void run() {
+			result = align.sleep();
+		}
+
+	}
+
+	/**
+	 * Schedule firing at the times given, which may be changed.
+	 */
+	static class ListSchedule implements Schedule {
+
+		volatile long[] times;
+
+		volatile CountDownLatch calls;
+
+		ListSchedule(long[] times) {
+			this.times = times;
+		}
+
+		public long[] getScheduleTimes(long l) {
+			return new long[ 0 ];
+		}
+
+		public long[] getScheduleMask(long l, long[] mask) {
+			for (int i=0; i<CompiledSchedule.DAY_MASK_LENGTH; ++i) {
+				mask[ i ] = 0;
+			}
+			return mask;
+		}
+
+		public long nextFireTime(long after) {
+			long[] t = times;
+			long next = NO_FIRE_TIME;
+			for (int i=0; (i<t.length) && (next == NO_FIRE_TIME); ++i) {
+				if ( t[ i ] > after ) {
+					next = t[ i ];
+				}
+			}
+			if ( calls != null ) {
+				calls.countDown();
+			}
+			return next;
+		}
+
+	}
+
+}
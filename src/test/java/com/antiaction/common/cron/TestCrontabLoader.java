@@ -0,0 +1,124 @@
+package com.antiaction.common.cron;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestCrontabLoader extends TestCase {
+
+	public void testLoad() throws IOException {
+		String[] lines = {
+			"# m h dom mon dow command",
+			"SHELL=/bin/sh",
+			"",
+			"  MAILTO = \"\"",
+			"*/5 * * * * /usr/bin/poll",
+			"\t0 4 * * sun  backup --full",
+			"0 24 * * * broken",
+			"   # indented comment",
+			"15,45 9-17 * * 1-5 report \u00e6\u00f8\u00e5",
+			"0 0 1 jan *"
+		};
+		StringBuffer sb = new StringBuffer();
+		for (int i=0; i<300; ++i) {
+			sb.append( lines[ i % lines.length ] );
+			sb.append( (i % 3 == 0) ? "\r\n" : "\n" );
+		}
+		byte[] data = sb.toString().getBytes( "UTF-8" );
+		File file = File.createTempFile( "crontab", ".txt" );
+		try {
+			FileOutputStream out = new FileOutputStream( file );
+			out.write( data );
+			out.close();
+
+			ScheduleCache cache = new ScheduleCache( 100 );
+			for (int chunkSize=16; chunkSize<=4096; chunkSize*=16) {
+				CrontabLoader loader = new CrontabLoader( cache, java.util.concurrent.ForkJoinPool.commonPool() );
+				loader.setChunkSize( chunkSize );
+				Recorder mapped = new Recorder();
+				Assert.assertEquals( 120, loader.load( file, mapped ) );
+				Recorder streamed = new Recorder();
+				Assert.assertEquals( 120, loader.load( new ByteArrayInputStream( data ), streamed ) );
+				Assert.assertEquals( mapped.events, streamed.events );
+				Assert.assertEquals( 150, mapped.events.size() );
+				Assert.assertEquals( "5 /usr/bin/poll", mapped.events.get( 0 ) );
+				Assert.assertEquals( "6 backup --full", mapped.events.get( 1 ) );
+				Assert.assertEquals( "7 invalid 3@2 0 24 * * * broken", mapped.events.get( 2 ) );
+				Assert.assertEquals( "9 report \u00e6\u00f8\u00e5", mapped.events.get( 3 ) );
+				Assert.assertEquals( "10 ", mapped.events.get( 4 ) );
+				Assert.assertEquals( "300 ", mapped.events.get( 149 ) );
+			}
+			Assert.assertSame( cache.get( "*/5 * * * *" ), cache.get( "0-59/5 * * * *" ) );
+			Assert.assertEquals( 5, cache.size() );
+
+			// An invalid line is parsed once, its error comes from the cache.
+			long misses = cache.getMisses();
+			CrontabLoader loader = new CrontabLoader( cache, java.util.concurrent.ForkJoinPool.commonPool() );
+			Assert.assertEquals( 0, loader.load( new ByteArrayInputStream( "0 24 * * * broken\n".getBytes( "UTF-8" ) ), new Recorder() ) );
+			Assert.assertEquals( misses + 1, cache.getMisses() );
+			CrontabSchedule invalid = (CrontabSchedule)cache.lookup( "0 24 * * *", "0 24 * * *", null );
+			Assert.assertEquals( 3, invalid.getErrorCode() );
+			Assert.assertNull( cache.get( "0 24 * * *" ) );
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public void testLongLine() throws IOException {
+		StringBuffer sb = new StringBuffer();
+		sb.append( "0 4 * * * short\n" );
+		sb.append( "*/5 * * * * long" );
+		for (int i=0; i<100; ++i) {
+			sb.append( " arg" + i );
+		}
+		sb.append( "\n0 5 * * * after\n" );
+		sb.append( "0 6 * * * last" );
+		byte[] data = sb.toString().getBytes( "UTF-8" );
+		File file = File.createTempFile( "crontab", ".txt" );
+		try {
+			FileOutputStream out = new FileOutputStream( file );
+			out.write( data );
+			out.close();
+
+			// The long line spans several mapped windows and lookahead reads.
+			CrontabLoader loader = new CrontabLoader();
+			loader.setChunkSize( 16 );
+			loader.mapSize = 64;
+			Recorder mapped = new Recorder();
+			Assert.assertEquals( 4, loader.load( file, mapped ) );
+			Recorder streamed = new Recorder();
+			Assert.assertEquals( 4, loader.load( new ByteArrayInputStream( data ), streamed ) );
+			Assert.assertEquals( streamed.events, mapped.events );
+			Assert.assertEquals( "1 short", mapped.events.get( 0 ) );
+			Assert.assertTrue( ((String)mapped.events.get( 1 )).startsWith( "2 long arg0 " ) );
+			Assert.assertTrue( ((String)mapped.events.get( 1 )).endsWith( " arg99" ) );
+			Assert.assertEquals( "3 after", mapped.events.get( 2 ) );
+			Assert.assertEquals( "4 last", mapped.events.get( 3 ) );
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	static class Recorder implements CrontabLoader.Handler {
+
+		ArrayList events = new ArrayList();
+
+		public void schedule(int line, CompiledSchedule schedule, String command) {
+			Assert.assertNotNull( schedule );
+			events.add( line + " " + command );
+		}
+
+		public void invalid(int line, String text, int errorCode, int errorPosition) {
+			events.add( line + " invalid " + errorCode + "@" + errorPosition + " " + text );
+		}
+
+	}
+
+}
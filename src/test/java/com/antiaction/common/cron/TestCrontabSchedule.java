@@ -7,8 +7,15 @@
 
 package com.antiaction.common.cron;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.stream.StreamSupport;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
@@ -32,8 +39,8 @@ public class TestCrontabSchedule extends TestCase {
 		Assert.assertEquals( 5, ScheduleAbstract.monthToInt( Calendar.JUNE ) );
 		Assert.assertEquals( 6, ScheduleAbstract.monthToInt( Calendar.JULY ) );
 		Assert.assertEquals( 7, ScheduleAbstract.monthToInt( Calendar.AUGUST ) );
-		Assert.assertEquals( 8, ScheduleAbstract.monthToInt( Calendar.OCTOBER ) );
-		Assert.assertEquals( 9, ScheduleAbstract.monthToInt( Calendar.SEPTEMBER ) );
+		Assert.assertEquals( 8, ScheduleAbstract.monthToInt( Calendar.SEPTEMBER ) );
+		Assert.assertEquals( 9, ScheduleAbstract.monthToInt( Calendar.OCTOBER ) );
 		Assert.assertEquals( 10, ScheduleAbstract.monthToInt( Calendar.NOVEMBER ) );
 		Assert.assertEquals( 11, ScheduleAbstract.monthToInt( Calendar.DECEMBER ) );
 		Assert.assertEquals( 11, ScheduleAbstract.monthToInt( Calendar.UNDECIMBER ) );
@@ -56,4 +63,392 @@ public class TestCrontabSchedule extends TestCase {
         }
 	}
 
+	public void testNextFireTime() {
+		Calendar cal = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3, 12, 34, 56 );
+		long after = cal.getTime().getTime();
+
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory("*/10 * * * *");
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 3, 12, 40 ), schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("0 0 * * *");
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 4, 0, 0 ), schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("30 4 1 1 *");
+		Assert.assertEquals( time( 2014, Calendar.JANUARY, 1, 4, 30 ), schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("0 12 29 2 *");
+		Assert.assertEquals( time( 2016, Calendar.FEBRUARY, 29, 12, 0 ), schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("15 8 * * mon");
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 9, 8, 15 ), schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("0 0 31 2 *");
+		Assert.assertEquals( Schedule.NO_FIRE_TIME, schedule.nextFireTime( after ) );
+
+		schedule = CrontabSchedule.crontabFactory("0 */6 * * *");
+		long[] times = schedule.nextFireTimes( after, 3 );
+		Assert.assertEquals( 3, times.length );
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 3, 18, 0 ), times[ 0 ] );
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 4, 0, 0 ), times[ 1 ] );
+		Assert.assertEquals( time( 2013, Calendar.SEPTEMBER, 4, 6, 0 ), times[ 2 ] );
+	}
+
+	public void testScheduleMask() {
+		long day = time( 2013, Calendar.SEPTEMBER, 3, 0, 0 );
+		long[] mask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory("5,59 */6 * * *");
+		schedule.getScheduleMask( day, mask );
+		byte[] array = schedule.getScheduleArray( day );
+		int count = 0;
+		for (int i=0; i<CompiledSchedule.MINUTES_PER_DAY; ++i) {
+			Assert.assertEquals( array[ i ] != 0, CompiledSchedule.isSet( mask, i ) );
+			if ( array[ i ] != 0 ) {
+				++count;
+			}
+		}
+		Assert.assertEquals( 8, count );
+		Assert.assertEquals( 5, CompiledSchedule.nextSet( mask, 0 ) );
+		Assert.assertEquals( 59, CompiledSchedule.nextSet( mask, 6 ) );
+		Assert.assertEquals( 6 * 60 + 5, CompiledSchedule.nextSet( mask, 60 ) );
+		Assert.assertEquals( 18 * 60 + 59, CompiledSchedule.nextSet( mask, 18 * 60 + 6 ) );
+		Assert.assertEquals( -1, CompiledSchedule.nextSet( mask, 18 * 60 + 60 ) );
+
+		schedule = CrontabSchedule.crontabFactory("* * * 10 *");
+		schedule.getScheduleMask( day, mask );
+		Assert.assertEquals( -1, CompiledSchedule.nextSet( mask, 0 ) );
+
+		schedule = CrontabSchedule.crontabFactory("* * * 9 *");
+		schedule.getScheduleMask( day, mask );
+		for (int i=0; i<CompiledSchedule.MINUTES_PER_DAY; ++i) {
+			Assert.assertTrue( CompiledSchedule.isSet( mask, i ) );
+		}
+	}
+
+	public void testDefaultMethods() {
+		long day = time( 2013, Calendar.SEPTEMBER, 3, 0, 0 );
+		long after = time( 2013, Calendar.SEPTEMBER, 3, 12, 34 );
+		String[] crontabs = { "5,59 */6 * * *", "15 8 * * mon", "0 12 29 2 *", "0 0 31 2 *" };
+		long[] mask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] expected = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		for (int i=0; i<crontabs.length; ++i) {
+			final ScheduleAbstract crontab = CrontabSchedule.crontabFactory( crontabs[ i ] );
+			// Implements getScheduleTimes() only, as a class written for version 1 would add.
+			Schedule schedule = new Schedule() {
+				public long[] getScheduleTimes(long l) {
+					return crontab.getScheduleTimes( l );
+				}
+			};
+			schedule.getScheduleMask( day, mask );
+			crontab.getScheduleMask( day, expected );
+			Assert.assertTrue( Arrays.equals( expected, mask ) );
+			Assert.assertEquals( crontab.nextFireTime( after ), schedule.nextFireTime( after ) );
+		}
+
+		// Without getScheduleTimes() the defaults have nothing to go by.
+		Schedule schedule = new Schedule() {
+		};
+		try {
+			schedule.nextFireTime( after );
+			Assert.fail( "Exception expected" );
+		}
+		catch (UnsupportedOperationException e) {
+		}
+	}
+
+	public void testConcurrentEvaluation() throws InterruptedException {
+		final CompiledSchedule schedule = CrontabSchedule.crontabFactory("7 */3 1,15 * fri").getCompiledSchedule();
+		final long after = time( 2013, Calendar.SEPTEMBER, 3, 12, 0 );
+		final long[] expected = new long[ 500 ];
+		Assert.assertEquals( expected.length, schedule.nextFireTimes( after, expected ) );
+		final boolean[] ok = new boolean[ 8 ];
+		Thread[] threads = new Thread[ ok.length ];
+		for (int i=0; i<threads.length; ++i) {
+			final int id = i;
+			threads[ i ] = new Thread() {
+				public void run() {
+					long[] times = new long[ expected.length ];
+					boolean b = true;
+					for (int j=0; j<20; ++j) {
+						schedule.nextFireTimes( after, times );
+						b &= Arrays.equals( expected, times );
+					}
+					ok[ id ] = b;
+				}
+			};
+			threads[ i ].start();
+		}
+		for (int i=0; i<threads.length; ++i) {
+			threads[ i ].join();
+			Assert.assertTrue( ok[ i ] );
+		}
+	}
+
+	public void testHash() {
+		CompiledSchedule a = CrontabSchedule.crontabFactory("H H * * *", "job-a").getCompiledSchedule();
+		CompiledSchedule b = CrontabSchedule.crontabFactory("H H * * *", "job-a").getCompiledSchedule();
+		Assert.assertEquals( a.getMinutes(), b.getMinutes() );
+		Assert.assertEquals( a.getHours(), b.getHours() );
+		Assert.assertEquals( 1, Long.bitCount( a.getMinutes() ) );
+		Assert.assertEquals( 1, Integer.bitCount( a.getHours() ) );
+
+		// Identical expressions are spread across the hour.
+		long minutes = 0;
+		for (int i=0; i<100; ++i) {
+			minutes |= CrontabSchedule.crontabFactory("H * * * *", "job-" + i).getCompiledSchedule().getMinutes();
+		}
+		Assert.assertTrue( Long.bitCount( minutes ) > 40 );
+
+		for (int i=0; i<100; ++i) {
+			CompiledSchedule schedule = CrontabSchedule.crontabFactory("H(10-19)/5 H/6 H * H(1-5) cmd", "job-" + i).getCompiledSchedule();
+			long m = schedule.getMinutes();
+			Assert.assertEquals( 2, Long.bitCount( m ) );
+			Assert.assertTrue( Long.numberOfTrailingZeros( m ) < 15 && Long.numberOfTrailingZeros( m ) >= 10 );
+			Assert.assertEquals( 4, Integer.bitCount( schedule.getHours() ) );
+			Assert.assertTrue( Integer.numberOfTrailingZeros( schedule.getHours() ) < 6 );
+			Assert.assertEquals( 1, Integer.bitCount( schedule.getDaysOfMonth() ) );
+			Assert.assertTrue( schedule.getDaysOfMonth() < (1 << 28) );
+			Assert.assertEquals( 1, Integer.bitCount( schedule.getDaysOfWeek() ) );
+			Assert.assertTrue( schedule.getDaysOfWeek() >= (1 << 1) && schedule.getDaysOfWeek() <= (1 << 5) );
+		}
+	}
+
+	public void testParseErrors() {
+		String[] crontabs = {
+			"*/15 9-17 * jan,jul mon-fri  run this",
+			"0 4 * *",
+			"0 4 * * ?",
+			"0 24 * * *",
+			"0 4 * foo *",
+			"5/2 * * * *",
+			"*/0 * * * *",
+			"0 4-2 * * *",
+			"0 4;5 * * *"
+		};
+		int[] codes = {
+			CrontabSchedule.ERROR_NONE,
+			CrontabSchedule.ERROR_FIELDS,
+			CrontabSchedule.ERROR_NUMBER,
+			CrontabSchedule.ERROR_RANGE,
+			CrontabSchedule.ERROR_NAME,
+			CrontabSchedule.ERROR_STEP,
+			CrontabSchedule.ERROR_STEP,
+			CrontabSchedule.ERROR_RANGE,
+			CrontabSchedule.ERROR_SYNTAX
+		};
+		int[] positions = { -1, 7, 8, 2, 6, 1, 2, 5, 3 };
+		for (int i=0; i<crontabs.length; ++i) {
+			CrontabSchedule schedule = (CrontabSchedule)CrontabSchedule.crontabFactory( crontabs[ i ] );
+			Assert.assertEquals( crontabs[ i ], codes[ i ], schedule.getErrorCode() );
+			Assert.assertEquals( crontabs[ i ], positions[ i ], schedule.getErrorPosition() );
+		}
+
+		CrontabSchedule schedule = (CrontabSchedule)CrontabSchedule.crontabFactory( crontabs[ 0 ] );
+		CompiledSchedule compiled = schedule.getCompiledSchedule();
+		Assert.assertEquals( "run this", schedule.getCommand() );
+		Assert.assertEquals( 0x0000200040008001L, compiled.getMinutes() );
+		Assert.assertEquals( 0x0003FE00, compiled.getHours() );
+		Assert.assertEquals( (1 << 0) | (1 << 6), compiled.getMonths() );
+		Assert.assertEquals( 0x3E, compiled.getDaysOfWeek() );
+		Assert.assertTrue( compiled.isDayofmonthAll() );
+		Assert.assertFalse( compiled.isDayofweekAll() );
+	}
+
+	public void testCache() {
+		ScheduleCache cache = new ScheduleCache( 2 );
+		CompiledSchedule a = cache.get( "0 * * * * run a" );
+		Assert.assertSame( a, cache.get( "  0\t*  * * *   run b" ) );
+		Assert.assertEquals( CrontabSchedule.crontabFactory("0 * * * *").getCompiledSchedule(), a );
+		Assert.assertEquals( 1, cache.getMisses() );
+		Assert.assertEquals( 1, cache.getHits() );
+
+		// Different expressions, same masks.
+		CompiledSchedule b = cache.get( "*/15 * * * *" );
+		Assert.assertSame( b, cache.get( "0,15,30,45 * * * *" ) );
+		Assert.assertEquals( b.hashCode(), CrontabSchedule.crontabFactory("0-59/15 * * * *").getCompiledSchedule().hashCode() );
+		Assert.assertEquals( 2, cache.size() );
+		Assert.assertEquals( 1, cache.getEvictions() );
+
+		Assert.assertNull( cache.get( "0 25 * * *" ) );
+		Assert.assertNotSame( cache.get( "H * * * *", "job-a" ), cache.get( "H * * * *", "job-b" ) );
+		Assert.assertSame( cache.get( "H * * * * a", "job-a" ), cache.get( "H * * * * b", "job-a" ) );
+		Assert.assertEquals( 2, cache.size() );
+	}
+
+	public void testFireTimes() {
+		long from = time( 2013, Calendar.SEPTEMBER, 3, 12, 7 );
+		long to = time( 2014, Calendar.SEPTEMBER, 3, 12, 7 );
+		String[] crontabs = { "7 */3 1,15 * fri", "*/10 * * * *", "0 0 29 2 *", "30 2 * 3,10 sun" };
+		for (int c=0; c<crontabs.length; ++c) {
+			ScheduleAbstract schedule = CrontabSchedule.crontabFactory( crontabs[ c ] );
+			ArrayList expected = new ArrayList();
+			long t = schedule.nextFireTime( from - 1 );
+			while ( t != Schedule.NO_FIRE_TIME && t < to ) {
+				expected.add( new Long( t ) );
+				t = schedule.nextFireTime( t );
+			}
+
+			ArrayList actual = new ArrayList();
+			PrimitiveIterator.OfLong iter = schedule.fireTimes( from, to );
+			while ( iter.hasNext() ) {
+				actual.add( new Long( iter.nextLong() ) );
+			}
+			Assert.assertEquals( crontabs[ c ], expected, actual );
+
+			long[] parallel = StreamSupport.longStream( schedule.fireTimeSpliterator( from, to ), true ).toArray();
+			Assert.assertEquals( expected.size(), parallel.length );
+			for (int i=0; i<parallel.length; ++i) {
+				Assert.assertEquals( ((Long)expected.get( i )).longValue(), parallel[ i ] );
+			}
+
+			long[] next = schedule.nextFireTimes( from - 1, 100 );
+			iter = schedule.fireTimes( from, Long.MAX_VALUE );
+			for (int i=0; i<next.length; ++i) {
+				Assert.assertEquals( next[ i ], iter.nextLong() );
+			}
+		}
+		Assert.assertNotNull( CrontabSchedule.crontabFactory("* * * * *").fireTimeSpliterator( from, to ).trySplit() );
+		// Sorted in the natural order, which a sorted stream keeps without sorting.
+		FireTimeSpliterator spliterator = CrontabSchedule.crontabFactory("* * * * *").fireTimeSpliterator( from, to );
+		Assert.assertTrue( spliterator.hasCharacteristics( java.util.Spliterator.SORTED ) );
+		Assert.assertNull( spliterator.getComparator() );
+		Assert.assertFalse( CrontabSchedule.crontabFactory("0 0 31 2 *").fireTimes( from, Long.MAX_VALUE ).hasNext() );
+	}
+
+	public void testTimeZone() {
+		TimeZone utc = TimeZone.getTimeZone( "UTC" );
+		TimeZone newYork = TimeZone.getTimeZone( "America/New_York" );
+		TimeZone tokyo = TimeZone.getTimeZone( "Asia/Tokyo" );
+
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory( "30 2 * * *" );
+		schedule.setTimeZone( tokyo );
+		CompiledSchedule compiled = schedule.getCompiledSchedule();
+		Assert.assertEquals( "Asia/Tokyo", compiled.getTimeZone().getID() );
+		Assert.assertEquals( utcTime( 2027, Calendar.JANUARY, 4, 17, 30 ), compiled.nextFireTime( utcTime( 2027, Calendar.JANUARY, 4, 12, 0 ) ) );
+		Assert.assertEquals( utcTime( 2027, Calendar.JANUARY, 5, 2, 30 ), compiled.withTimeZone( utc ).nextFireTime( utcTime( 2027, Calendar.JANUARY, 4, 12, 0 ) ) );
+		Assert.assertFalse( compiled.equals( compiled.withTimeZone( utc ) ) );
+		Assert.assertEquals( compiled, compiled.withTimeZone( tokyo ) );
+
+		// Skipped wall clock times fire at the end of the gap, 03:00 EDT.
+		compiled = compiled.withTimeZone( newYork );
+		long after = utcTime( 2027, Calendar.MARCH, 14, 0, 0 );
+		Assert.assertEquals( utcTime( 2027, Calendar.MARCH, 14, 7, 0 ), compiled.nextFireTime( after ) );
+		Assert.assertEquals( utcTime( 2027, Calendar.MARCH, 15, 6, 30 ), compiled.nextFireTime( compiled.nextFireTime( after ) ) );
+		long[] times = compiled.getScheduleTimes( utcTime( 2027, Calendar.MARCH, 14, 12, 0 ) );
+		Assert.assertEquals( 1, times.length );
+		Assert.assertEquals( utcTime( 2027, Calendar.MARCH, 14, 7, 0 ), times[ 0 ] );
+
+		// Every skipped minute maps to the same time, kept once.
+		compiled = CrontabSchedule.crontabFactory( "*/15 2 * * *" ).getCompiledSchedule().withTimeZone( newYork );
+		times = compiled.getScheduleTimes( utcTime( 2027, Calendar.MARCH, 14, 12, 0 ) );
+		Assert.assertEquals( 1, times.length );
+
+		// Repeated wall clock times fire once, at the first occurrence, 01:30 EDT.
+		compiled = CrontabSchedule.crontabFactory( "30 1 * * *" ).getCompiledSchedule().withTimeZone( newYork );
+		after = utcTime( 2027, Calendar.NOVEMBER, 7, 0, 0 );
+		Assert.assertEquals( utcTime( 2027, Calendar.NOVEMBER, 7, 5, 30 ), compiled.nextFireTime( after ) );
+		Assert.assertEquals( utcTime( 2027, Calendar.NOVEMBER, 8, 6, 30 ), compiled.nextFireTime( compiled.nextFireTime( after ) ) );
+		times = compiled.getScheduleTimes( after + 12 * 60 * 60 * 1000L );
+		Assert.assertEquals( 1, times.length );
+		Assert.assertEquals( utcTime( 2027, Calendar.NOVEMBER, 7, 5, 30 ), times[ 0 ] );
+
+		// Every minute of the 25 hour day, the repeated hour once.
+		compiled = CrontabSchedule.crontabFactory( "* * * * *" ).getCompiledSchedule().withTimeZone( newYork );
+		Assert.assertEquals( 1440, compiled.getScheduleTimes( after + 12 * 60 * 60 * 1000L ).length );
+
+		ScheduleCache cache = new ScheduleCache( 16 );
+		Assert.assertNotSame( cache.get( "30 2 * * *", "30 2 * * *", utc ), cache.get( "30 2 * * *", "30 2 * * *", tokyo ) );
+		Assert.assertSame( cache.get( "30 2 * * *", "30 2 * * *", tokyo ), cache.get( "30  2 * * *", "30 2 * * *", tokyo ) );
+
+		// Same ID, other rules.
+		TimeZone shifted = new SimpleTimeZone( 7200000, "Asia/Tokyo" );
+		CompiledSchedule c = cache.get( "30 2 * * *", "30 2 * * *", shifted );
+		Assert.assertNotSame( cache.get( "30 2 * * *", "30 2 * * *", tokyo ), c );
+		Assert.assertSame( ZoneDays.getInstance( shifted ), c.getZoneDays() );
+
+		// The default time zone is resolved on each lookup.
+		TimeZone defaultZone = TimeZone.getDefault();
+		try {
+			TimeZone.setDefault( utc );
+			c = cache.get( "30 2 * * *" );
+			Assert.assertSame( ZoneDays.getInstance( utc ), c.getZoneDays() );
+			TimeZone.setDefault( tokyo );
+			c = cache.get( "30 2 * * *" );
+			Assert.assertSame( ZoneDays.getInstance( tokyo ), c.getZoneDays() );
+			Assert.assertSame( c, cache.get( "30 2 * * *", "30 2 * * *", tokyo ) );
+		}
+		finally {
+			TimeZone.setDefault( defaultZone );
+		}
+	}
+
+	public void testFixedOffset() {
+		TimeZone utc = TimeZone.getTimeZone( "UTC" );
+		TimeZone nepal = TimeZone.getTimeZone( "GMT+05:45" );
+		Assert.assertTrue( ZoneDays.getInstance( utc ).isFixedOffset() );
+		Assert.assertTrue( ZoneDays.getInstance( nepal ).isFixedOffset() );
+		Assert.assertTrue( ZoneDays.getInstance( new SimpleTimeZone( 3600000, "Fixed" ) ).isFixedOffset() );
+		Assert.assertFalse( ZoneDays.getInstance( TimeZone.getTimeZone( "Europe/Copenhagen" ) ).isFixedOffset() );
+
+		// Shared by zone ID and rules.
+		Assert.assertSame( ZoneDays.getInstance( utc ), ZoneDays.getInstance( TimeZone.getTimeZone( "UTC" ) ) );
+		ZoneDays custom = ZoneDays.getInstance( new SimpleTimeZone( 7200000, "UTC" ) );
+		Assert.assertNotSame( ZoneDays.getInstance( utc ), custom );
+		Assert.assertSame( custom, ZoneDays.getInstance( new SimpleTimeZone( 7200000, "UTC" ) ) );
+		Assert.assertSame( ZoneDays.getInstance( utc ), ZoneDays.getInstance( TimeZone.getTimeZone( "UTC" ) ) );
+		Assert.assertEquals( 7200000, custom.getDay( 0 ).getOffset( 0 ) );
+		Assert.assertEquals( 0, ZoneDays.getInstance( utc ).getDay( 0 ).getOffset( 0 ) );
+		CompiledSchedule customSchedule = CrontabSchedule.crontabFactory( "0 9 * * *" ).getCompiledSchedule();
+		Assert.assertEquals( customSchedule.withTimeZone( new SimpleTimeZone( 7200000, "UTC" ) ), customSchedule.withTimeZone( new SimpleTimeZone( 7200000, "UTC" ) ) );
+
+		// Civil date arithmetic against the Calendar, 1888 to 2134.
+		ZoneDays zoneDays = ZoneDays.getInstance( utc );
+		Calendar cal = new GregorianCalendar( utc );
+		for (long epochDay=-30000; epochDay<60000; ++epochDay) {
+			cal.setTimeInMillis( epochDay * ZoneDays.DAY_MILLIS );
+			ZoneDays.Day day = zoneDays.getDay( epochDay * ZoneDays.DAY_MILLIS + 12345 );
+			Assert.assertEquals( epochDay, day.getEpochDay() );
+			Assert.assertEquals( epochDay * ZoneDays.DAY_MILLIS, day.getStart() );
+			Assert.assertTrue( day.isPlain() );
+			Assert.assertEquals( cal.get( Calendar.YEAR ), day.getYear() );
+			Assert.assertEquals( cal.get( Calendar.MONTH ) - Calendar.JANUARY, day.getMonthIndex() );
+			Assert.assertEquals( cal.get( Calendar.DATE ) - 1, day.getDateIndex() );
+			Assert.assertEquals( cal.get( Calendar.DAY_OF_WEEK ) - Calendar.SUNDAY, day.getWeekdayIndex() );
+			Assert.assertEquals( cal.getActualMaximum( Calendar.DAY_OF_MONTH ), day.getMonthLength() );
+			Assert.assertEquals( epochDay, ZoneDays.toEpochDay( day.getYear(), day.getMonthIndex(), day.getDateIndex() ) );
+		}
+		// Days of blocks dropped from the cache are worked out again.
+		Assert.assertEquals( 1887, zoneDays.getDayByEpochDay( -30000 ).getYear() );
+		Assert.assertEquals( -30000 * ZoneDays.DAY_MILLIS, zoneDays.getDayByEpochDay( -30000 ).getStart() );
+
+		// Fire times in a fixed offset zone are the UTC ones shifted.
+		String[] crontabs = { "0 0 29 2 *", "*/10 9-17 * * 1-5", "45 23 31 * *", "15 0 1 1,7 0" };
+		long from = utcTime( 2095, Calendar.JANUARY, 1, 0, 0 );
+		long shift = 5 * 60 * 60 * 1000L + 45 * 60 * 1000L;
+		for (int i=0; i<crontabs.length; ++i) {
+			CompiledSchedule compiled = CrontabSchedule.crontabFactory( crontabs[ i ] ).getCompiledSchedule();
+			long[] utcTimes = compiled.withTimeZone( utc ).getScheduleTimes( from );
+			long[] nepalTimes = compiled.withTimeZone( nepal ).getScheduleTimes( from - shift );
+			Assert.assertEquals( utcTimes.length, nepalTimes.length );
+			long l = from;
+			long m = from - shift;
+			for (int j=0; j<200; ++j) {
+				l = compiled.withTimeZone( utc ).nextFireTime( l );
+				m = compiled.withTimeZone( nepal ).nextFireTime( m );
+				Assert.assertEquals( crontabs[ i ], l - shift, m );
+			}
+		}
+	}
+
+	private static long utcTime(int year, int month, int date, int hour, int minute) {
+		Calendar cal = new GregorianCalendar( TimeZone.getTimeZone( "UTC" ) );
+		cal.clear();
+		cal.set( year, month, date, hour, minute );
+		return cal.getTimeInMillis();
+	}
+
+	private static long time(int year, int month, int date, int hour, int minute) {
+		return new GregorianCalendar( year, month, date, hour, minute ).getTime().getTime();
+	}
+
 }
@@ -0,0 +1,185 @@
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleAdmission extends TestCase {
+
+	public void testAdmit() throws InterruptedException {
+		final ArrayList started = new ArrayList();
+		final CountDownLatch latch = new CountDownLatch( 2 );
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				synchronized ( started ) {
+					started.add( schedule );
+				}
+				latch.countDown();
+			}
+		};
+		final ArrayList shed = new ArrayList();
+		ClockAdmission admission = new ClockAdmission( listener, 1, 1.0 );
+		admission.setShedListener( new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				shed.add( schedule );
+			}
+		} );
+
+		Schedule low = CrontabSchedule.crontabFactory("0 * * * *");
+		Schedule normal = CrontabSchedule.crontabFactory("0 * * * *");
+		Schedule high = CrontabSchedule.crontabFactory("0 * * * *");
+		admission.setPriority( low, ScheduleAdmission.PRIORITY_LOW );
+		admission.setPriority( high, ScheduleAdmission.PRIORITY_HIGH );
+		Assert.assertEquals( ScheduleAdmission.PRIORITY_NORMAL, admission.getPriority( normal ) );
+
+		// One start per second, one queue slot per priority.
+		Assert.assertEquals( ScheduleAdmission.STARTED, admission.admit( normal, 0 ) );
+		Assert.assertEquals( ScheduleAdmission.DEFERRED, admission.admit( low, 0 ) );
+		Assert.assertEquals( ScheduleAdmission.DEFERRED, admission.admit( normal, 0 ) );
+		Assert.assertEquals( ScheduleAdmission.SHED, admission.admit( normal, 0 ) );
+		Assert.assertEquals( ScheduleAdmission.DEFERRED, admission.admit( high, 0 ) );
+		Assert.assertEquals( 3, admission.getQueued() );
+		Assert.assertEquals( 1, shed.size() );
+		Assert.assertEquals( 1, started.size() );
+
+		// One second later one deferred schedule is passed on, highest priority first.
+		admission.now += 1000000000L;
+		admission.start();
+		Thread pump = admission.thread;
+		Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+		admission.stop();
+		pump.join( 10000 );
+		Assert.assertFalse( pump.isAlive() );
+		synchronized ( started ) {
+			Assert.assertEquals( 2, started.size() );
+			Assert.assertSame( high, started.get( 1 ) );
+		}
+		Assert.assertEquals( 2, admission.getQueued() );
+		Assert.assertEquals( 1, admission.getStartedCount() );
+		Assert.assertEquals( 3, admission.getDeferredCount() );
+		Assert.assertEquals( 1, admission.getShedCount() );
+	}
+
+	public void testFractionalTokens() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch( 4 );
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				latch.countDown();
+			}
+		};
+		ClockAdmission admission = new ClockAdmission( listener, 4, 3.0 );
+		Schedule schedule = CrontabSchedule.crontabFactory("0 * * * *");
+		for (int i=0; i<3; ++i) {
+			Assert.assertEquals( ScheduleAdmission.STARTED, admission.admit( schedule, 0 ) );
+		}
+		Assert.assertEquals( ScheduleAdmission.DEFERRED, admission.admit( schedule, 0 ) );
+
+		// A third of a nanosecond short of a token, the wait truncates to 0.
+		admission.now += 333333333L;
+		admission.calls = new CountDownLatch( 2 );
+		admission.start();
+		Thread pump = admission.thread;
+		// The pump has read the clock and is waiting, or about to.
+		Assert.assertTrue( admission.calls.await( 10, TimeUnit.SECONDS ) );
+		Assert.assertEquals( 1, admission.getQueued() );
+		admission.now += 1L;
+		Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+		Assert.assertEquals( 0, admission.getQueued() );
+		admission.stop();
+		pump.join( 10000 );
+		Assert.assertFalse( pump.isAlive() );
+	}
+
+	public void testCapacity() {
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+			}
+		};
+		int[] capacities = { 0, -1 };
+		for (int i=0; i<capacities.length; ++i) {
+			try {
+				new ScheduleAdmission( listener, capacities[ i ], 1.0 );
+				Assert.fail( "Exception expected" );
+			}
+			catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
+	public void testRestart() throws InterruptedException {
+		final Thread main = Thread.currentThread();
+		final CountDownLatch entered = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch passed = new CountDownLatch( 2 );
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				if ( Thread.currentThread() == main ) {
+					return;
+				}
+				entered.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+				}
+				passed.countDown();
+			}
+		};
+		ClockAdmission admission = new ClockAdmission( listener, 4, 1.0 );
+		Schedule schedule = CrontabSchedule.crontabFactory("0 * * * *");
+		Assert.assertEquals( ScheduleAdmission.STARTED, admission.admit( schedule, 0 ) );
+		for (int i=0; i<3; ++i) {
+			Assert.assertEquals( ScheduleAdmission.DEFERRED, admission.admit( schedule, 0 ) );
+		}
+
+		// Stopped and started again while the first pump passes on a schedule.
+		admission.now += 1000000000L;
+		admission.start();
+		Thread first = admission.thread;
+		Assert.assertTrue( entered.await( 10, TimeUnit.SECONDS ) );
+		admission.stop();
+		admission.start();
+		Thread second = admission.thread;
+		Assert.assertNotSame( first, second );
+		release.countDown();
+
+		// The first pump returns, only the second one goes on.
+		first.join( 10000 );
+		Assert.assertFalse( first.isAlive() );
+		Assert.assertTrue( second.isAlive() );
+		Assert.assertEquals( 2, admission.getQueued() );
+		admission.now += 1000000000L;
+		Assert.assertTrue( passed.await( 10, TimeUnit.SECONDS ) );
+		admission.stop();
+		second.join( 10000 );
+		Assert.assertFalse( second.isAlive() );
+		Assert.assertEquals( 1, admission.getQueued() );
+	}
+
+	/**
+	 * Admission stage on a clock set by the test.
+	 */
+	static class ClockAdmission extends ScheduleAdmission {
+
+		volatile long now;
+
+		volatile CountDownLatch calls;
+
+		ClockAdmission(ScheduleListener downstream, int capacity, double maxStartRate) {
+			super( downstream, capacity, maxStartRate );
+		}
+
+		protected long nanoTime() {
+			CountDownLatch c = calls;
+			if ( (c != null) && (Thread.currentThread() == thread) ) {
+				c.countDown();
+			}
+			return now;
+		}
+
+	}
+
+}
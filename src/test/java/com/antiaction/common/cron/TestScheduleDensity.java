@@ -0,0 +1,149 @@
+package com.antiaction.common.cron;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleDensity extends TestCase {
+
+	public void testDensity() {
+		String[] crontabs = {
+			"0 * * * *", "*/15 9-17 * * mon-fri", "30 2 1,15 * *", "0 0 * * 0",
+			"H H * * *", "5 4 * * sun", "0 12 * * 3", "* 3 * * *"
+		};
+		ScheduleGroup group = new ScheduleGroup();
+		for (int i=0; i<crontabs.length * 50; ++i) {
+			group.addEvent( CrontabSchedule.crontabFactory( crontabs[ i % crontabs.length ], "job-" + i ) );
+		}
+		long day = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 1 ).getTime().getTime();
+		ScheduleDensity density = new ScheduleDensity( day, 7 );
+		density.add( group );
+		Assert.assertEquals( 400, density.getScheduleCount() );
+
+		int[] counts = density.getCounts();
+		Assert.assertEquals( ScheduleDensity.MINUTES_PER_WEEK, counts.length );
+		Calendar cal = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 1 );
+		int max = 0;
+		for (int d=0; d<7; ++d) {
+			group.buildDayIndex( cal.getTime().getTime() );
+			for (int mod=0; mod<CompiledSchedule.MINUTES_PER_DAY; ++mod) {
+				Assert.assertEquals( group.getDueCount( mod ), counts[ d * CompiledSchedule.MINUTES_PER_DAY + mod ] );
+				max = Math.max( max, counts[ d * CompiledSchedule.MINUTES_PER_DAY + mod ] );
+			}
+			cal.add( Calendar.DATE, 1 );
+		}
+		Assert.assertEquals( max, density.getMax() );
+
+		int[] hotspots = density.getHotspots( 3 );
+		Assert.assertEquals( 3, hotspots.length );
+		Assert.assertEquals( max, counts[ hotspots[ 0 ] ] );
+		Assert.assertTrue( counts[ hotspots[ 0 ] ] >= counts[ hotspots[ 1 ] ] );
+		Assert.assertTrue( counts[ hotspots[ 1 ] ] >= counts[ hotspots[ 2 ] ] );
+
+		// Moving the hourly jobs off the top of the hour.
+		ScheduleDensity spread = new ScheduleDensity( day, 7 );
+		for (int i=0; i<crontabs.length * 50; ++i) {
+			String crontab = crontabs[ i % crontabs.length ];
+			if ( "0 * * * *".equals( crontab ) ) {
+				crontab = "H * * * *";
+			}
+			spread.add( CrontabSchedule.crontabFactory( crontab, "job-" + i ) );
+		}
+		int[] delta = spread.compare( density );
+		Assert.assertTrue( delta[ 60 ] < -40 );
+		Assert.assertTrue( spread.getMax() < density.getMax() );
+
+		// The days of another time zone, schedules in a third are rejected.
+		TimeZone tokyo = TimeZone.getTimeZone( "Asia/Tokyo" );
+		ScheduleDensity local = new ScheduleDensity( day, 1, tokyo );
+		Assert.assertEquals( "Asia/Tokyo", local.getTimeZone().getID() );
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory( "30 2 * * *" );
+		schedule.setTimeZone( tokyo );
+		local.add( schedule );
+		Assert.assertEquals( 1, local.getCounts()[ 150 ] );
+		Assert.assertEquals( 1, local.getMax() );
+		try {
+			local.add( schedule.getCompiledSchedule().withTimeZone( TimeZone.getTimeZone( "Pacific/Chatham" ) ) );
+			Assert.fail( "Exception expected" );
+		}
+		catch (IllegalArgumentException e) {
+		}
+		Assert.assertEquals( 1, local.getScheduleCount() );
+	}
+
+	public void testDaylightSaving() {
+		TimeZone zone = TimeZone.getTimeZone( "America/New_York" );
+		Calendar cal = new GregorianCalendar( zone );
+		cal.clear();
+		// Saturday before the change, the day of the change and Monday after.
+		cal.set( 2013, Calendar.MARCH, 9 );
+		ScheduleDensity density = new ScheduleDensity( cal.getTime().getTime(), 3, zone );
+		String[] crontabs = { "* 2 * * *", "30 2 * * *", "0 * * * *" };
+		for (int i=0; i<crontabs.length; ++i) {
+			ScheduleAbstract schedule = CrontabSchedule.crontabFactory( crontabs[ i ] );
+			schedule.setTimeZone( zone );
+			density.add( schedule );
+			// A set is counted from its day masks.
+			density.add( new ScheduleSet( ScheduleSet.UNION, new Schedule[] { schedule } ) );
+		}
+		int[] counts = density.getCounts();
+		int base;
+		for (int d=0; d<3; ++d) {
+			base = d * CompiledSchedule.MINUTES_PER_DAY;
+			if ( d == 1 ) {
+				// The skipped hour fires once, at 03:00.
+				for (int mod=120; mod<180; ++mod) {
+					Assert.assertEquals( 0, counts[ base + mod ] );
+				}
+				Assert.assertEquals( 6, counts[ base + 180 ] );
+			}
+			else {
+				Assert.assertEquals( 4, counts[ base + 120 ] );
+				Assert.assertEquals( 4, counts[ base + 150 ] );
+				Assert.assertEquals( 2, counts[ base + 151 ] );
+				Assert.assertEquals( 2, counts[ base + 180 ] );
+			}
+			Assert.assertEquals( 2, counts[ base + 60 ] );
+		}
+
+		// The repeated hour fires once, at its first occurrence.
+		cal.set( 2013, Calendar.NOVEMBER, 3 );
+		density = new ScheduleDensity( cal.getTime().getTime(), 1, zone );
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory( "30 1 * * *" );
+		schedule.setTimeZone( zone );
+		density.add( schedule );
+		counts = density.getCounts();
+		Assert.assertEquals( 1, counts[ 90 ] );
+		Assert.assertEquals( 1, density.getMax() );
+	}
+
+	public void testCompare() {
+		long day = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 1 ).getTime().getTime();
+		ScheduleDensity density = new ScheduleDensity( day, 7 );
+		density.add( CrontabSchedule.crontabFactory( "0 * * * *" ) );
+		ScheduleDensity same = new ScheduleDensity( day + 3600000L, 7 );
+		same.add( CrontabSchedule.crontabFactory( "30 * * * *" ) );
+		int[] delta = density.compare( same );
+		Assert.assertEquals( 1, delta[ 0 ] );
+		Assert.assertEquals( -1, delta[ 30 ] );
+
+		// Periods of other days, another length or another time zone.
+		ScheduleDensity[] others = {
+			new ScheduleDensity( day + ZoneDays.DAY_MILLIS, 7 ),
+			new ScheduleDensity( day, 6 ),
+			new ScheduleDensity( day, 7, TimeZone.getTimeZone( "Asia/Tokyo" ) )
+		};
+		for (int i=0; i<others.length; ++i) {
+			try {
+				density.compare( others[ i ] );
+				Assert.fail( "Exception expected" );
+			}
+			catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleDispatcher extends TestCase {
+
+	public void testAdvance() {
+		final ArrayList fired = new ArrayList();
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				fired.add( new Object[] { schedule, new Long( time ) } );
+			}
+		};
+		long start = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3, 12, 34 ).getTime().getTime();
+		ScheduleDispatcher dispatcher = new ScheduleDispatcher( listener, start );
+
+		ScheduleAbstract[] schedules = {
+			CrontabSchedule.crontabFactory("*/10 * * * *"),
+			CrontabSchedule.crontabFactory("0 * * * *"),
+			CrontabSchedule.crontabFactory("0 0 * * *"),
+			CrontabSchedule.crontabFactory("30 4 1 1 *"),
+			CrontabSchedule.crontabFactory("0 12 29 2 *"),
+			CrontabSchedule.crontabFactory("0 0 31 2 *")
+		};
+		ScheduleDispatcher.Entry[] entries = new ScheduleDispatcher.Entry[ schedules.length ];
+		for (int i=0; i<schedules.length; ++i) {
+			entries[ i ] = dispatcher.register( schedules[ i ] );
+		}
+		Assert.assertNull( entries[ 5 ] );
+		Assert.assertEquals( 5, dispatcher.size() );
+
+		long[] expected = new long[ 5 ];
+		for (int i=0; i<expected.length; ++i) {
+			expected[ i ] = schedules[ i ].nextFireTime( start );
+		}
+
+		// Step through three years an hour at a time, comparing with nextFireTime().
+		long now = start;
+		long end = new GregorianCalendar( 2016, Calendar.MARCH, 1 ).getTime().getTime();
+		int[] counts = new int[ expected.length ];
+		while ( now < end ) {
+			now += 3600000L;
+			fired.clear();
+			dispatcher.advance( now );
+			for (int i=0; i<fired.size(); ++i) {
+				Object[] f = (Object[])fired.get( i );
+				int idx = 0;
+				while ( schedules[ idx ] != f[ 0 ] ) {
+					++idx;
+				}
+				long time = ((Long)f[ 1 ]).longValue();
+				Assert.assertEquals( expected[ idx ], time );
+				Assert.assertTrue( time <= now );
+				expected[ idx ] = schedules[ idx ].nextFireTime( time );
+				++counts[ idx ];
+			}
+			for (int i=0; i<expected.length; ++i) {
+				Assert.assertTrue( expected[ i ] > now );
+			}
+		}
+		Assert.assertEquals( 3, counts[ 3 ] );
+		Assert.assertEquals( 1, counts[ 4 ] );
+
+		Assert.assertTrue( dispatcher.cancel( entries[ 0 ] ) );
+		Assert.assertFalse( dispatcher.cancel( entries[ 0 ] ) );
+		Assert.assertEquals( 4, dispatcher.size() );
+		fired.clear();
+		dispatcher.advance( now + 3600000L );
+		Assert.assertEquals( 1, fired.size() );
+	}
+
+	public void testMisfire() {
+		final ArrayList fired = new ArrayList();
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				fired.add( new Long( time ) );
+			}
+		};
+		long start = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3, 12, 0 ).getTime().getTime();
+		ScheduleAbstract schedule = CrontabSchedule.crontabFactory("*/5 * * * *");
+
+		// On time.
+		ScheduleDispatcher dispatcher = new ScheduleDispatcher( listener, start );
+		dispatcher.setMisfirePolicy( ScheduleDispatcher.MISFIRE_SKIP );
+		dispatcher.register( schedule );
+		for (int i=1; i<=10; ++i) {
+			dispatcher.advance( start + i * 60000L );
+		}
+		Assert.assertEquals( 2, fired.size() );
+		Assert.assertEquals( 0, dispatcher.getMisfireCount() );
+
+		// Skip, a 30 minute pause drops 5 fire times.
+		fired.clear();
+		dispatcher.advance( start + 40 * 60000L );
+		Assert.assertEquals( 1, fired.size() );
+		Assert.assertEquals( start + 40 * 60000L, ((Long)fired.get( 0 )).longValue() );
+		Assert.assertEquals( 5, dispatcher.getMisfireCount() );
+
+		// Coalesce, fires once with the latest missed time.
+		fired.clear();
+		dispatcher = new ScheduleDispatcher( listener, start );
+		dispatcher.setMisfirePolicy( ScheduleDispatcher.MISFIRE_COALESCE );
+		dispatcher.register( schedule );
+		dispatcher.advance( start + 32 * 60000L );
+		Assert.assertEquals( 1, fired.size() );
+		Assert.assertEquals( start + 30 * 60000L, ((Long)fired.get( 0 )).longValue() );
+		Assert.assertEquals( 6, dispatcher.getMisfireCount() );
+		fired.clear();
+		dispatcher.advance( start + 35 * 60000L );
+		Assert.assertEquals( 1, fired.size() );
+		Assert.assertEquals( start + 35 * 60000L, ((Long)fired.get( 0 )).longValue() );
+
+		// Fire all, at most 2 misfires per advance.
+		fired.clear();
+		dispatcher = new ScheduleDispatcher( listener, start );
+		dispatcher.setMisfireRate( 2 );
+		dispatcher.register( schedule );
+		dispatcher.advance( start + 32 * 60000L );
+		Assert.assertEquals( 2, fired.size() );
+		Assert.assertEquals( start + 5 * 60000L, ((Long)fired.get( 0 )).longValue() );
+		Assert.assertEquals( start + 10 * 60000L, ((Long)fired.get( 1 )).longValue() );
+		fired.clear();
+		dispatcher.advance( start + 33 * 60000L );
+		Assert.assertEquals( 2, fired.size() );
+		Assert.assertEquals( start + 15 * 60000L, ((Long)fired.get( 0 )).longValue() );
+		Assert.assertEquals( start + 20 * 60000L, ((Long)fired.get( 1 )).longValue() );
+	}
+
+	public void testMisfireCatchUp() {
+		final ArrayList fired = new ArrayList();
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				fired.add( new Long( time ) );
+			}
+		};
+		long start = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3, 12, 0 ).getTime().getTime();
+		ScheduleDispatcher dispatcher = new ScheduleDispatcher( listener, start );
+		dispatcher.setMisfireRate( 2 );
+		dispatcher.register( CrontabSchedule.crontabFactory("* * * * *") );
+
+		// A 30 minute pause, then a minute at a time. Two fire times per
+		// advance gain a minute per advance on the backlog.
+		dispatcher.advance( start + 30 * 60000L );
+		for (int i=31; i<=80; ++i) {
+			dispatcher.advance( start + i * 60000L );
+		}
+		Assert.assertEquals( 80, fired.size() );
+		for (int i=0; i<fired.size(); ++i) {
+			Assert.assertEquals( start + (i + 1) * 60000L, ((Long)fired.get( i )).longValue() );
+		}
+		long misfires = dispatcher.getMisfireCount();
+
+		// Caught up, the following fire times are on time.
+		for (int i=81; i<=200; ++i) {
+			fired.clear();
+			dispatcher.advance( start + i * 60000L );
+			Assert.assertEquals( 1, fired.size() );
+			Assert.assertEquals( start + i * 60000L, ((Long)fired.get( 0 )).longValue() );
+		}
+		Assert.assertEquals( misfires, dispatcher.getMisfireCount() );
+	}
+
+	public void testCancelFromListener() {
+		final ArrayList fired = new ArrayList();
+		final ScheduleDispatcher[] dispatcher = new ScheduleDispatcher[ 1 ];
+		final ScheduleDispatcher.Entry[] entries = new ScheduleDispatcher.Entry[ 2 ];
+		ScheduleListener listener = new ScheduleListener() {
+			public void scheduleDue(Schedule schedule, long time) {
+				fired.add( schedule );
+				// Cancel the sibling due in the same minute.
+				for (int i=0; i<entries.length; ++i) {
+					if ( entries[ i ].getSchedule() != schedule ) {
+						dispatcher[ 0 ].cancel( entries[ i ] );
+					}
+				}
+			}
+		};
+		long start = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3, 12, 0 ).getTime().getTime();
+		int[] policies = { ScheduleDispatcher.MISFIRE_FIRE_ALL, ScheduleDispatcher.MISFIRE_COALESCE };
+		for (int p=0; p<policies.length; ++p) {
+			dispatcher[ 0 ] = new ScheduleDispatcher( listener, start );
+			dispatcher[ 0 ].setMisfirePolicy( policies[ p ] );
+			for (int i=0; i<entries.length; ++i) {
+				entries[ i ] = dispatcher[ 0 ].register( CrontabSchedule.crontabFactory("*/5 * * * *") );
+			}
+			fired.clear();
+			// On time, then as misfires.
+			dispatcher[ 0 ].advance( start + (p == 0 ? 5 : 45) * 60000L );
+			Assert.assertEquals( 1, dispatcher[ 0 ].size() );
+			Schedule survivor = (Schedule)fired.get( 0 );
+			for (int i=0; i<fired.size(); ++i) {
+				Assert.assertSame( survivor, fired.get( i ) );
+			}
+			fired.clear();
+			dispatcher[ 0 ].advance( start + 50 * 60000L );
+			for (int i=0; i<fired.size(); ++i) {
+				Assert.assertSame( survivor, fired.get( i ) );
+			}
+			Assert.assertTrue( fired.size() > 0 );
+		}
+	}
+
+}
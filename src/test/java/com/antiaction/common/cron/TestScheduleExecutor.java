@@ -0,0 +1,213 @@
+package com.antiaction.common.cron;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleExecutor extends TestCase {
+
+	public void testOverlap() throws InterruptedException {
+		Schedule schedule = CrontabSchedule.crontabFactory("* * * * *");
+
+		// Allow, both runs go.
+		ScheduleExecutor executor = new ScheduleExecutor( 4 );
+		BlockingJob job = new BlockingJob( 2 );
+		executor.register( schedule, job, ScheduleExecutor.OVERLAP_ALLOW );
+		executor.scheduleDue( schedule, 0 );
+		executor.scheduleDue( schedule, 0 );
+		Assert.assertTrue( job.entered.await( 10, TimeUnit.SECONDS ) );
+		Assert.assertEquals( 2, executor.getRunning() );
+		job.release.countDown();
+		finish( executor );
+		Assert.assertEquals( 2, executor.getStarted() );
+		Assert.assertEquals( 0, executor.getSkipped() );
+		Assert.assertEquals( 2, job.runs.get() );
+
+		// Skip, the second run is dropped while the first is running.
+		executor = new ScheduleExecutor( 4 );
+		job = new BlockingJob( 1 );
+		executor.register( schedule, job, ScheduleExecutor.OVERLAP_SKIP );
+		executor.scheduleDue( schedule, 0 );
+		Assert.assertTrue( job.entered.await( 10, TimeUnit.SECONDS ) );
+		executor.scheduleDue( schedule, 0 );
+		Assert.assertEquals( 1, executor.getSkipped() );
+		job.release.countDown();
+		finish( executor );
+		Assert.assertEquals( 1, executor.getStarted() );
+		Assert.assertEquals( 1, job.runs.get() );
+
+		// Queue one, of two due while running one runs after and one is skipped.
+		executor = new ScheduleExecutor( 4 );
+		job = new BlockingJob( 2 );
+		executor.register( schedule, job, ScheduleExecutor.OVERLAP_QUEUE_ONE );
+		executor.scheduleDue( schedule, 0 );
+		executor.scheduleDue( schedule, 0 );
+		executor.scheduleDue( schedule, 0 );
+		Assert.assertEquals( 1, executor.getSkipped() );
+		job.release.countDown();
+		Assert.assertTrue( job.entered.await( 10, TimeUnit.SECONDS ) );
+		finish( executor );
+		Assert.assertEquals( 2, executor.getStarted() );
+		Assert.assertEquals( 2, job.runs.get() );
+		Assert.assertEquals( 1, job.maxConcurrent.get() );
+
+		// Unregistered schedules are ignored.
+		executor = new ScheduleExecutor( 4 );
+		executor.register( schedule, job, ScheduleExecutor.OVERLAP_ALLOW );
+		Assert.assertTrue( executor.unregister( schedule ) );
+		Assert.assertFalse( executor.unregister( schedule ) );
+		executor.scheduleDue( schedule, 0 );
+		finish( executor );
+		Assert.assertEquals( 0, executor.getStarted() );
+	}
+
+	public void testConcurrencyLimit() throws InterruptedException {
+		ScheduleExecutor executor = new ScheduleExecutor( 2 );
+		BlockingJob job = new BlockingJob( 2 );
+		Schedule[] schedules = new Schedule[ 6 ];
+		for (int i=0; i<schedules.length; ++i) {
+			schedules[ i ] = CrontabSchedule.crontabFactory("* * * * *");
+			executor.register( schedules[ i ], job, ScheduleExecutor.OVERLAP_ALLOW );
+			executor.scheduleDue( schedules[ i ], 0 );
+		}
+		Assert.assertTrue( job.entered.await( 10, TimeUnit.SECONDS ) );
+		// Runs waiting for a permit are not counted as started.
+		Assert.assertEquals( 2, executor.getStarted() );
+		Assert.assertEquals( 2, executor.getRunning() );
+		job.release.countDown();
+		finish( executor );
+		Assert.assertEquals( 6, executor.getStarted() );
+		Assert.assertEquals( 6, job.runs.get() );
+		Assert.assertEquals( 2, job.maxConcurrent.get() );
+		Assert.assertEquals( 0, executor.getRunning() );
+	}
+
+	public void testInterrupted() throws InterruptedException {
+		final ScheduleExecutor executor = new ScheduleExecutor( 1, false );
+		BlockingJob job = new BlockingJob( 1 );
+		final ScheduleExecutor.Job entry = new ScheduleExecutor.Job( job, ScheduleExecutor.OVERLAP_ALLOW );
+		entry.running = 1;
+		// Every permit taken, the run waits for one until interrupted.
+		executor.permits.acquire();
+		Thread thread = new Thread() {
+			public void run() {
+				executor.execute( entry );
+			}
+		};
+		thread.start();
+		while ( !executor.permits.hasQueuedThreads() ) {
+			Thread.yield();
+		}
+		thread.interrupt();
+		thread.join( 10000 );
+		Assert.assertFalse( thread.isAlive() );
+		Assert.assertEquals( 0, executor.getStarted() );
+		Assert.assertEquals( 1, executor.getSkipped() );
+		Assert.assertEquals( 0, entry.running );
+		Assert.assertEquals( 0, job.runs.get() );
+		executor.permits.release();
+		finish( executor );
+	}
+
+	public void testFailed() throws InterruptedException {
+		ScheduleExecutor executor = new ScheduleExecutor( 2 );
+		Schedule schedule = CrontabSchedule.crontabFactory("* * * * *");
+		executor.register( schedule, new Runnable() {
+			public void run() {
+				throw new IllegalStateException();
+			}
+		}, ScheduleExecutor.OVERLAP_ALLOW );
+		executor.scheduleDue( schedule, 0 );
+		finish( executor );
+		Assert.assertEquals( 1, executor.getStarted() );
+		Assert.assertEquals( 1, executor.getFailed() );
+
+		// Crontab commands, a non-zero exit status fails.
+		executor = new ScheduleExecutor( 2 );
+		CrontabSchedule ok = (CrontabSchedule)CrontabSchedule.crontabFactory("* * * * * exit 0");
+		CrontabSchedule fails = (CrontabSchedule)CrontabSchedule.crontabFactory("* * * * * exit 3");
+		executor.register( ok, ScheduleExecutor.OVERLAP_ALLOW );
+		executor.register( fails, ScheduleExecutor.OVERLAP_ALLOW );
+		executor.scheduleDue( ok, 0 );
+		executor.scheduleDue( fails, 0 );
+		finish( executor );
+		Assert.assertEquals( 2, executor.getStarted() );
+		Assert.assertEquals( 1, executor.getFailed() );
+		try {
+			new ScheduleExecutor.CommandJob( "exit 3" ).run();
+			Assert.fail( "Exception expected" );
+		}
+		catch (RuntimeException e) {
+			Assert.assertTrue( e.getMessage().indexOf( "status 3" ) != -1 );
+		}
+	}
+
+	public void testThreads() throws Exception {
+		boolean available;
+		try {
+			java.util.concurrent.Executors.class.getMethod( "newVirtualThreadPerTaskExecutor", new Class[ 0 ] );
+			available = true;
+		}
+		catch (NoSuchMethodException e) {
+			available = false;
+		}
+		ScheduleExecutor executor = new ScheduleExecutor( 3 );
+		Assert.assertEquals( available, executor.isVirtual() );
+		Assert.assertEquals( !available, executor.executor instanceof ThreadPoolExecutor );
+		executor.shutdown();
+
+		// Platform thread pool the size of the limit when asked for.
+		executor = new ScheduleExecutor( 3, false );
+		Assert.assertFalse( executor.isVirtual() );
+		Assert.assertTrue( executor.executor instanceof ThreadPoolExecutor );
+		Assert.assertEquals( 3, ((ThreadPoolExecutor)executor.executor).getMaximumPoolSize() );
+		executor.shutdown();
+	}
+
+	private static void finish(ScheduleExecutor executor) throws InterruptedException {
+		executor.shutdown();
+		Assert.assertTrue( executor.awaitTermination( 10000 ) );
+	}
+
+	/**
+	 * Job waiting to be released, tracking its runs and how many run at
+	 * the same time.
+	 */
+	static class BlockingJob implements Runnable {
+
+		final CountDownLatch entered;
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		BlockingJob(int count) {
+			entered = new CountDownLatch( count );
+		}
+
+		public void run() {
+			int n = running.incrementAndGet();
+			int max = maxConcurrent.get();
+			while ( n > max && !maxConcurrent.compareAndSet( max, n ) ) {
+				max = maxConcurrent.get();
+			}
+			runs.incrementAndGet();
+			entered.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				running.decrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,289 @@
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleGroup extends TestCase {
+
+	public void testGetEvents() {
+		ScheduleGroup group = new ScheduleGroup();
+		Calendar cal = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3 );
+		Assert.assertEquals( 0, group.getEvents( cal ).size() );
+
+		group.addEvent( CrontabSchedule.crontabFactory("0 */6 * * *") );
+		group.addEvent( CrontabSchedule.crontabFactory("0 */4 * * *") );
+		group.addEvent( CrontabSchedule.crontabFactory("30 5 * * *") );
+		group.addEvent( CrontabSchedule.crontabFactory("0 0 1 1 *") );
+
+		long[] times = group.getScheduleTimes( cal.getTime().getTime() );
+		int[] expected = { 0, 4*60, 5*60 + 30, 6*60, 8*60, 12*60, 16*60, 18*60, 20*60 };
+		long day = cal.getTime().getTime();
+		Assert.assertEquals( expected.length, times.length );
+		for (int i=0; i<expected.length; ++i) {
+			Assert.assertEquals( day + expected[ i ] * 60000L, times[ i ] );
+		}
+
+		ArrayList events = group.getEvents( cal );
+		Assert.assertEquals( expected.length, events.size() );
+		Assert.assertEquals( new Long( times[ 2 ] ), events.get( 2 ) );
+
+		ScheduleGroup outer = new ScheduleGroup();
+		outer.addEvent( group );
+		outer.addEvent( CrontabSchedule.crontabFactory("0 12 * * *") );
+		Assert.assertEquals( expected.length, outer.getScheduleTimes( day ).length );
+	}
+
+	public void testDayIndex() {
+		long day = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 3 ).getTime().getTime();
+		ScheduleGroup group = new ScheduleGroup();
+		Assert.assertEquals( 0, group.getDueCount( 0 ) );
+
+		ScheduleAbstract hourly = CrontabSchedule.crontabFactory("0 * * * *");
+		ScheduleAbstract daily = CrontabSchedule.crontabFactory("0 0 * * *");
+		ScheduleAbstract never = CrontabSchedule.crontabFactory("0 0 1 1 *");
+		group.addEvent( hourly );
+		group.addEvent( daily );
+		group.addEvent( never );
+		group.buildDayIndex( day );
+
+		Schedule[] due = group.getDue( 0 );
+		Assert.assertEquals( 2, due.length );
+		Assert.assertSame( hourly, due[ 0 ] );
+		Assert.assertSame( daily, due[ 1 ] );
+		Assert.assertEquals( 1, group.getDueCount( 60 ) );
+		Assert.assertEquals( 0, group.getDueCount( 61 ) );
+
+		ScheduleAbstract late = CrontabSchedule.crontabFactory("1 1 * * *");
+		group.addEvent( late );
+		due = group.getDue( 61 );
+		Assert.assertEquals( 1, due.length );
+		Assert.assertSame( late, due[ 0 ] );
+
+		Assert.assertTrue( group.removeEvent( hourly ) );
+		Assert.assertFalse( group.removeEvent( hourly ) );
+		Assert.assertEquals( 1, group.getDueCount( 0 ) );
+		Assert.assertEquals( 0, group.getDueCount( 60 ) );
+		Assert.assertEquals( 1, group.getDueCount( 61 ) );
+
+		// Added and removed in place, a schedule added twice is removed once.
+		int[] start = group.indexStart;
+		group.addEvent( late );
+		Assert.assertEquals( 2, group.getDueCount( 61 ) );
+		Assert.assertTrue( group.removeEvent( late ) );
+		Assert.assertTrue( group.removeEvent( daily ) );
+		due = group.getDue( 61 );
+		Assert.assertEquals( 1, due.length );
+		Assert.assertSame( late, due[ 0 ] );
+		Assert.assertEquals( 0, group.getDueCount( 0 ) );
+		Assert.assertSame( start, group.indexStart );
+
+		// Rebuilt once the changes outnumber the schedules indexed.
+		for (int i=0; i<100; ++i) {
+			group.addEvent( CrontabSchedule.crontabFactory( (i % 60) + " 2 * * *" ) );
+		}
+		Assert.assertEquals( 1, group.getDueCount( 61 ) );
+		Assert.assertEquals( 2, group.getDueCount( 120 ) );
+		Assert.assertEquals( 1, group.getDueCount( 179 ) );
+		Assert.assertNotSame( start, group.indexStart );
+		Assert.assertTrue( group.removeEvent( late ) );
+		Assert.assertEquals( 0, group.getDueCount( 61 ) );
+	}
+
+	public void testBuckets() {
+		String[] crontabs = {
+			"0 * * * *", "*/15 9-17 * * mon-fri", "30 2 1,15 * *", "0 0 * * 0",
+			"H H * * *", "* 2 * * *", "0 12 1 * 3", "0 0 29 2 *"
+		};
+		String[] zones = { "UTC", "America/New_York", "Asia/Tokyo" };
+		ScheduleGroup group = new ScheduleGroup();
+		for (int i=0; i<crontabs.length * 6; ++i) {
+			ScheduleAbstract schedule = CrontabSchedule.crontabFactory( crontabs[ i % crontabs.length ], "job-" + i );
+			schedule.setTimeZone( TimeZone.getTimeZone( zones[ i % zones.length ] ) );
+			group.addEvent( schedule );
+		}
+		// A member which is not compiled, evaluated on its own.
+		ScheduleGroup nested = new ScheduleGroup();
+		ScheduleAbstract kathmandu = CrontabSchedule.crontabFactory( "7 3 * * *" );
+		kathmandu.setTimeZone( TimeZone.getTimeZone( "Asia/Kathmandu" ) );
+		nested.addEvent( kathmandu );
+		group.addEvent( nested );
+		ArrayList members = group.getEventsList();
+
+		// Around the DST changes in New York and a leap day.
+		long[] days = {
+			utcTime( 2028, 2, 26, 12 ), utcTime( 2028, 2, 29, 0 ), utcTime( 2028, 3, 12, 6 ),
+			utcTime( 2028, 3, 12, 7 ), utcTime( 2028, 11, 5, 5 ), utcTime( 2028, 11, 5, 6 )
+		};
+		long[] mask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] expectedMask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] tmpMask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		for (int d=0; d<days.length; ++d) {
+			TreeSet expected = new TreeSet();
+			for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+				expectedMask[ j ] = 0;
+			}
+			int[] expectedDue = new int[ CompiledSchedule.MINUTES_PER_DAY ];
+			for (int i=0; i<members.size(); ++i) {
+				Schedule schedule = (Schedule)members.get( i );
+				long[] times = schedule.getScheduleTimes( days[ d ] );
+				for (int j=0; j<times.length; ++j) {
+					expected.add( new Long( times[ j ] ) );
+				}
+				schedule.getScheduleMask( days[ d ], tmpMask );
+				for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+					expectedMask[ j ] |= tmpMask[ j ];
+				}
+				for (int mod=0; mod<CompiledSchedule.MINUTES_PER_DAY; ++mod) {
+					if ( (tmpMask[ mod >> 6 ] & (1L << mod)) != 0 ) {
+						++expectedDue[ mod ];
+					}
+				}
+			}
+			long[] times = group.getScheduleTimes( days[ d ] );
+			Assert.assertEquals( expected.size(), times.length );
+			int n = 0;
+			for (java.util.Iterator iter = expected.iterator(); iter.hasNext(); ) {
+				Assert.assertEquals( ((Long)iter.next()).longValue(), times[ n++ ] );
+			}
+			group.getScheduleMask( days[ d ], mask );
+			for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+				Assert.assertEquals( expectedMask[ j ], mask[ j ] );
+			}
+			group.buildDayIndex( days[ d ] );
+			for (int mod=0; mod<CompiledSchedule.MINUTES_PER_DAY; ++mod) {
+				Assert.assertEquals( expectedDue[ mod ], group.getDueCount( mod ) );
+			}
+		}
+
+		// Buckets follow the members.
+		long[] before = group.getScheduleTimes( days[ 0 ] );
+		Assert.assertTrue( group.removeEvent( nested ) );
+		long[] after = group.getScheduleTimes( days[ 0 ] );
+		Assert.assertEquals( before.length - 1, after.length );
+		for (int j=0; j<after.length; ++j) {
+			Assert.assertTrue( after[ j ] != nested.getScheduleTimes( days[ 0 ] )[ 0 ] );
+		}
+	}
+
+	public void testCompact() {
+		String[] crontabs = {
+			"0 * * * *", "0 9 * * *", "*/5 * * * *", "*/15 * * * *", "30 2 1 * *", "30 2 * * *", "0,32 9 * * 1"
+		};
+		ScheduleGroup group = new ScheduleGroup();
+		ArrayList hourly = new ArrayList();
+		for (int i=0; i<crontabs.length * 20; ++i) {
+			ScheduleAbstract schedule = CrontabSchedule.crontabFactory( crontabs[ i % crontabs.length ] );
+			if ( i % crontabs.length == 0 ) {
+				hourly.add( schedule );
+			}
+			group.addEvent( schedule );
+		}
+		ScheduleGroup nested = new ScheduleGroup();
+		nested.addEvent( CrontabSchedule.crontabFactory( "7 3 * * *" ) );
+		group.addEvent( nested );
+
+		long[] days = new long[ 10 ];
+		Calendar cal = new GregorianCalendar( 2013, Calendar.SEPTEMBER, 1 );
+		for (int d=0; d<days.length; ++d) {
+			days[ d ] = cal.getTime().getTime();
+			cal.add( Calendar.DATE, 1 );
+		}
+		assertCompact( group, days );
+		Assert.assertEquals( crontabs.length * 20 + 1, group.getDistinctCount() );
+
+		// Only every 5 minutes, at 9:32 on mondays and the nested group are left.
+		Assert.assertEquals( 3, group.compact() );
+		Assert.assertTrue( group.isCompacted() );
+		Assert.assertEquals( 20, group.getCount( (Schedule)hourly.get( 0 ) ) );
+		Assert.assertEquals( 20, group.getCount( CrontabSchedule.crontabFactory( "0 9 * * *" ) ) );
+		Assert.assertEquals( 0, group.getCount( CrontabSchedule.crontabFactory( "1 9 * * *" ) ) );
+		assertCompact( group, days );
+
+		// Every member is still due.
+		group.buildDayIndex( days[ 0 ] );
+		Assert.assertEquals( 20 * 3, group.getDueCount( 0 ) );
+
+		// Removing members only changes what is evaluated with the last one.
+		ScheduleAbstract everyMinute = CrontabSchedule.crontabFactory( "* * * * *" );
+		group.addEvent( everyMinute );
+		Assert.assertEquals( 2, group.getDistinctCount() );
+		Assert.assertTrue( group.removeEvent( everyMinute ) );
+		Assert.assertEquals( 3, group.getDistinctCount() );
+		for (int i=0; i<crontabs.length * 20; ++i) {
+			ScheduleAbstract schedule = (ScheduleAbstract)group.getEventsList().get( 0 );
+			Assert.assertTrue( group.removeEvent( schedule ) );
+			Object next = group.getEventsList().get( 0 );
+			if ( (next instanceof ScheduleAbstract) && schedule.getCompiledSchedule().equals( ((ScheduleAbstract)next).getCompiledSchedule() ) ) {
+				continue;
+			}
+			assertCompact( group, days );
+		}
+		Assert.assertEquals( 1, group.getEventsList().size() );
+		Assert.assertEquals( 1, group.getDistinctCount() );
+		Assert.assertTrue( group.removeEvent( nested ) );
+		Assert.assertEquals( 0, group.getScheduleTimes( days[ 0 ] ).length );
+
+		// Members set on a compacted group are counted again.
+		ArrayList list = new ArrayList();
+		list.add( CrontabSchedule.crontabFactory( "0 9 * * *" ) );
+		list.add( CrontabSchedule.crontabFactory( "0 9 * * *" ) );
+		list.add( CrontabSchedule.crontabFactory( "0 9 * * 1" ) );
+		group.setEventsList( list );
+		Assert.assertEquals( 1, group.getDistinctCount() );
+		Assert.assertEquals( 2, group.getCount( (Schedule)list.get( 0 ) ) );
+		assertCompact( group, days );
+	}
+
+	/**
+	 * Compares the fire times, masks and next fire times of a group with
+	 * those of its members.
+	 */
+	private static void assertCompact(ScheduleGroup group, long[] days) {
+		ArrayList members = group.getEventsList();
+		long[] mask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] tmpMask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		for (int d=0; d<days.length; ++d) {
+			TreeSet expected = new TreeSet();
+			long[] expectedMask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+			for (int i=0; i<members.size(); ++i) {
+				Schedule schedule = (Schedule)members.get( i );
+				long[] times = schedule.getScheduleTimes( days[ d ] );
+				for (int j=0; j<times.length; ++j) {
+					expected.add( new Long( times[ j ] ) );
+				}
+				schedule.getScheduleMask( days[ d ], tmpMask );
+				for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+					expectedMask[ j ] |= tmpMask[ j ];
+				}
+			}
+			long[] times = group.getScheduleTimes( days[ d ] );
+			Assert.assertEquals( expected.size(), times.length );
+			int n = 0;
+			long l = days[ d ] - 1;
+			for (java.util.Iterator iter = expected.iterator(); iter.hasNext(); ) {
+				long t = ((Long)iter.next()).longValue();
+				Assert.assertEquals( t, times[ n++ ] );
+				Assert.assertEquals( t, group.nextFireTime( l ) );
+				l = t;
+			}
+			group.getScheduleMask( days[ d ], mask );
+			for (int j=0; j<CompiledSchedule.DAY_MASK_LENGTH; ++j) {
+				Assert.assertEquals( expectedMask[ j ], mask[ j ] );
+			}
+		}
+	}
+
+	private static long utcTime(int year, int month, int date, int hour) {
+		Calendar cal = new GregorianCalendar( TimeZone.getTimeZone( "UTC" ) );
+		cal.clear();
+		cal.set( year, month - 1, date, hour, 0 );
+		return cal.getTimeInMillis();
+	}
+
+}
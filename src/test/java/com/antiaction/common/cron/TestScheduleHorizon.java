@@ -0,0 +1,79 @@
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleHorizon extends TestCase {
+
+	public void testCompute() {
+		String[] crontabs = {
+			"*/5 9-17 * * 1-5",
+			"30 2 * * *",
+			"0 0 29 2 *",
+			"H H * * *",
+			"* * 31 * *",
+			"0 0 1 1 0"
+		};
+		ArrayList schedules = new ArrayList();
+		for (int i=0; i<crontabs.length; ++i) {
+			schedules.add( CrontabSchedule.crontabFactory( crontabs[i] ) );
+		}
+		schedules.add( ((ScheduleAbstract)schedules.get( 1 )).getCompiledSchedule() );
+		ScheduleGroup group = new ScheduleGroup();
+		group.addEvent( (Schedule)schedules.get( 1 ) );
+		group.addEvent( (Schedule)schedules.get( 4 ) );
+		schedules.add( group );
+
+		// Partial days at both ends of a range crossing DST changes and a leap day.
+		Calendar cal = new GregorianCalendar( 2028, Calendar.JANUARY, 3, 9, 17 );
+		long from = cal.getTimeInMillis();
+		cal.set( 2028, Calendar.DECEMBER, 1, 13, 45 );
+		long to = cal.getTimeInMillis();
+
+		ScheduleHorizon horizon = new ScheduleHorizon( schedules, from, to );
+		horizon.setBlockDays( 7 );
+		horizon.setBlockSchedules( 2 );
+		Assert.assertNull( horizon.getTimes( 0 ) );
+		ForkJoinPool pool = new ForkJoinPool( 4 );
+		horizon.compute( pool );
+		pool.shutdown();
+
+		Assert.assertEquals( schedules.size(), horizon.size() );
+		long total = 0;
+		for (int i=0; i<horizon.size(); ++i) {
+			Schedule schedule = horizon.getSchedule( i );
+			long[] times = horizon.getTimes( i );
+			Assert.assertEquals( times.length, horizon.getCount( i ) );
+			int n = 0;
+			long l = schedule.nextFireTime( from - 1 );
+			while ( l != Schedule.NO_FIRE_TIME && l < to ) {
+				Assert.assertEquals( crontabs[i % crontabs.length], l, times[n++] );
+				l = schedule.nextFireTime( l );
+			}
+			Assert.assertEquals( n, times.length );
+			total += n;
+		}
+		Assert.assertEquals( total, horizon.getTotal() );
+		Assert.assertEquals( 1, horizon.getCount( 2 ) );
+		// January 1st or any sunday in January.
+		Assert.assertEquals( 4, horizon.getCount( 5 ) );
+
+		// Empty range.
+		horizon = new ScheduleHorizon( schedules, from, from );
+		horizon.compute();
+		Assert.assertEquals( 0, horizon.getTotal() );
+
+		try {
+			new ScheduleHorizon( schedules, to, from );
+			Assert.fail( "Exception expected" );
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+}
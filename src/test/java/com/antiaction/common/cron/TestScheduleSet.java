@@ -0,0 +1,221 @@
+package com.antiaction.common.cron;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TestScheduleSet extends TestCase {
+
+	private static final String[] CRONTABS = {
+		"* * * * *", "*/5 * * * *", "* 9-17 * * 1-5", "0 9 * * *", "30 9 * * *",
+		"0 * * * *", "* 12 * * *", "0 0 1,15 * *", "0 0 * * 0", "0 0 1 * 0",
+		"0 0 * 1-6 *", "*/10 8-10 * * 6", "0 0 2-10 * *", "0 0 * 7 *", "* * 31 * *"
+	};
+
+	public void testCompiled() {
+		TimeZone utc = TimeZone.getTimeZone( "UTC" );
+		CompiledSchedule[] schedules = new CompiledSchedule[ CRONTABS.length ];
+		for (int i=0; i<CRONTABS.length; ++i) {
+			schedules[ i ] = CrontabSchedule.crontabFactory( CRONTABS[ i ] ).getCompiledSchedule().withTimeZone( utc );
+		}
+		long start = utcTime( 2028, 1, 1 );
+		long[] a = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] b = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		long[] r = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		int compiled = 0;
+		for (int i=0; i<schedules.length; ++i) {
+			for (int j=0; j<schedules.length; ++j) {
+				CompiledSchedule union = schedules[ i ].union( schedules[ j ] );
+				CompiledSchedule intersection = schedules[ i ].intersection( schedules[ j ] );
+				CompiledSchedule difference = schedules[ i ].difference( schedules[ j ] );
+				boolean contains = schedules[ i ].contains( schedules[ j ] );
+				compiled += (union != null ? 1 : 0) + (intersection != null ? 1 : 0) + (difference != null ? 1 : 0);
+				for (int d=0; d<400; ++d) {
+					long l = start + d * ZoneDays.DAY_MILLIS;
+					schedules[ i ].getScheduleMask( l, a );
+					schedules[ j ].getScheduleMask( l, b );
+					String msg = CRONTABS[ i ] + " / " + CRONTABS[ j ] + " day " + d;
+					if ( union != null ) {
+						union.getScheduleMask( l, r );
+						for (int w=0; w<r.length; ++w) {
+							Assert.assertEquals( msg, a[ w ] | b[ w ], r[ w ] );
+						}
+					}
+					if ( intersection != null ) {
+						intersection.getScheduleMask( l, r );
+						for (int w=0; w<r.length; ++w) {
+							Assert.assertEquals( msg, a[ w ] & b[ w ], r[ w ] );
+						}
+					}
+					if ( difference != null ) {
+						difference.getScheduleMask( l, r );
+						for (int w=0; w<r.length; ++w) {
+							Assert.assertEquals( msg, a[ w ] & ~b[ w ], r[ w ] );
+						}
+					}
+					if ( contains ) {
+						for (int w=0; w<r.length; ++w) {
+							Assert.assertEquals( msg, 0, b[ w ] & ~a[ w ] );
+						}
+					}
+				}
+			}
+		}
+		Assert.assertTrue( compiled > schedules.length * schedules.length * 2 );
+
+		// Business hours every 5 minutes.
+		CompiledSchedule c = schedules[ 1 ].intersection( schedules[ 2 ] );
+		Assert.assertEquals( CrontabSchedule.crontabFactory( "*/5 9-17 * * 1-5" ).getCompiledSchedule().withTimeZone( utc ), c );
+		// Twice at 9.
+		c = schedules[ 3 ].union( schedules[ 4 ] );
+		Assert.assertEquals( CrontabSchedule.crontabFactory( "0,30 9 * * *" ).getCompiledSchedule().withTimeZone( utc ), c );
+		// Blackout at noon.
+		c = schedules[ 5 ].difference( schedules[ 6 ] );
+		Assert.assertEquals( CrontabSchedule.crontabFactory( "0 0-11,13-23 * * *" ).getCompiledSchedule().withTimeZone( utc ), c );
+		Assert.assertTrue( schedules[ 0 ].difference( schedules[ 0 ] ).isEmpty() );
+		// The 1st or the 15th, and sundays.
+		Assert.assertNull( schedules[ 7 ].intersection( schedules[ 8 ] ) );
+		Assert.assertTrue( schedules[ 0 ].contains( schedules[ 9 ] ) );
+		Assert.assertFalse( schedules[ 9 ].contains( schedules[ 0 ] ) );
+		Assert.assertNull( schedules[ 0 ].union( schedules[ 0 ].withTimeZone( TimeZone.getTimeZone( "Asia/Tokyo" ) ) ) );
+	}
+
+	public void testSet() {
+		TimeZone zone = TimeZone.getTimeZone( "America/New_York" );
+		ArrayList list = new ArrayList();
+		for (int i=0; i<CRONTABS.length; ++i) {
+			ScheduleAbstract schedule = CrontabSchedule.crontabFactory( CRONTABS[ i ] );
+			schedule.setTimeZone( zone );
+			list.add( schedule );
+		}
+		Schedule[] s = (Schedule[])list.toArray( new Schedule[ list.size() ] );
+		ScheduleGroup group = new ScheduleGroup();
+		group.addEvent( s[ 3 ] );
+		group.addEvent( s[ 11 ] );
+
+		Schedule[] sets = {
+			ScheduleSet.union( new Schedule[] { s[ 3 ], s[ 8 ], s[ 13 ], s[ 7 ] } ),
+			ScheduleSet.intersection( new Schedule[] { s[ 7 ], s[ 8 ] } ),
+			ScheduleSet.intersection( new Schedule[] { s[ 1 ], s[ 9 ] } ),
+			ScheduleSet.difference( s[ 2 ], s[ 12 ] ),
+			ScheduleSet.difference( ScheduleSet.union( new Schedule[] { s[ 5 ], s[ 7 ] } ), s[ 6 ] ),
+			ScheduleSet.union( new Schedule[] { group, s[ 4 ] } ),
+			ScheduleSet.union( list )
+		};
+		Assert.assertTrue( sets[ 0 ] instanceof ScheduleSet );
+		Assert.assertEquals( ScheduleSet.INTERSECTION, ((ScheduleSet)sets[ 1 ]).getOperation() );
+		Assert.assertTrue( sets[ 6 ] instanceof CompiledSchedule );
+
+		// Around the DST changes.
+		long[] days = {
+			utcTime( 2028, 3, 10 ), utcTime( 2028, 3, 12 ) + 8 * 3600000L, utcTime( 2028, 3, 13 ) + 8 * 3600000L,
+			utcTime( 2028, 4, 1 ) + 8 * 3600000L, utcTime( 2028, 11, 5 ) + 8 * 3600000L, utcTime( 2028, 12, 31 ) + 8 * 3600000L
+		};
+		long[] mask = new long[ CompiledSchedule.DAY_MASK_LENGTH ];
+		for (int k=0; k<sets.length; ++k) {
+			Schedule set = sets[ k ];
+			for (int d=0; d<days.length; ++d) {
+				TreeSet expected = new TreeSet();
+				for (int mod=0; mod<CompiledSchedule.MINUTES_PER_DAY; ++mod) {
+					if ( fires( k, s, group, days[ d ], mod ) ) {
+						long t = ZoneDays.getInstance( zone ).getDay( days[ d ] ).getTime( mod );
+						if ( t != Schedule.NO_FIRE_TIME ) {
+							expected.add( new Long( t ) );
+						}
+					}
+				}
+				long[] times = set.getScheduleTimes( days[ d ] );
+				Assert.assertEquals( "set " + k + " day " + d, expected.size(), times.length );
+				int n = 0;
+				for (java.util.Iterator iter = expected.iterator(); iter.hasNext(); ) {
+					Assert.assertEquals( ((Long)iter.next()).longValue(), times[ n++ ] );
+				}
+				set.getScheduleMask( days[ d ], mask );
+				for (int mod=0; mod<CompiledSchedule.MINUTES_PER_DAY; ++mod) {
+					Assert.assertEquals( fires( k, s, group, days[ d ], mod ), CompiledSchedule.isSet( mask, mod ) );
+				}
+				// The chain of next fire times walks the same times.
+				ZoneDays.Day day = ZoneDays.getInstance( zone ).getDay( days[ d ] );
+				long l = set.nextFireTime( day.getStart() - 1 );
+				for (int i=0; i<times.length; ++i) {
+					Assert.assertEquals( times[ i ], l );
+					l = set.nextFireTime( l );
+				}
+				Assert.assertTrue( l == Schedule.NO_FIRE_TIME || l >= day.getEnd() );
+				if ( set instanceof ScheduleSet ) {
+					ScheduleSet ss = (ScheduleSet)set;
+					n = 0;
+					for (long t=day.getStart(); t<day.getEnd(); t+=60000) {
+						boolean due = (n < times.length) && (times[ n ] == t);
+						Assert.assertEquals( due, ss.isDue( t + 59999 ) );
+						if ( due ) {
+							++n;
+						}
+					}
+				}
+			}
+		}
+
+		try {
+			ScheduleAbstract tokyo = CrontabSchedule.crontabFactory( "0 0 1 * 0" );
+			tokyo.setTimeZone( TimeZone.getTimeZone( "Asia/Tokyo" ) );
+			ScheduleSet.union( new Schedule[] { s[ 7 ], tokyo } );
+			Assert.fail( "Exception expected" );
+		}
+		catch (IllegalArgumentException e) {
+		}
+		// The members of a group are checked one by one.
+		try {
+			ScheduleAbstract tokyo = CrontabSchedule.crontabFactory( "0 0 1 * 0" );
+			tokyo.setTimeZone( TimeZone.getTimeZone( "Asia/Tokyo" ) );
+			ScheduleGroup mixed = new ScheduleGroup();
+			mixed.addEvent( tokyo );
+			ScheduleSet.difference( s[ 7 ], mixed );
+			Assert.fail( "Exception expected" );
+		}
+		catch (IllegalArgumentException e) {
+		}
+		Assert.assertEquals( zone.getID(), ((ScheduleSet)sets[ 5 ]).getZoneDays().getID() );
+	}
+
+	private static boolean fires(int k, Schedule[] s, ScheduleGroup group, long l, int mod) {
+		switch ( k ) {
+		case 0:
+			return fires( s[ 3 ], l, mod ) || fires( s[ 8 ], l, mod ) || fires( s[ 13 ], l, mod ) || fires( s[ 7 ], l, mod );
+		case 1:
+			return fires( s[ 7 ], l, mod ) && fires( s[ 8 ], l, mod );
+		case 2:
+			return fires( s[ 1 ], l, mod ) && fires( s[ 9 ], l, mod );
+		case 3:
+			return fires( s[ 2 ], l, mod ) && !fires( s[ 12 ], l, mod );
+		case 4:
+			return (fires( s[ 5 ], l, mod ) || fires( s[ 7 ], l, mod )) && !fires( s[ 6 ], l, mod );
+		case 5:
+			return fires( group, l, mod ) || fires( s[ 4 ], l, mod );
+		default:
+			for (int i=0; i<s.length; ++i) {
+				if ( fires( s[ i ], l, mod ) ) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static boolean fires(Schedule schedule, long l, int mod) {
+		return CompiledSchedule.isSet( schedule.getScheduleMask( l, new long[ CompiledSchedule.DAY_MASK_LENGTH ] ), mod );
+	}
+
+	private static long utcTime(int year, int month, int date) {
+		Calendar cal = new GregorianCalendar( TimeZone.getTimeZone( "UTC" ) );
+		cal.clear();
+		cal.set( year, month - 1, date );
+		return cal.getTimeInMillis();
+	}
+
+}